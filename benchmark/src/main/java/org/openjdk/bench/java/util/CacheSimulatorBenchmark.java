@@ -0,0 +1,181 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SegmentedLinkedHashMap;
+import java.util.ShardedLinkedHashMap;
+import java.util.TinyLfuLinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按访问轨迹回放的缓存模拟器，比较不同淘汰策略的命中率
+ *
+ * 每次调用回放轨迹中的一次访问：get命中计一次hit，未命中计一次miss并put。
+ * hits和misses通过AuxCounters输出，命中率 = hits / (hits + misses)。
+ *
+ * 内置的轨迹在[0, 10 * cacheSize)的key空间上生成，另外可以通过
+ * -p trace=FILE -jvmArgsAppend -Dcache.trace=路径 回放一个每行一个整数key的轨迹文件
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class CacheSimulatorBenchmark {
+
+    /**
+     * 内置轨迹的长度，必须为2的幂
+     */
+    static final int TRACE_LENGTH = 1 << 21;
+
+    public enum Trace {
+        /**
+         * Zipf分布，热点稳定
+         */
+        ZIPFIAN {
+            int[] generate(int cacheSize) {
+                return KeyDistribution.ZIPFIAN.indices(cacheSize * 10, TRACE_LENGTH, 42L);
+            }
+        },
+
+        /**
+         * Zipf分布中穿插大范围的顺序扫描，扫描的key只出现一次，
+         * 每次扫描的长度为缓存容量的2倍，LRU会被扫描冲刷掉所有热点
+         */
+        ZIPFIAN_SCAN {
+            int[] generate(int cacheSize) {
+                int[] a = ZIPFIAN.generate(cacheSize);
+                int scanKey = cacheSize * 10;
+                int period = cacheSize * 8;
+                for (int i = period; i < a.length; i += period) {
+                    for (int j = 0; j < cacheSize * 2 && i + j < a.length; j++)
+                        a[i + j] = scanKey++;
+                }
+                return a;
+            }
+        },
+
+        /**
+         * 循环访问比缓存容量大50%的key，LRU的命中率为0
+         */
+        LOOP {
+            int[] generate(int cacheSize) {
+                int n = cacheSize + (cacheSize >>> 1);
+                int[] a = new int[TRACE_LENGTH];
+                for (int i = 0; i < a.length; i++)
+                    a[i] = i % n;
+                return a;
+            }
+        },
+
+        /**
+         * 从系统属性cache.trace指定的文件中读取轨迹
+         */
+        FILE {
+            int[] generate(int cacheSize) {
+                String path = System.getProperty("cache.trace");
+                if (path == null)
+                    throw new IllegalStateException("-Dcache.trace is not set");
+                try {
+                    return Files.lines(Paths.get(path))
+                            .filter(s -> !s.isEmpty())
+                            .mapToInt(s -> Long.hashCode(Long.parseLong(s.trim())))
+                            .toArray();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        abstract int[] generate(int cacheSize);
+    }
+
+    @Param({"LRU", "SLRU", "TINY_LFU", "SHARDED_LRU", "SHARDED_LRU_SAMPLED"})
+    String policy;
+
+    @Param({"ZIPFIAN", "ZIPFIAN_SCAN", "LOOP"})
+    Trace trace;
+
+    @Param({"1000", "100000"})
+    int cacheSize;
+
+    int[] events;
+    int cursor;
+    Map<Integer, Integer> cache;
+
+    /**
+     * 每轮迭代的命中和未命中次数
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = misses = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        events = trace.generate(cacheSize);
+        cache = newCache(policy, cacheSize);
+    }
+
+    static Map<Integer, Integer> newCache(String policy, int cacheSize) {
+        switch (policy) {
+            case "LRU":
+                return new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                        return size() > cacheSize;
+                    }
+                };
+            case "SLRU":
+                return new SegmentedLinkedHashMap<>(cacheSize);
+            case "TINY_LFU":
+                return new TinyLfuLinkedHashMap<>(cacheSize);
+            case "SHARDED_LRU":
+                return new ShardedLinkedHashMap<>(cacheSize, 64, false);
+            case "SHARDED_LRU_SAMPLED":
+                return new ShardedLinkedHashMap<>(cacheSize, 64, true);
+            default:
+                throw new IllegalArgumentException("Unknown policy: " + policy);
+        }
+    }
+
+    @Benchmark
+    public Integer access(Counters counters) {
+        int[] a = events;
+        Integer key = a[cursor];
+        if (++cursor == a.length)
+            cursor = 0;
+        Integer v = cache.get(key);
+        if (v != null)
+            counters.hits++;
+        else {
+            counters.misses++;
+            cache.put(key, key);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,75 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashMap批量操作的顺序执行与并行执行对比
+ *
+ * threshold为Long.MAX_VALUE时总是顺序执行，为1时尽可能并行，
+ * 并行度由ForkJoinPool.commonPool()决定，可以通过
+ * -Djava.util.concurrent.ForkJoinPool.common.parallelism调整
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Thread)
+public class HashMapBulkBenchmark {
+
+    @Param({"1048576", "10000000"})
+    int size;
+
+    @Param({"9223372036854775807", "1"})
+    long threshold;
+
+    HashMap<Integer, Long> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            map.put(i * 0x9E3779B1, (long)i);
+    }
+
+    @Benchmark
+    public void forEach(Blackhole bh) {
+        map.forEach(threshold, (k, v) -> bh.consume(v));
+    }
+
+    /**
+     * 替换后的值与原值相等，保证每次调用的输入相同
+     */
+    @Benchmark
+    public void replaceAll() {
+        map.replaceAll(threshold, (k, v) -> v ^ (long)k ^ (long)k);
+    }
+
+    @Benchmark
+    public Long reduceValues() {
+        return map.reduceValues(threshold, Long::sum);
+    }
+
+    /**
+     * 查找一个不存在的值，需要遍历所有元素
+     */
+    @Benchmark
+    public Integer search() {
+        return map.search(threshold, (k, v) -> v < 0 ? k : null);
+    }
+}
@@ -0,0 +1,99 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.HashMapCodec;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashMapCodec与Java序列化的编码和解码耗时对比
+ *
+ * key为字符串，value为Integer。编码写入预先分配好的内存缓冲区，
+ * 解码从Trial开始时编码好的字节数组中读取，两条路径都不涉及磁盘和网络
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class HashMapCodecBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    int size;
+
+    @Param({"HashMap", "LinkedHashMap"})
+    String impl;
+
+    static final HashMapCodec<String, Integer> CODEC =
+            new HashMapCodec<>(HashMapCodec.STRING, HashMapCodec.INTEGER);
+
+    HashMap<String, Integer> map;
+    byte[] javaBytes;
+    byte[] codecBytes;
+    ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        map = "HashMap".equals(impl) ? new HashMap<>() : new LinkedHashMap<>();
+        for (int i = 0; i < size; i++)
+            map.put("key-" + (i * 0x9E3779B1), i);
+        javaBytes = javaWrite().toByteArray();
+        codecBytes = codecWrite().toByteArray();
+        out = new ByteArrayOutputStream(Math.max(javaBytes.length, codecBytes.length));
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream javaWrite() throws IOException {
+        ByteArrayOutputStream o = reset();
+        try (ObjectOutputStream s = new ObjectOutputStream(o)) {
+            s.writeObject(map);
+        }
+        return o;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream codecWrite() throws IOException {
+        ByteArrayOutputStream o = reset();
+        CODEC.write(map, o);
+        return o;
+    }
+
+    @Benchmark
+    public Object javaRead() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream s =
+                     new ObjectInputStream(new ByteArrayInputStream(javaBytes))) {
+            return s.readObject();
+        }
+    }
+
+    @Benchmark
+    public HashMap<String, Integer> codecRead() throws IOException {
+        return CODEC.read(new ByteArrayInputStream(codecBytes));
+    }
+
+    private ByteArrayOutputStream reset() {
+        if (out == null)
+            return new ByteArrayOutputStream();
+        out.reset();
+        return out;
+    }
+}
@@ -0,0 +1,85 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次查找batch个key时，HashMap.getAll与循环调用get的对比
+ *
+ * 查找用的key是与Map中的key相等但不同的Integer对象，比较key时也要访问Map中的key对象，
+ * 与真实场景中从请求里解析出key的情况一致。Map较大时三次访问都会缓存未命中。
+ * 每次调用从预先按KeyDistribution生成的下标序列中取下一组key
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class HashMapGetAllBenchmark {
+
+    /**
+     * 预先生成的查询组数，必须为2的幂
+     */
+    static final int GROUPS = 1 << 10;
+
+    @Param({"1024", "1048576", "10000000"})
+    int size;
+
+    @Param({"200"})
+    int batch;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution dist;
+
+    HashMap<Integer, Integer> map;
+    Object[][] groups;
+    Object[] values;
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            map.put(i * 31 + 7, i);
+        int[] ops = dist.indices(size, GROUPS * batch, 42L);
+        groups = new Object[GROUPS][batch];
+        for (int g = 0, i = 0; g < GROUPS; g++) {
+            for (int j = 0; j < batch; j++)
+                groups[g][j] = new Integer(ops[i++] * 31 + 7);
+        }
+        values = new Object[batch];
+    }
+
+    final Object[] nextGroup() {
+        return groups[cursor++ & (GROUPS - 1)];
+    }
+
+    @Benchmark
+    public Object[] loopGet() {
+        Object[] keys = nextGroup();
+        Object[] vs = values;
+        for (int i = 0; i < keys.length; i++)
+            vs[i] = map.get(keys[i]);
+        return vs;
+    }
+
+    @Benchmark
+    public Object[] getAll() {
+        map.getAll(nextGroup(), values);
+        return values;
+    }
+}
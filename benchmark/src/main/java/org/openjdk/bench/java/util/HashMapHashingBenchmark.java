@@ -0,0 +1,97 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 默认扰动函数与随机哈希下String key的get吞吐量对比
+ *
+ * RANDOM：随机生成的字符串，hashCode分布均匀
+ * COLLIDING：由"Aa"和"BB"拼接而成的字符串，hashCode全部相同，模拟哈希碰撞攻击，
+ * 默认扰动函数下所有key落入同一个红黑树桶
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class HashMapHashingBenchmark {
+
+    static final int OPS = 1 << 16;
+
+    public enum Keys { RANDOM, COLLIDING }
+
+    @Param({"false", "true"})
+    boolean randomized;
+
+    @Param({"RANDOM", "COLLIDING"})
+    Keys keys;
+
+    @Param({"1024", "65536"})
+    int size;
+
+    /**
+     * 字符串长度，COLLIDING下每两个字符对应一个二进制位，32个字符最多可以生成65536个不同的key
+     */
+    @Param({"32"})
+    int length;
+
+    String[] queries;
+    int cursor;
+    HashMap<String, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] ks = new String[size];
+        Random r = new Random(42L);
+        for (int i = 0; i < size; i++)
+            ks[i] = (keys == Keys.RANDOM) ? random(r, length) : colliding(i, length);
+        map = new HashMap<>(16, 0.75f, false, randomized);
+        for (int i = 0; i < size; i++)
+            map.put(ks[i], i);
+        // 查询时使用内容相同的新字符串，避免equals直接命中引用相等
+        int[] ops = KeyDistribution.UNIFORM.indices(size, OPS, 7L);
+        queries = new String[OPS];
+        for (int i = 0; i < OPS; i++)
+            queries[i] = new String(ks[ops[i]].toCharArray());
+        for (String q : queries)
+            q.hashCode();
+    }
+
+    static String random(Random r, int length) {
+        char[] cs = new char[length];
+        for (int i = 0; i < length; i++)
+            cs[i] = (char)('a' + r.nextInt(26));
+        return new String(cs);
+    }
+
+    /**
+     * "Aa"和"BB"的hashCode相同，按i的二进制位选择拼接，得到的字符串两两不同而hashCode全部相同
+     */
+    static String colliding(int i, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int b = 0; b < length / 2; b++)
+            sb.append(((i >>> b) & 1) == 0 ? "Aa" : "BB");
+        return sb.toString();
+    }
+
+    @Benchmark
+    public Integer get() {
+        return map.get(queries[cursor++ & (OPS - 1)]);
+    }
+}
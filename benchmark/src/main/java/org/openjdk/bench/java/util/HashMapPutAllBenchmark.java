@@ -0,0 +1,69 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将一个大Map合并到另一个非空HashMap中的耗时
+ *
+ * 每次调用前复制一份目标Map，overlap为两个Map中重复key所占的百分比。
+ * 传入HashMap时走批量插入的快速路径，传入TreeMap时逐个调用putVal，作为对照
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Thread)
+public class HashMapPutAllBenchmark {
+
+    @Param({"1048576", "5000000"})
+    int size;
+
+    @Param({"0", "50"})
+    int overlap;
+
+    @Param({"HashMap", "TreeMap"})
+    String source;
+
+    HashMap<Integer, Integer> base;
+    Map<Integer, Integer> other;
+    HashMap<Integer, Integer> target;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        base = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            base.put(i * 0x9E3779B1, i);
+        other = "HashMap".equals(source) ? new HashMap<>() : new TreeMap<>();
+        int start = size - (int)((long)size * overlap / 100);
+        for (int i = start; i < start + size; i++)
+            other.put(i * 0x9E3779B1, -i);
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        target = new HashMap<>(base);
+    }
+
+    @Benchmark
+    public HashMap<Integer, Integer> putAll() {
+        target.putAll(other);
+        return target;
+    }
+}
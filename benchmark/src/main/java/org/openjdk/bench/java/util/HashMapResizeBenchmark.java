@@ -0,0 +1,60 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次性扩容与渐进式扩容下put的延迟分布对比
+ *
+ * Map从默认容量开始不断插入新key，达到maxSize后重新创建，
+ * 关注SampleTime结果中p99.9及以上的分位数
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Thread)
+public class HashMapResizeBenchmark {
+
+    @Param({"false", "true"})
+    boolean incremental;
+
+    @Param({"1048576", "20000000"})
+    int maxSize;
+
+    Integer[] keys;
+    int cursor;
+    HashMap<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new Integer[maxSize];
+        for (int i = 0; i < maxSize; i++)
+            keys[i] = Integer.valueOf(i * 0x9E3779B1);
+        map = new HashMap<>(16, 0.75f, incremental);
+    }
+
+    @Benchmark
+    public Integer put() {
+        if (cursor == maxSize) {
+            cursor = 0;
+            map = new HashMap<>(16, 0.75f, incremental);
+        }
+        Integer k = keys[cursor++];
+        return map.put(k, k);
+    }
+}
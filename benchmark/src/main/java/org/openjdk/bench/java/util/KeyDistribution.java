@@ -0,0 +1,93 @@
+package org.openjdk.bench.java.util;
+
+import java.util.Random;
+
+/**
+ * 基准测试使用的key分布
+ * UNIFORM：每个key被访问的概率相同
+ * ZIPFIAN：少量热点key占据大部分访问，用于模拟真实业务中的倾斜访问
+ */
+public enum KeyDistribution {
+
+    UNIFORM {
+        @Override
+        int[] indices(int size, int count, long seed) {
+            Random r = new Random(seed);
+            int[] a = new int[count];
+            for (int i = 0; i < count; i++)
+                a[i] = r.nextInt(size);
+            return a;
+        }
+    },
+
+    ZIPFIAN {
+        @Override
+        int[] indices(int size, int count, long seed) {
+            return new Zipf(size, ZIPF_THETA, seed).next(count);
+        }
+    };
+
+    /**
+     * Zipf分布的倾斜参数，与YCSB默认值保持一致
+     */
+    static final double ZIPF_THETA = 0.99;
+
+    /**
+     * 生成count个落在[0, size)内的下标，基准测试方法按顺序循环使用
+     * 预先生成是为了避免把随机数生成的开销计入被测方法
+     */
+    abstract int[] indices(int size, int count, long seed);
+
+    /**
+     * Gray等人在"Quickly Generating Billion-Record Synthetic Databases"中
+     * 给出的Zipf生成算法，常数项只需计算一次，之后每次生成为O(1)
+     * 生成的下标会再经过一次打散，避免热点key在下标上连续分布
+     */
+    static final class Zipf {
+        final int n;
+        final double theta, alpha, zetan, eta;
+        final Random random;
+
+        Zipf(int n, double theta, long seed) {
+            this.n = n;
+            this.theta = theta;
+            this.random = new Random(seed);
+            double zeta2 = zeta(2, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(n, theta);
+            this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+        }
+
+        static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++)
+                sum += 1 / Math.pow(i, theta);
+            return sum;
+        }
+
+        int nextRank() {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0)
+                return 0;
+            if (uz < 1.0 + Math.pow(0.5, theta))
+                return 1;
+            int r = (int)(n * Math.pow(eta * u - eta + 1, alpha));
+            return (r >= n) ? n - 1 : r;
+        }
+
+        int[] next(int count) {
+            int[] a = new int[count];
+            for (int i = 0; i < count; i++)
+                a[i] = scatter(nextRank(), n);
+            return a;
+        }
+
+        /**
+         * 将排名映射到下标，乘以一个奇数后对n取模，n较小时退化为原排名
+         */
+        static int scatter(int rank, int n) {
+            return (int)(((long)rank * 0x9E3779B1L & 0xFFFFFFFFL) % n);
+        }
+    }
+}
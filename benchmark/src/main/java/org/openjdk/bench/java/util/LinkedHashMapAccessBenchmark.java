@@ -0,0 +1,84 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 访问顺序LinkedHashMap的读操作：get每次都把元素移到链表尾部，
+ * peek不调整顺序，bufferedGet开启访问缓冲区后只记录访问，缓冲区满时覆盖最早的记录，等到插入时才统一调整
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class LinkedHashMapAccessBenchmark {
+
+    /**
+     * 预先生成的下标个数，必须为2的幂
+     */
+    static final int OPS = 1 << 16;
+
+    @Param({"1024", "1048576"})
+    int size;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution dist;
+
+    @Param({"64"})
+    int bufferSize;
+
+    Integer[] keys;
+    int[] ops;
+    int cursor;
+    LinkedHashMap<Integer, Integer> map;
+    LinkedHashMap<Integer, Integer> buffered;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new Integer[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = Integer.valueOf(i * 31 + 7);
+        ops = dist.indices(size, OPS, 42L);
+        map = new LinkedHashMap<>(16, 0.75f, true);
+        buffered = new LinkedHashMap<>(16, 0.75f, true);
+        for (Integer k : keys) {
+            map.put(k, k);
+            buffered.put(k, k);
+        }
+        buffered.setAccessBufferSize(bufferSize);
+    }
+
+    final Integer nextKey() {
+        return keys[ops[cursor++ & (OPS - 1)]];
+    }
+
+    @Benchmark
+    public Integer get() {
+        return map.get(nextKey());
+    }
+
+    @Benchmark
+    public Integer peek() {
+        return map.peek(nextKey());
+    }
+
+    @Benchmark
+    public Integer bufferedGet() {
+        return buffered.get(nextKey());
+    }
+}
@@ -0,0 +1,99 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.LongObjectHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LongObjectHashMap与HashMap&lt;Long, V&gt;的对比测试
+ * 配合-prof gc可以看到LongObjectHashMap的get/put不产生分配
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class LongObjectHashMapBenchmark {
+
+    static final int OPS = MapBenchmark.OPS;
+
+    @Param({"1024", "1048576", "10000000"})
+    int size;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution dist;
+
+    long[] ids;
+    int[] ops;
+    int cursor;
+    HashMap<Long, Object> hashMap;
+    LongObjectHashMap<Object> longMap;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ids = new long[size];
+        for (int i = 0; i < size; i++)
+            ids[i] = (long)i * 0x9E3779B97F4A7C15L;
+        ops = dist.indices(size, OPS, 42L);
+        hashMap = new HashMap<>();
+        longMap = new LongObjectHashMap<>();
+        for (long id : ids) {
+            hashMap.put(id, Boolean.TRUE);
+            longMap.put(id, Boolean.TRUE);
+        }
+    }
+
+    final long nextId() {
+        return ids[ops[cursor++ & (OPS - 1)]];
+    }
+
+    @Benchmark
+    public Object hashMapGet() {
+        return hashMap.get(nextId());
+    }
+
+    @Benchmark
+    public Object longMapGet() {
+        return longMap.get(nextId());
+    }
+
+    @Benchmark
+    public Object hashMapPut() {
+        return hashMap.put(nextId(), Boolean.TRUE);
+    }
+
+    @Benchmark
+    public Object longMapPut() {
+        return longMap.put(nextId(), Boolean.TRUE);
+    }
+
+    @Benchmark
+    public Object hashMapRemoveAndPut() {
+        long id = nextId();
+        Object v = hashMap.remove(id);
+        hashMap.put(id, Boolean.TRUE);
+        return v;
+    }
+
+    @Benchmark
+    public Object longMapRemoveAndPut() {
+        long id = nextId();
+        Object v = longMap.remove(id);
+        longMap.put(id, Boolean.TRUE);
+        return v;
+    }
+}
@@ -0,0 +1,128 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.CompactHashMap;
+import java.util.CompactLinkedHashMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * java.util中各Map实现的get/put/remove/遍历/扩容基准测试
+ *
+ * 被测的Map预先填充size个元素，每次调用按KeyDistribution生成的下标序列取一个key进行操作，
+ * put和remove之后会恢复原状，保证测量期间Map的大小不变
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class MapBenchmark {
+
+    /**
+     * 预先生成的下标个数，必须为2的幂，方便通过位运算循环取下标
+     */
+    static final int OPS = 1 << 16;
+
+    @Param({"HashMap", "LinkedHashMap", "TreeMap", "WeakHashMap", "IdentityHashMap", "CompactHashMap",
+            "CompactLinkedHashMap"})
+    String impl;
+
+    @Param({"16", "1024", "65536", "1048576", "10000000"})
+    int size;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution dist;
+
+    Integer[] keys;
+    int[] ops;
+    int cursor;
+    Map<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new Integer[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = Integer.valueOf(i * 31 + 7);
+        ops = dist.indices(size, OPS, 42L);
+        map = newMap(impl);
+        for (Integer k : keys)
+            map.put(k, k);
+    }
+
+    static Map<Integer, Integer> newMap(String impl) {
+        switch (impl) {
+            case "HashMap":         return new HashMap<>();
+            case "LinkedHashMap":   return new LinkedHashMap<>();
+            case "TreeMap":         return new TreeMap<>();
+            case "WeakHashMap":     return new WeakHashMap<>();
+            case "IdentityHashMap": return new IdentityHashMap<>();
+            case "CompactHashMap":  return new CompactHashMap<>();
+            case "CompactLinkedHashMap": return new CompactLinkedHashMap<>();
+            default: throw new IllegalArgumentException("Unknown map: " + impl);
+        }
+    }
+
+    final Integer nextKey() {
+        return keys[ops[cursor++ & (OPS - 1)]];
+    }
+
+    @Benchmark
+    public Integer get() {
+        return map.get(nextKey());
+    }
+
+    @Benchmark
+    public Integer put() {
+        Integer k = nextKey();
+        return map.put(k, k);
+    }
+
+    @Benchmark
+    public Integer removeAndPut() {
+        Integer k = nextKey();
+        Integer v = map.remove(k);
+        map.put(k, k);
+        return v;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void iterate(Blackhole bh) {
+        for (Map.Entry<Integer, Integer> e : map.entrySet())
+            bh.consume(e.getValue());
+    }
+
+    /**
+     * 从默认容量开始插入size个元素，覆盖了插入过程中的所有扩容操作
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<Integer, Integer> resize() {
+        Map<Integer, Integer> m = newMap(impl);
+        for (Integer k : keys)
+            m.put(k, k);
+        return m;
+    }
+}
@@ -0,0 +1,118 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.OffHeapHashMap;
+import java.util.OffHeapLinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OffHeapHashMap与HashMap&lt;String, byte[]&gt;的对比测试
+ * OffHeapHashMap的get需要把value复制到堆上，配合-prof gc观察两者的GC开销差异
+ * offHeapLru为访问顺序的OffHeapLinkedHashMap，key在堆上，value在堆外的slab中
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class OffHeapHashMapBenchmark {
+
+    static final int OPS = MapBenchmark.OPS;
+
+    @Param({"65536", "1048576"})
+    int size;
+
+    @Param({"256"})
+    int valueSize;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution dist;
+
+    String[] keys;
+    byte[][] keyBytes;
+    byte[] value;
+    int[] ops;
+    int cursor;
+    HashMap<String, byte[]> hashMap;
+    OffHeapHashMap offHeapMap;
+    OffHeapLinkedHashMap<String> offHeapLru;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new String[size];
+        keyBytes = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "session-" + Integer.toHexString(i * 0x9E3779B1);
+            keyBytes[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+        }
+        value = new byte[valueSize];
+        ops = dist.indices(size, OPS, 42L);
+        hashMap = new HashMap<>();
+        offHeapMap = new OffHeapHashMap();
+        offHeapLru = new OffHeapLinkedHashMap<>(Long.MAX_VALUE);
+        for (int i = 0; i < size; i++) {
+            hashMap.put(keys[i], value.clone());
+            offHeapMap.put(keyBytes[i], value);
+            offHeapLru.put(keys[i], value);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        offHeapMap.close();
+        offHeapLru.close();
+    }
+
+    final int next() {
+        return ops[cursor++ & (OPS - 1)];
+    }
+
+    @Benchmark
+    public byte[] hashMapGet() {
+        return hashMap.get(keys[next()]);
+    }
+
+    @Benchmark
+    public byte[] offHeapGet() {
+        return offHeapMap.get(keyBytes[next()]);
+    }
+
+    /**
+     * HashMap中替换为新分配的数组，与OffHeapHashMap复制value的开销对应
+     */
+    @Benchmark
+    public byte[] hashMapPut() {
+        return hashMap.put(keys[next()], value.clone());
+    }
+
+    @Benchmark
+    public boolean offHeapPut() {
+        return offHeapMap.put(keyBytes[next()], value);
+    }
+
+    @Benchmark
+    public byte[] offHeapLruGet() {
+        return offHeapLru.get(keys[next()]);
+    }
+
+    @Benchmark
+    public boolean offHeapLruPut() {
+        return offHeapLru.put(keys[next()], value);
+    }
+}
@@ -0,0 +1,117 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PriorityQueue和ArrayDeque的入队/出队/遍历/扩容基准测试
+ *
+ * 队列预先填充size个元素，offer和poll成对调用，保证测量期间队列大小不变
+ * PriorityQueue中元素的优先级按KeyDistribution生成
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class QueueBenchmark {
+
+    static final int OPS = MapBenchmark.OPS;
+
+    @Param({"16", "1024", "65536", "1048576", "10000000"})
+    int size;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution dist;
+
+    Integer[] elements;
+    int cursor;
+    PriorityQueue<Integer> priorityQueue;
+    ArrayDeque<Integer> deque;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] priorities = dist.indices(size, OPS, 42L);
+        elements = new Integer[OPS];
+        for (int i = 0; i < OPS; i++)
+            elements[i] = Integer.valueOf(priorities[i]);
+        priorityQueue = new PriorityQueue<>();
+        deque = new ArrayDeque<>();
+        for (int i = 0; i < size; i++) {
+            Integer e = elements[i & (OPS - 1)];
+            priorityQueue.offer(e);
+            deque.addLast(e);
+        }
+    }
+
+    final Integer nextElement() {
+        return elements[cursor++ & (OPS - 1)];
+    }
+
+    @Benchmark
+    public Integer priorityQueueOfferPoll() {
+        priorityQueue.offer(nextElement());
+        return priorityQueue.poll();
+    }
+
+    @Benchmark
+    public Integer arrayDequeAddLastPollFirst() {
+        deque.addLast(nextElement());
+        return deque.pollFirst();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void priorityQueueIterate(Blackhole bh) {
+        for (Integer e : priorityQueue)
+            bh.consume(e);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void arrayDequeIterate(Blackhole bh) {
+        for (Integer e : deque)
+            bh.consume(e);
+    }
+
+    /**
+     * 从默认容量开始入队size个元素，覆盖了入队过程中的所有扩容操作
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PriorityQueue<Integer> priorityQueueGrow() {
+        PriorityQueue<Integer> q = new PriorityQueue<>();
+        for (int i = 0; i < size; i++)
+            q.offer(elements[i & (OPS - 1)]);
+        return q;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ArrayDeque<Integer> arrayDequeGrow() {
+        ArrayDeque<Integer> q = new ArrayDeque<>();
+        for (int i = 0; i < size; i++)
+            q.addLast(elements[i & (OPS - 1)]);
+        return q;
+    }
+}
@@ -0,0 +1,109 @@
+package org.openjdk.bench.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ShardedLinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多线程下LRU缓存的吞吐量，所有线程共享一个缓存，按Zipf分布访问，未命中时put
+ *
+ * SYNCHRONIZED_LRU为Collections.synchronizedMap包装的访问顺序LinkedHashMap，
+ * 每次get都要获取同一把锁并修改同一个链表；SHARDED_LRU和SHARDED_LRU_SAMPLED为ShardedLinkedHashMap
+ * 的两种淘汰方式。线程数为机器的核数，可以通过-t参数修改
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ShardedLruBenchmark {
+
+    /**
+     * 每个线程预先生成的下标个数，必须为2的幂
+     */
+    static final int OPS = 1 << 16;
+
+    @Param({"SYNCHRONIZED_LRU", "SHARDED_LRU", "SHARDED_LRU_SAMPLED"})
+    String impl;
+
+    @Param({"100000"})
+    int cacheSize;
+
+    Integer[] keys;
+    Map<Integer, Integer> cache;
+
+    /**
+     * 用于给每个线程分配不同的随机数种子
+     */
+    final AtomicInteger seeds = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new Integer[cacheSize * 4];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = Integer.valueOf(i);
+        cache = newCache(impl, cacheSize);
+        for (int i = 0; i < cacheSize; i++)
+            cache.put(keys[i], keys[i]);
+    }
+
+    static Map<Integer, Integer> newCache(String impl, int cacheSize) {
+        int shards = Runtime.getRuntime().availableProcessors() << 2;
+        switch (impl) {
+            case "SYNCHRONIZED_LRU":
+                return Collections.synchronizedMap(new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                        return size() > cacheSize;
+                    }
+                });
+            case "SHARDED_LRU":
+                return new ShardedLinkedHashMap<>(cacheSize, shards, false);
+            case "SHARDED_LRU_SAMPLED":
+                return new ShardedLinkedHashMap<>(cacheSize, shards, true);
+            default:
+                throw new IllegalArgumentException("Unknown cache: " + impl);
+        }
+    }
+
+    /**
+     * 每个线程各自的访问序列
+     */
+    @State(Scope.Thread)
+    public static class Accesses {
+        int[] ops;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setup(ShardedLruBenchmark b) {
+            ops = KeyDistribution.ZIPFIAN.indices(b.keys.length, OPS, 42L + b.seeds.getAndIncrement());
+        }
+    }
+
+    @Benchmark
+    public Integer getOrPut(Accesses a) {
+        Integer k = keys[a.ops[a.cursor++ & (OPS - 1)]];
+        Integer v = cache.get(k);
+        if (v == null)
+            cache.put(k, k);
+        return v;
+    }
+}
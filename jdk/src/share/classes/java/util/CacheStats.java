@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存在某一时刻的统计信息快照，通过{@link InstrumentedLinkedHashMap#cacheStats()}获取
+ *
+ * <p>命中、未命中、加载和淘汰次数由{@link Counters}累加，计数器是分段的LongAdder，
+ * 在持有缓存锁的线程中累加，在监控线程中不加锁读取，互不干扰。
+ * 各项计数在生成快照时分别读取，彼此之间不是原子的，只是近似一致。
+ *
+ * @see InstrumentedLinkedHashMap
+ * @since 1.8
+ */
+public final class CacheStats {
+
+    /**
+     * 缓存累加的计数器
+     */
+    static final class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder loadSuccesses = new LongAdder();
+        final LongAdder loadFailures = new LongAdder();
+        final LongAdder loadNanos = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+        /**
+         * 记录一次加载，value为null或加载抛出异常时计为失败
+         */
+        void recordLoad(boolean success, long nanos) {
+            (success ? loadSuccesses : loadFailures).increment();
+            loadNanos.add(nanos);
+        }
+
+        CacheStats snapshot() {
+            return new CacheStats(hits.sum(), misses.sum(), loadSuccesses.sum(),
+                                  loadFailures.sum(), loadNanos.sum(), evictions.sum());
+        }
+    }
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+
+    /**
+     * 按给定的各项计数实例化，计数不能为负数
+     */
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount,
+                      long loadFailureCount, long totalLoadTime, long evictionCount) {
+        if (hitCount < 0 || missCount < 0 || loadSuccessCount < 0 ||
+            loadFailureCount < 0 || totalLoadTime < 0 || evictionCount < 0)
+            throw new IllegalArgumentException();
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * 查询次数，即命中与未命中次数之和
+     */
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * 命中率，没有查询时为1.0
+     */
+    public double hitRate() {
+        long requests = requestCount();
+        return (requests == 0L) ? 1.0 : (double)hitCount / requests;
+    }
+
+    /**
+     * 未命中率，没有查询时为0.0
+     */
+    public double missRate() {
+        long requests = requestCount();
+        return (requests == 0L) ? 0.0 : (double)missCount / requests;
+    }
+
+    /**
+     * 加载次数，包括成功和失败的加载
+     */
+    public long loadCount() {
+        return loadSuccessCount + loadFailureCount;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * 所有加载的累计耗时，单位为纳秒
+     */
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * 平均每次加载的耗时，单位为纳秒，没有加载时为0.0
+     */
+    public double averageLoadPenalty() {
+        long loads = loadCount();
+        return (loads == 0L) ? 0.0 : (double)totalLoadTime / loads;
+    }
+
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 此快照与较早的快照之差，用于计算一段时间内的统计，结果中的负数按0处理
+     */
+    public CacheStats minus(CacheStats other) {
+        return new CacheStats(
+                Math.max(0L, hitCount - other.hitCount),
+                Math.max(0L, missCount - other.missCount),
+                Math.max(0L, loadSuccessCount - other.loadSuccessCount),
+                Math.max(0L, loadFailureCount - other.loadFailureCount),
+                Math.max(0L, totalLoadTime - other.totalLoadTime),
+                Math.max(0L, evictionCount - other.evictionCount));
+    }
+
+    public int hashCode() {
+        return Objects.hash(hitCount, missCount, loadSuccessCount,
+                            loadFailureCount, totalLoadTime, evictionCount);
+    }
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof CacheStats))
+            return false;
+        CacheStats s = (CacheStats)o;
+        return hitCount == s.hitCount && missCount == s.missCount &&
+               loadSuccessCount == s.loadSuccessCount &&
+               loadFailureCount == s.loadFailureCount &&
+               totalLoadTime == s.totalLoadTime && evictionCount == s.evictionCount;
+    }
+
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", loadSuccessCount=" + loadSuccessCount +
+                ", loadFailureCount=" + loadFailureCount +
+                ", totalLoadTime=" + totalLoadTime +
+                ", evictionCount=" + evictionCount + '}';
+    }
+}
@@ -0,0 +1,1030 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import sun.misc.SharedSecrets;
+
+/**
+ * 不使用Node节点的紧凑哈希表，实现了与HashMap相同的Map契约
+ *
+ * <p>与HashMap的区别：
+ * 1. 与IdentityHashMap相同，键和值直接存放在同一个Object[]中，键在偶数位，值在其后的奇数位，
+ *    每个键值对只占用两个数组槽位，不会为每个键值对创建Node对象
+ * 2. 使用开放寻址法（线性探测）解决哈希冲突，删除时将后续的键值对向前移动填补空位
+ * 3. 每个键经过HashMap.hash扰动后的hash值缓存在int[]中，探测时先比较hash值，
+ *    相同才调用equals，扩容时也不需要重新调用hashCode
+ * 4. Map.Entry对象只在通过entrySet遍历时才按需创建
+ *
+ * <p>与HashMap一样，允许null键和null值，键的相等性通过equals判断。
+ * 此类不是线程安全的，所有集合视图的迭代器都是快速失败(fail-fast)的。
+ *
+ * <p>由于没有红黑树兜底，大量hashCode相同的键会使探测链变长，这种场景应继续使用HashMap
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see HashMap
+ * @see IdentityHashMap
+ * @since 1.8
+ */
+public class CompactHashMap<K,V>
+    extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable
+{
+    private static final long serialVersionUID = -2914853637471258376L;
+
+    /**
+     * 默认初始容量（可容纳的槽位数），必须为2的幂
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，桶数组长度为容量的2倍，所以最大为2的29次方
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    /**
+     * 默认加载因子，与HashMap相同
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * key为null会被替换为此值，table中为null的位置表示空位
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * 桶数组，长度为容量的2倍
+     * 键放在偶数位i，值放在i+1
+     */
+    transient Object[] table;
+
+    /**
+     * 缓存的hash值，hashes[i >> 1]为table[i]处的键经过HashMap.hash扰动后的hash值
+     */
+    transient int[] hashes;
+
+    /**
+     * 存放元素的个数
+     */
+    transient int size;
+
+    /**
+     * 修改次数，用作快速失败检查(fail-fast)
+     */
+    transient int modCount;
+
+    /**
+     * 扩容阈值，当元素个数大于此值时会触发扩容操作
+     */
+    transient int threshold;
+
+    /**
+     * 加载因子
+     * 为了保证探测总能遇到空位，加载因子必须小于1
+     */
+    final float loadFactor;
+
+    /**
+     * entrySet的缓存
+     */
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 按给定的初始容量和加载因子实例化
+     */
+    public CompactHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        init(capacity(initialCapacity, loadFactor));
+    }
+
+    /**
+     * 指定初始容量，按默认加载因子（0.75）实例化
+     */
+    public CompactHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 按默认初始容量（16）和默认加载因子（0.75）实例化
+     */
+    public CompactHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        init(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * 根据给定Map实例化一个存放相同映射的CompactHashMap，使用默认加载因子（0.75）
+     */
+    public CompactHashMap(Map<? extends K, ? extends V> m) {
+        this(m.size());
+        putAll(m);
+    }
+
+    /**
+     * 计算能够容纳expectedMaxSize个元素而不扩容的容量，结果为2的幂
+     */
+    static int capacity(int expectedMaxSize, float loadFactor) {
+        float fc = (float)expectedMaxSize / loadFactor + 1.0F;
+        return (fc >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY :
+               (fc <= DEFAULT_INITIAL_CAPACITY) ? DEFAULT_INITIAL_CAPACITY :
+               HashMap.tableSizeFor((int)fc);
+    }
+
+    /**
+     * 按给定容量初始化桶数组和扩容阈值
+     */
+    private void init(int capacity) {
+        table = new Object[capacity << 1];
+        hashes = new int[capacity];
+        threshold = thresholdFor(capacity);
+    }
+
+    /**
+     * 给定容量对应的扩容阈值，最大容量时至少保留一个空位
+     */
+    private int thresholdFor(int capacity) {
+        return (capacity >= MAXIMUM_CAPACITY) ? capacity - 2 :
+               (int)((float)capacity * loadFactor);
+    }
+
+    /**
+     * 当key为null时，将其替换为NULL_KEY
+     */
+    static Object maskNull(Object key) {
+        return (key == null ? NULL_KEY : key);
+    }
+
+    /**
+     * 将NULL_KEY转换回null
+     */
+    static Object unmaskNull(Object key) {
+        return (key == NULL_KEY ? null : key);
+    }
+
+    /**
+     * 根据hash值计算键在桶数组中的初始位置，结果为偶数
+     */
+    static int indexFor(int h, int length) {
+        return (h << 1) & (length - 1);
+    }
+
+    /**
+     * 找到下一个键的位置，超过最大索引重置为0
+     */
+    static int nextKeyIndex(int i, int len) {
+        return (i + 2 < len ? i + 2 : 0);
+    }
+
+    /**
+     * 查询存放的元素个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查询是否为空
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 根据hash和key查找键在桶数组中的索引，找不到则返回-1
+     * 先比较缓存的hash值，相同时再判断引用相等或equals
+     */
+    final int indexOf(int hash, Object key) {
+        Object k = maskNull(key);
+        Object[] tab = table;
+        int[] hs = hashes;
+        int len = tab.length;
+        Object item;
+
+        // 线性探测，遇到空位说明key不存在
+        for (int i = indexFor(hash, len); (item = tab[i]) != null;
+             i = nextKeyIndex(i, len)) {
+            if (hs[i >>> 1] == hash && (item == k || k.equals(item)))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 根据key值查找元素
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i;
+        return (i = indexOf(HashMap.hash(key), key)) < 0 ? null : (V)table[i + 1];
+    }
+
+    /**
+     * 若key不存在，则返回defaultValue
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i;
+        return (i = indexOf(HashMap.hash(key), key)) < 0 ? defaultValue : (V)table[i + 1];
+    }
+
+    /**
+     * 判断是否包含key
+     */
+    public boolean containsKey(Object key) {
+        return indexOf(HashMap.hash(key), key) >= 0;
+    }
+
+    /**
+     * 判断是否存在与给定value相等的值
+     */
+    public boolean containsValue(Object value) {
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object v;
+            if (tab[i] != null &&
+                ((v = tab[i + 1]) == value || (value != null && value.equals(v))))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 向Map中添加键值对
+     */
+    public V put(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, false);
+    }
+
+    /**
+     * 添加键值对
+     * onlyIfAbsent为true时，若键已存在且值不为null，则不进行更新
+     * 若插入前键已存在，则返回其对应的值，不存在则返回null
+     */
+    @SuppressWarnings("unchecked")
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        Object k = maskNull(key);
+        Object[] tab = table;
+        int[] hs = hashes;
+        int len = tab.length;
+        int i = indexFor(hash, len);
+        Object item;
+
+        // 向后探测，直到找到相同的key或遇到空位
+        for (; (item = tab[i]) != null; i = nextKeyIndex(i, len)) {
+            if (hs[i >>> 1] == hash && (item == k || k.equals(item))) {
+                V oldValue = (V)tab[i + 1];
+                if (!onlyIfAbsent || oldValue == null)
+                    tab[i + 1] = value;
+                return oldValue;
+            }
+        }
+
+        // 在空位处插入
+        tab[i] = k;
+        tab[i + 1] = value;
+        hs[i >>> 1] = hash;
+        ++modCount;
+
+        // 如果元素数量大于扩容阈值，则进行扩容操作
+        if (++size > threshold)
+            resize(hs.length << 1);
+        return null;
+    }
+
+    /**
+     * 将容量扩大为newCapacity，使用缓存的hash值重新探测插入，不需要重新调用hashCode
+     */
+    final void resize(int newCapacity) {
+        Object[] oldTab = table;
+        int[] oldHashes = hashes;
+        int oldCap = oldHashes.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= oldCap - 1)
+                throw new IllegalStateException("Capacity exhausted.");
+            threshold = oldCap - 2;
+            return;
+        }
+        int newCap = Math.min(newCapacity, MAXIMUM_CAPACITY);
+        if (newCap <= oldCap)
+            return;
+        Object[] tab = new Object[newCap << 1];
+        int[] hs = new int[newCap];
+        int len = tab.length;
+        for (int j = 0; j < oldTab.length; j += 2) {
+            Object k;
+            if ((k = oldTab[j]) != null) {
+                int h = oldHashes[j >>> 1];
+                int i = indexFor(h, len);
+                while (tab[i] != null)
+                    i = nextKeyIndex(i, len);
+                tab[i] = k;
+                tab[i + 1] = oldTab[j + 1];
+                hs[i >>> 1] = h;
+            }
+        }
+        table = tab;
+        hashes = hs;
+        threshold = thresholdFor(newCap);
+    }
+
+    /**
+     * 将传入的Map中的所有键值对都复制过来
+     * 先根据传入Map的大小一次性扩容到位
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        if (n == 0)
+            return;
+        if (n > threshold)
+            resize(capacity(n, loadFactor));
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    /**
+     * 删除key对应的键值对，返回其值，不存在则返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i;
+        if ((i = indexOf(HashMap.hash(key), key)) < 0)
+            return null;
+        V oldValue = (V)table[i + 1];
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * 删除索引i处的键值对
+     */
+    final void removeAt(int i) {
+        Object[] tab = table;
+        modCount++;
+        size--;
+        tab[i] = null;
+        tab[i + 1] = null;
+        closeDeletion(i);
+    }
+
+    /**
+     * 删除一个键值对后，需要将后面映射到相同位置的键值对向前移动，使探测链保持连续
+     * 判断条件与IdentityHashMap.closeDeletion相同，只是初始位置由缓存的hash值计算
+     */
+    private void closeDeletion(int d) {
+        Object[] tab = table;
+        int[] hs = hashes;
+        int len = tab.length;
+
+        // 遍历删除位置之后的键
+        Object item;
+        for (int i = nextKeyIndex(d, len); (item = tab[i]) != null;
+             i = nextKeyIndex(i, len)) {
+            // 键i的初始位置
+            int r = indexFor(hs[i >>> 1], len);
+
+            // 若r不在(d, i]区间内（需要考虑环绕），则将键i移动到空位d
+            if ((i < r && (r <= d || d <= i)) || (r <= d && d <= i)) {
+                tab[d] = item;
+                tab[d + 1] = tab[i + 1];
+                hs[d >>> 1] = hs[i >>> 1];
+                tab[i] = null;
+                tab[i + 1] = null;
+                d = i;
+            }
+        }
+    }
+
+    /**
+     * 清空Map，保留桶数组
+     */
+    public void clear() {
+        modCount++;
+        Arrays.fill(table, null);
+        size = 0;
+    }
+
+    // Overrides of JDK8 Map extension methods
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, true);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        int i; Object v;
+        if ((i = indexOf(HashMap.hash(key), key)) >= 0 &&
+            ((v = table[i + 1]) == value || (value != null && value.equals(v)))) {
+            removeAt(i);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        int i; Object v;
+        if ((i = indexOf(HashMap.hash(key), key)) >= 0 &&
+            ((v = table[i + 1]) == oldValue || (v != null && v.equals(oldValue)))) {
+            table[i + 1] = newValue;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V replace(K key, V value) {
+        int i;
+        if ((i = indexOf(HashMap.hash(key), key)) >= 0) {
+            V oldValue = (V)table[i + 1];
+            table[i + 1] = value;
+            return oldValue;
+        }
+        return null;
+    }
+
+    /**
+     * 若key不存在或其值为null，则用mappingFunction计算出新值并插入
+     * 计算期间若Map被修改，则抛出ConcurrentModificationException
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        int hash = HashMap.hash(key);
+        int i = indexOf(hash, key);
+        V oldValue;
+        if (i >= 0 && (oldValue = (V)table[i + 1]) != null)
+            return oldValue;
+        int mc = modCount;
+        V v = mappingFunction.apply(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v == null)
+            return null;
+        if (i >= 0)
+            table[i + 1] = v;
+        else
+            putVal(hash, key, v, false);
+        return v;
+    }
+
+    /**
+     * 若key存在且其值不为null，则对其值进行重新计算，新值为null时删除此键值对
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        int i; V oldValue;
+        if ((i = indexOf(HashMap.hash(key), key)) >= 0 &&
+            (oldValue = (V)table[i + 1]) != null) {
+            int mc = modCount;
+            V v = remappingFunction.apply(key, oldValue);
+            if (mc != modCount)
+                throw new ConcurrentModificationException();
+            if (v != null) {
+                table[i + 1] = v;
+                return v;
+            }
+            removeAt(i);
+        }
+        return null;
+    }
+
+    /**
+     * 对指定key的值进行重新计算，新值为null时删除此键值对
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        int hash = HashMap.hash(key);
+        int i = indexOf(hash, key);
+        V oldValue = (i >= 0) ? (V)table[i + 1] : null;
+        int mc = modCount;
+        V v = remappingFunction.apply(key, oldValue);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (i >= 0) {
+            if (v != null)
+                table[i + 1] = v;
+            else
+                removeAt(i);
+        }
+        else if (v != null)
+            putVal(hash, key, v, false);
+        return v;
+    }
+
+    /**
+     * 若key不存在或其值为null，则插入value，否则将旧值与value合并，合并结果为null时删除此键值对
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null)
+            throw new NullPointerException();
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        int hash = HashMap.hash(key);
+        int i = indexOf(hash, key);
+        if (i < 0) {
+            putVal(hash, key, value, false);
+            return value;
+        }
+        V oldValue = (V)table[i + 1];
+        V v;
+        if (oldValue == null)
+            v = value;
+        else {
+            int mc = modCount;
+            v = remappingFunction.apply(oldValue, value);
+            if (mc != modCount)
+                throw new ConcurrentModificationException();
+        }
+        if (v != null)
+            table[i + 1] = v;
+        else
+            removeAt(i);
+        return v;
+    }
+
+    /**
+     * 遍历所有元素
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object k = tab[i];
+            if (k != null) {
+                action.accept((K)unmaskNull(k), (V)tab[i + 1]);
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * 遍历所有元素，根据传入的方法对值进行替换
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object k = tab[i];
+            if (k != null) {
+                tab[i + 1] = function.apply((K)unmaskNull(k), (V)tab[i + 1]);
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * 与AbstractMap.hashCode结果相同，但不需要为每个键值对创建Entry对象
+     */
+    public int hashCode() {
+        int h = 0;
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object k = tab[i];
+            if (k != null)
+                h += Objects.hashCode(unmaskNull(k)) ^ Objects.hashCode(tab[i + 1]);
+        }
+        return h;
+    }
+
+    /**
+     * 返回浅拷贝，键和值本身不会被克隆
+     */
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        try {
+            CompactHashMap<K,V> m = (CompactHashMap<K,V>) super.clone();
+            m.entrySet = null;
+            m.keySet = null;
+            m.values = null;
+            m.table = table.clone();
+            m.hashes = hashes.clone();
+            m.modCount = 0;
+            return m;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    /**
+     * 迭代器，与IdentityHashMapIterator相同，从前往后遍历桶数组
+     *
+     * 通过迭代器删除时需要移动后面的键值对填补空位，若一个已经遍历过的键值对
+     * （环绕到数组头部的那部分）被移动到了之后还会遍历到的位置，为了不重复返回它，
+     * 会将桶数组剩余的部分复制一份，后续在副本上遍历
+     */
+    private abstract class HashIterator<T> implements Iterator<T> {
+        int index = (size != 0 ? 0 : table.length); // current slot.
+        int expectedModCount = modCount; // to support fast-fail
+        int lastReturnedIndex = -1;      // to allow remove()
+        boolean indexValid; // To avoid unnecessary next computation
+        Object[] traversalTable = table; // reference to main table or copy
+
+        public boolean hasNext() {
+            Object[] tab = traversalTable;
+            for (int i = index; i < tab.length; i+=2) {
+                Object key = tab[i];
+                if (key != null) {
+                    index = i;
+                    return indexValid = true;
+                }
+            }
+            index = tab.length;
+            return false;
+        }
+
+        protected int nextIndex() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!indexValid && !hasNext())
+                throw new NoSuchElementException();
+
+            indexValid = false;
+            lastReturnedIndex = index;
+            index += 2;
+            return lastReturnedIndex;
+        }
+
+        public void remove() {
+            if (lastReturnedIndex == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+
+            expectedModCount = ++modCount;
+            int deletedSlot = lastReturnedIndex;
+            lastReturnedIndex = -1;
+            // 回退到删除的位置，之后的键值对可能会被移动到这里
+            index = deletedSlot;
+            indexValid = false;
+
+            Object[] tab = traversalTable;
+            int len = tab.length;
+
+            int d = deletedSlot;
+            Object key = tab[d];
+            tab[d] = null;
+            tab[d + 1] = null;
+
+            // 若正在副本上遍历，则从真正的桶数组中删除，副本不需要移动
+            if (tab != CompactHashMap.this.table) {
+                CompactHashMap.this.remove(unmaskNull(key));
+                expectedModCount = modCount;
+                return;
+            }
+
+            size--;
+
+            int[] hs = hashes;
+            Object item;
+            for (int i = nextKeyIndex(d, len); (item = tab[i]) != null;
+                 i = nextKeyIndex(i, len)) {
+                int r = indexFor(hs[i >>> 1], len);
+                // 判断条件见closeDeletion
+                if ((i < r && (r <= d || d <= i)) ||
+                    (r <= d && d <= i)) {
+
+                    // 已经遍历过的键值对将要被移动到之后还会遍历到的位置，
+                    // 复制桶数组剩余的部分，后续在副本上遍历
+                    if (i < deletedSlot && d >= deletedSlot &&
+                        traversalTable == CompactHashMap.this.table) {
+                        int remaining = len - deletedSlot;
+                        Object[] newTable = new Object[remaining];
+                        System.arraycopy(tab, deletedSlot,
+                                         newTable, 0, remaining);
+                        traversalTable = newTable;
+                        index = 0;
+                    }
+
+                    tab[d] = item;
+                    tab[d + 1] = tab[i + 1];
+                    hs[d >>> 1] = hs[i >>> 1];
+                    tab[i] = null;
+                    tab[i + 1] = null;
+                    d = i;
+                }
+            }
+        }
+    }
+
+    private class KeyIterator extends HashIterator<K> {
+        @SuppressWarnings("unchecked")
+        public K next() {
+            return (K) unmaskNull(traversalTable[nextIndex()]);
+        }
+    }
+
+    private class ValueIterator extends HashIterator<V> {
+        @SuppressWarnings("unchecked")
+        public V next() {
+            return (V) traversalTable[nextIndex() + 1];
+        }
+    }
+
+    /**
+     * 键值对迭代器，每次调用next时才创建Entry对象
+     */
+    private class EntryIterator extends HashIterator<Map.Entry<K,V>> {
+        private Entry lastReturnedEntry;
+
+        public Map.Entry<K,V> next() {
+            lastReturnedEntry = new Entry(nextIndex());
+            return lastReturnedEntry;
+        }
+
+        public void remove() {
+            lastReturnedIndex =
+                ((null == lastReturnedEntry) ? -1 : lastReturnedEntry.index);
+            super.remove();
+            lastReturnedEntry.index = lastReturnedIndex;
+            lastReturnedEntry = null;
+        }
+
+        /**
+         * 指向桶数组某个位置的Entry，被删除后index为-1
+         */
+        private class Entry implements Map.Entry<K,V> {
+            private int index;
+
+            private Entry(int index) {
+                this.index = index;
+            }
+
+            @SuppressWarnings("unchecked")
+            public K getKey() {
+                checkIndexForEntryUse();
+                return (K) unmaskNull(traversalTable[index]);
+            }
+
+            @SuppressWarnings("unchecked")
+            public V getValue() {
+                checkIndexForEntryUse();
+                return (V) traversalTable[index+1];
+            }
+
+            @SuppressWarnings("unchecked")
+            public V setValue(V value) {
+                checkIndexForEntryUse();
+                V oldValue = (V) traversalTable[index+1];
+                traversalTable[index+1] = value;
+                // 若正在副本上遍历，需要同时写入真正的桶数组
+                if (traversalTable != CompactHashMap.this.table)
+                    put((K) unmaskNull(traversalTable[index]), value);
+                return oldValue;
+            }
+
+            public boolean equals(Object o) {
+                if (index < 0)
+                    return super.equals(o);
+
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+                return (Objects.equals(e.getKey(), unmaskNull(traversalTable[index])) &&
+                        Objects.equals(e.getValue(), traversalTable[index+1]));
+            }
+
+            public int hashCode() {
+                if (index < 0)
+                    return super.hashCode();
+
+                return (Objects.hashCode(unmaskNull(traversalTable[index])) ^
+                        Objects.hashCode(traversalTable[index+1]));
+            }
+
+            public String toString() {
+                if (index < 0)
+                    return super.toString();
+
+                return (unmaskNull(traversalTable[index]) + "="
+                        + traversalTable[index+1]);
+            }
+
+            private void checkIndexForEntryUse() {
+                if (index < 0)
+                    throw new IllegalStateException("Entry was removed");
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Views
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) {
+            int i;
+            if ((i = indexOf(HashMap.hash(key), key)) < 0)
+                return false;
+            removeAt(i);
+            return true;
+        }
+        public final Spliterator<K> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED |
+                                            Spliterator.DISTINCT);
+        }
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            Object[] tab = table;
+            for (int i = 0; i < tab.length; i += 2) {
+                Object k = tab[i];
+                if (k != null)
+                    action.accept((K)unmaskNull(k));
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+        public final Spliterator<V> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED);
+        }
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            Object[] tab = table;
+            for (int i = 0; i < tab.length; i += 2) {
+                if (tab[i] != null)
+                    action.accept((V)tab[i + 1]);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            int i = indexOf(HashMap.hash(key), key);
+            return i >= 0 && Objects.equals(table[i + 1], e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                return CompactHashMap.this.remove(e.getKey(), e.getValue());
+            }
+            return false;
+        }
+        public final Spliterator<Map.Entry<K,V>> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED |
+                                            Spliterator.DISTINCT);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Serialization
+
+    /**
+     * 序列化，依次写出容量、元素个数以及所有的键和值
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws IOException {
+        // Write out the loadfactor and any hidden stuff
+        s.defaultWriteObject();
+        s.writeInt(hashes.length);
+        s.writeInt(size);
+        Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 2) {
+            Object key = tab[i];
+            if (key != null) {
+                s.writeObject(unmaskNull(key));
+                s.writeObject(tab[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * 反序列化，按元素个数预先分配桶数组，插入时不会触发扩容
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new InvalidObjectException("Illegal load factor: " +
+                                             loadFactor);
+        s.readInt();                // Read and ignore capacity
+        int mappings = s.readInt(); // Read number of mappings (size)
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                                             mappings);
+        int cap = capacity(mappings, loadFactor);
+        SharedSecrets.getJavaOISAccess().checkArray(s, Object[].class, cap << 1);
+        init(cap);
+        for (int i = 0; i < mappings; i++) {
+            K key = (K) s.readObject();
+            V value = (V) s.readObject();
+            putVal(HashMap.hash(key), key, value, false);
+        }
+    }
+}
@@ -0,0 +1,879 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import sun.misc.SharedSecrets;
+
+/**
+ * 用数组保存元素、用int下标代替前后指针的LinkedHashMap
+ *
+ * <p>LinkedHashMap.Entry在HashMap.Node的基础上增加了before/after两个引用，每个元素多占用8到16字节，
+ * 而且节点分散在堆中，按链表遍历时几乎每一步都是一次缓存未命中。这里不创建节点对象：
+ * <pre>
+ *   index:   [ 0 | 3 | 0 | 1 | 0 | 2 | 0 | 0 ]     哈希索引，线性探测，存放槽位下标+1，0表示空
+ *                  \       \       \
+ *   keys:    [ k0 | k1 | k2 | ... ]                 槽位按插入顺序连续存放
+ *   vals:    [ v0 | v1 | v2 | ... ]
+ *   hashes:  [ h0 | h1 | h2 | ... ]
+ *   before:  [ -1 |  0 |  1 | ... ]                 代替LinkedHashMap.Entry的before/after
+ *   after:   [  1 |  2 | -1 | ... ]
+ * </pre>
+ * 新元素总是追加到已使用部分的末尾，所以插入顺序与槽位顺序一致，遍历沿after下标进行，
+ * 实际上是对几个数组的顺序扫描。删除时只从索引中删除并留下空槽位（keys中为null），
+ * 空槽位超过元素个数时，或者数组用完时，按链表顺序把所有元素紧凑地复制到新数组的开头，
+ * 重建索引（hash值已缓存，不需要再调用hashCode），之后链表顺序与槽位顺序重新一致。
+ * 紧凑化的开销分摊到每次删除上是O(1)的。
+ *
+ * <p>每个元素在各数组中共占用5个槽位（两个引用和三个int），外加索引中约1/loadFactor个int，
+ * 不需要对象头，也不需要桶数组中的引用。与LinkedHashMap一样支持accessOrder和
+ * {@link #removeEldestEntry(Map.Entry)}：按访问顺序时，被访问的元素只修改before/after下标移动到链表尾部，
+ * 槽位不变，所以在下一次紧凑化之前，遍历会在数组中跳跃。
+ *
+ * <p>与HashMap一样，允许null键和null值，此类不是线程安全的，所有集合视图的迭代器都是快速失败的。
+ * 由于没有红黑树兜底，大量hashCode相同的键会使探测链变长，这种场景应继续使用LinkedHashMap。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see LinkedHashMap
+ * @see CompactHashMap
+ * @since 1.8
+ */
+public class CompactLinkedHashMap<K,V>
+    extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable
+{
+    private static final long serialVersionUID = 5137652958617408512L;
+
+    /**
+     * 默认初始容量（索引的长度），必须为2的幂
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 索引的最大长度
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 默认加载因子，与HashMap相同
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 已使用的槽位少于此值时，删除不会触发紧凑化
+     */
+    static final int MIN_COMPACT_SLOTS = 16;
+
+    /**
+     * 哈希索引，存放槽位下标+1，0表示空位，长度为2的幂
+     */
+    transient int[] index;
+
+    /**
+     * 槽位中的键，null键被替换为NULL_KEY，null表示空槽位
+     */
+    transient Object[] keys;
+
+    /**
+     * 槽位中的值
+     */
+    transient Object[] vals;
+
+    /**
+     * 槽位中的键经过HashMap.hash扰动后的hash值
+     */
+    transient int[] hashes;
+
+    /**
+     * 链表中前一个和后一个元素的槽位，-1表示没有
+     */
+    transient int[] before, after;
+
+    /**
+     * 链表头尾元素的槽位，空Map时为-1
+     */
+    transient int head, tail;
+
+    /**
+     * 已使用的槽位个数，包括空槽位，新元素放在此处
+     */
+    transient int used;
+
+    /**
+     * 存放元素的个数
+     */
+    transient int size;
+
+    /**
+     * 修改次数，用作快速失败检查(fail-fast)
+     */
+    transient int modCount;
+
+    /**
+     * 加载因子，必须小于1，保证探测总能遇到空位
+     */
+    final float loadFactor;
+
+    /**
+     * 遍历顺序，true为访问顺序，false为插入顺序
+     */
+    final boolean accessOrder;
+
+    /**
+     * entrySet的缓存
+     */
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 按给定的初始容量、加载因子和遍历顺序实例化
+     */
+    public CompactLinkedHashMap(int initialCapacity, float loadFactor,
+                                boolean accessOrder) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        this.accessOrder = accessOrder;
+        init(CompactHashMap.capacity(initialCapacity, loadFactor));
+    }
+
+    /**
+     * 按给定的初始容量和加载因子实例化，遍历顺序为插入顺序
+     */
+    public CompactLinkedHashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * 指定初始容量，按默认加载因子（0.75）实例化，遍历顺序为插入顺序
+     */
+    public CompactLinkedHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, false);
+    }
+
+    /**
+     * 按默认初始容量（16）和默认加载因子（0.75）实例化，遍历顺序为插入顺序
+     */
+    public CompactLinkedHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, false);
+    }
+
+    /**
+     * 根据给定Map实例化，遍历顺序为插入顺序
+     */
+    public CompactLinkedHashMap(Map<? extends K, ? extends V> m) {
+        this(m.size(), DEFAULT_LOAD_FACTOR, false);
+        putAll(m);
+    }
+
+    /**
+     * 给定索引长度对应的槽位个数，最大容量时至少保留一个空位
+     */
+    private int slotsFor(int capacity) {
+        return (capacity >= MAXIMUM_CAPACITY) ? capacity - 1 :
+               Math.max(1, (int)((float)capacity * loadFactor));
+    }
+
+    /**
+     * 按给定的索引长度分配空的数组
+     */
+    private void init(int capacity) {
+        int n = slotsFor(capacity);
+        index = new int[capacity];
+        keys = new Object[n];
+        vals = new Object[n];
+        hashes = new int[n];
+        before = new int[n];
+        after = new int[n];
+        head = tail = -1;
+        used = size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* ------------------------------------------------------------ */
+    // index and links
+
+    /**
+     * 根据hash和key查找元素所在的槽位，找不到则返回-1
+     * 先比较缓存的hash值，相同时再判断引用相等或equals
+     */
+    final int slotOf(int hash, Object key) {
+        Object k = CompactHashMap.maskNull(key);
+        int[] idx = index;
+        Object[] ks = keys;
+        int[] hs = hashes;
+        int mask = idx.length - 1;
+        Object item;
+        for (int i = hash & mask, s; (s = idx[i]) != 0; i = (i + 1) & mask) {
+            if (hs[--s] == hash && ((item = ks[s]) == k || k.equals(item)))
+                return s;
+        }
+        return -1;
+    }
+
+    /**
+     * 在索引中登记槽位，调用者保证索引中有空位
+     */
+    private static void insertIndex(int[] idx, int hash, int slot) {
+        int mask = idx.length - 1;
+        int i = hash & mask;
+        while (idx[i] != 0)
+            i = (i + 1) & mask;
+        idx[i] = slot + 1;
+    }
+
+    /**
+     * 从索引中删除槽位，与CompactHashMap.closeDeletion相同，把后面的项向前移动填补空位
+     */
+    private void deleteIndex(int slot) {
+        int[] idx = index;
+        int[] hs = hashes;
+        int mask = idx.length - 1;
+        int d = hs[slot] & mask;
+        while (idx[d] != slot + 1)
+            d = (d + 1) & mask;
+        idx[d] = 0;
+        int s;
+        for (int i = (d + 1) & mask; (s = idx[i]) != 0; i = (i + 1) & mask) {
+            int r = hs[s - 1] & mask;
+            // r为此项的理想位置，若d在r到i的环形区间内，则将此项移动到d
+            if ((i < r && (r <= d || d <= i)) || (r <= d && d <= i)) {
+                idx[d] = s;
+                idx[i] = 0;
+                d = i;
+            }
+        }
+    }
+
+    private void linkLast(int s) {
+        int t = tail;
+        before[s] = t;
+        after[s] = -1;
+        if (t < 0)
+            head = s;
+        else
+            after[t] = s;
+        tail = s;
+    }
+
+    private void unlink(int s) {
+        int b = before[s], a = after[s];
+        if (b < 0)
+            head = a;
+        else
+            after[b] = a;
+        if (a < 0)
+            tail = b;
+        else
+            before[a] = b;
+    }
+
+    /**
+     * 按链表顺序把所有元素复制到给定长度的新数组的开头，并重建索引
+     * 之后链表顺序与槽位顺序一致，槽位下标全部改变
+     */
+    final void rebuild(int capacity) {
+        int n = slotsFor(capacity);
+        Object[] ks = new Object[n], vs = new Object[n];
+        int[] hs = new int[n], bf = new int[n], af = new int[n];
+        int[] idx = new int[capacity];
+        Object[] oks = keys, ovs = vals;
+        int[] ohs = hashes, oaf = after;
+        int j = 0;
+        for (int s = head; s >= 0; s = oaf[s], j++) {
+            ks[j] = oks[s];
+            vs[j] = ovs[s];
+            int h = hs[j] = ohs[s];
+            bf[j] = j - 1;
+            af[j] = j + 1;
+            insertIndex(idx, h, j);
+        }
+        if (j > 0)
+            af[j - 1] = -1;
+        index = idx;
+        keys = ks;
+        vals = vs;
+        hashes = hs;
+        before = bf;
+        after = af;
+        head = (j > 0) ? 0 : -1;
+        tail = j - 1;
+        used = j;
+    }
+
+    /**
+     * 槽位用完时调用：空槽位较多时只紧凑化，否则扩容为两倍
+     */
+    private void ensureSlot() {
+        int n = keys.length;
+        int capacity = index.length;
+        if (used - size >= (n >>> 2) && size < n)
+            rebuild(capacity);
+        else if (capacity < MAXIMUM_CAPACITY)
+            rebuild(capacity << 1);
+        else if (size < n)
+            rebuild(capacity);
+        else
+            throw new IllegalStateException("Capacity exceeded");
+    }
+
+    /**
+     * 访问元素后，若为访问顺序则将其移动到链表尾部
+     */
+    final void afterAccess(int s) {
+        if (accessOrder && tail != s) {
+            unlink(s);
+            linkLast(s);
+            ++modCount;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Map operations
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int s;
+        if ((s = slotOf(HashMap.hash(key), key)) < 0)
+            return null;
+        afterAccess(s);
+        return (V)vals[s];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int s;
+        if ((s = slotOf(HashMap.hash(key), key)) < 0)
+            return defaultValue;
+        afterAccess(s);
+        return (V)vals[s];
+    }
+
+    public boolean containsKey(Object key) {
+        return slotOf(HashMap.hash(key), key) >= 0;
+    }
+
+    /**
+     * 按链表顺序扫描所有值
+     */
+    public boolean containsValue(Object value) {
+        Object[] vs = vals;
+        int[] af = after;
+        for (int s = head; s >= 0; s = af[s]) {
+            Object v = vs[s];
+            if (v == value || (value != null && value.equals(v)))
+                return true;
+        }
+        return false;
+    }
+
+    public V put(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, true);
+    }
+
+    /**
+     * key已存在时替换值并视为一次访问，否则追加到槽位末尾和链表尾部
+     */
+    @SuppressWarnings("unchecked")
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        int s;
+        if ((s = slotOf(hash, key)) >= 0) {
+            V oldValue = (V)vals[s];
+            if (!onlyIfAbsent || oldValue == null)
+                vals[s] = value;
+            afterAccess(s);
+            return oldValue;
+        }
+        if (used == keys.length)
+            ensureSlot();
+        s = used++;
+        keys[s] = CompactHashMap.maskNull(key);
+        vals[s] = value;
+        hashes[s] = hash;
+        linkLast(s);
+        insertIndex(index, hash, s);
+        ++size;
+        ++modCount;
+        afterInsertion();
+        return null;
+    }
+
+    /**
+     * 插入新元素后，根据removeEldestEntry的返回值决定是否删除链表头部的元素
+     */
+    private void afterInsertion() {
+        int h;
+        if ((h = head) >= 0 && removeEldestEntry(new Entry(h)))
+            removeSlot(h, true);
+    }
+
+    /**
+     * 与LinkedHashMap相同，返回true时删除最老的元素，默认总是返回false
+     */
+    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+        return false;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        if (n == 0)
+            return;
+        // 预先扩容，避免逐个插入时多次复制
+        if (size + n > keys.length) {
+            int capacity = CompactHashMap.capacity(size + n, loadFactor);
+            if (capacity > index.length)
+                rebuild(Math.min(capacity, MAXIMUM_CAPACITY));
+        }
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K key = e.getKey();
+            putVal(HashMap.hash(key), key, e.getValue(), false);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int s;
+        if ((s = slotOf(HashMap.hash(key), key)) < 0)
+            return null;
+        V oldValue = (V)vals[s];
+        removeSlot(s, true);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        int s;
+        if ((s = slotOf(HashMap.hash(key), key)) < 0 ||
+            !Objects.equals(vals[s], value))
+            return false;
+        removeSlot(s, true);
+        return true;
+    }
+
+    /**
+     * 删除槽位中的元素，留下空槽位
+     * compact为true时，空槽位超过元素个数则紧凑化；迭代器删除时为false，保持槽位下标不变
+     */
+    final void removeSlot(int s, boolean compact) {
+        deleteIndex(s);
+        unlink(s);
+        keys[s] = null;
+        vals[s] = null;
+        --size;
+        ++modCount;
+        if (compact && used - size > size && used >= MIN_COMPACT_SLOTS)
+            rebuild(index.length);
+    }
+
+    public void clear() {
+        if (used > 0) {
+            Arrays.fill(keys, 0, used, null);
+            Arrays.fill(vals, 0, used, null);
+            Arrays.fill(index, 0);
+            head = tail = -1;
+            used = size = 0;
+        }
+        ++modCount;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean replace(K key, V oldValue, V newValue) {
+        int s;
+        if ((s = slotOf(HashMap.hash(key), key)) < 0 ||
+            !Objects.equals(vals[s], oldValue))
+            return false;
+        vals[s] = newValue;
+        afterAccess(s);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V replace(K key, V value) {
+        int s;
+        if ((s = slotOf(HashMap.hash(key), key)) < 0)
+            return null;
+        V oldValue = (V)vals[s];
+        vals[s] = value;
+        afterAccess(s);
+        return oldValue;
+    }
+
+    /**
+     * 按链表顺序遍历，与LinkedHashMap相同
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] ks = keys, vs = vals;
+        int[] af = after;
+        for (int s = head; s >= 0 && modCount == mc; s = af[s])
+            action.accept((K)CompactHashMap.unmaskNull(ks[s]), (V)vs[s]);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] ks = keys, vs = vals;
+        int[] af = after;
+        for (int s = head; s >= 0 && modCount == mc; s = af[s])
+            vs[s] = function.apply((K)CompactHashMap.unmaskNull(ks[s]), (V)vs[s]);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * 返回浅拷贝，键和值本身不会被克隆
+     */
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        try {
+            CompactLinkedHashMap<K,V> m = (CompactLinkedHashMap<K,V>) super.clone();
+            m.entrySet = null;
+            m.keySet = null;
+            m.values = null;
+            m.index = index.clone();
+            m.keys = keys.clone();
+            m.vals = vals.clone();
+            m.hashes = hashes.clone();
+            m.before = before.clone();
+            m.after = after.clone();
+            m.modCount = 0;
+            return m;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    /**
+     * 与LinkedHashMap.LinkedHashIterator相同，沿after下标遍历
+     * 通过迭代器删除时不会紧凑化，所以保存的下一个槽位一直有效
+     */
+    abstract class LinkedHashIterator {
+        int next;
+        int current;
+        int expectedModCount;
+
+        LinkedHashIterator() {
+            next = head;
+            expectedModCount = modCount;
+            current = -1;
+        }
+
+        public final boolean hasNext() {
+            return next >= 0;
+        }
+
+        final int nextSlot() {
+            int s = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (s < 0)
+                throw new NoSuchElementException();
+            current = s;
+            next = after[s];
+            return s;
+        }
+
+        public final void remove() {
+            int s = current;
+            if (s < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = -1;
+            removeSlot(s, false);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class LinkedKeyIterator extends LinkedHashIterator
+        implements Iterator<K> {
+        @SuppressWarnings("unchecked")
+        public final K next() {
+            return (K)CompactHashMap.unmaskNull(keys[nextSlot()]);
+        }
+    }
+
+    final class LinkedValueIterator extends LinkedHashIterator
+        implements Iterator<V> {
+        @SuppressWarnings("unchecked")
+        public final V next() {
+            return (V)vals[nextSlot()];
+        }
+    }
+
+    final class LinkedEntryIterator extends LinkedHashIterator
+        implements Iterator<Map.Entry<K,V>> {
+        public final Map.Entry<K,V> next() {
+            return new Entry(nextSlot());
+        }
+    }
+
+    /**
+     * 按需创建的键值对，指向创建时的槽位
+     * 槽位因删除或紧凑化不再保存同一个键时，getValue返回创建时的值，setValue通过put写回
+     */
+    final class Entry implements Map.Entry<K,V> {
+        final int slot;
+        final K key;
+        V value;
+
+        @SuppressWarnings("unchecked")
+        Entry(int slot) {
+            this.slot = slot;
+            this.key = (K)CompactHashMap.unmaskNull(keys[slot]);
+            this.value = (V)vals[slot];
+        }
+
+        private boolean isLive() {
+            return slot < used && keys[slot] == CompactHashMap.maskNull(key);
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return isLive() ? (value = (V)vals[slot]) : value;
+        }
+
+        public V setValue(V newValue) {
+            V oldValue = getValue();
+            value = newValue;
+            if (isLive())
+                vals[slot] = newValue;
+            else
+                put(key, newValue);
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            return Objects.equals(key, e.getKey()) &&
+                   Objects.equals(getValue(), e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Views
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new LinkedKeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class LinkedKeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactLinkedHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new LinkedKeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) {
+            int s;
+            if ((s = slotOf(HashMap.hash(key), key)) < 0)
+                return false;
+            removeSlot(s, true);
+            return true;
+        }
+        public final Spliterator<K> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED |
+                                            Spliterator.ORDERED |
+                                            Spliterator.DISTINCT);
+        }
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            Object[] ks = keys;
+            int[] af = after;
+            for (int s = head; s >= 0 && modCount == mc; s = af[s])
+                action.accept((K)CompactHashMap.unmaskNull(ks[s]));
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new LinkedValues();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class LinkedValues extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactLinkedHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new LinkedValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+        public final Spliterator<V> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED |
+                                            Spliterator.ORDERED);
+        }
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int mc = modCount;
+            Object[] vs = vals;
+            int[] af = after;
+            for (int s = head; s >= 0 && modCount == mc; s = af[s])
+                action.accept((V)vs[s]);
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new LinkedEntrySet()) : es;
+    }
+
+    final class LinkedEntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactLinkedHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new LinkedEntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            int s = slotOf(HashMap.hash(key), key);
+            return s >= 0 && Objects.equals(vals[s], e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                return CompactLinkedHashMap.this.remove(e.getKey(), e.getValue());
+            }
+            return false;
+        }
+        public final Spliterator<Map.Entry<K,V>> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.SIZED |
+                                            Spliterator.ORDERED |
+                                            Spliterator.DISTINCT);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Serialization
+
+    /**
+     * 序列化，依次写出索引长度、元素个数以及按链表顺序的所有键和值
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(index.length);
+        s.writeInt(size);
+        Object[] ks = keys, vs = vals;
+        int[] af = after;
+        for (int i = head; i >= 0; i = af[i]) {
+            s.writeObject(CompactHashMap.unmaskNull(ks[i]));
+            s.writeObject(vs[i]);
+        }
+    }
+
+    /**
+     * 反序列化，按元素个数预先分配数组，插入时不会触发扩容
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new InvalidObjectException("Illegal load factor: " +
+                                             loadFactor);
+        s.readInt();                // Read and ignore capacity
+        int mappings = s.readInt(); // Read number of mappings (size)
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                                             mappings);
+        int cap = CompactHashMap.capacity(mappings, loadFactor);
+        SharedSecrets.getJavaOISAccess().checkArray(s, Object[].class, slotsFor(cap));
+        init(cap);
+        for (int i = 0; i < mappings; i++) {
+            K key = (K) s.readObject();
+            V value = (V) s.readObject();
+            putVal(HashMap.hash(key), key, value, false);
+        }
+    }
+}
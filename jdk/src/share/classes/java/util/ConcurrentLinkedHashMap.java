@@ -0,0 +1,787 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 按访问顺序淘汰的并发LRU缓存
+ *
+ * <p>LinkedHashMap(accessOrder = true)作为LRU缓存时，每次get都要在afterNodeAccess中修改
+ * before/after指针把节点移到链表尾部，所以整个Map只能加一把全局锁，读操作之间也互相阻塞。
+ * 这里把查找和排序分开：
+ * 1. 键值对存放在ConcurrentHashMap中，get不加锁，直接查找节点
+ * 2. 节点之间与LinkedHashMap.Entry一样通过before/after组成双向链表，head最久未访问，tail最近访问，
+ *    链表只在持有淘汰锁(evictionLock)时修改
+ * 3. get找到节点后不立即移动它，而是把节点记录到当前线程对应的读缓冲区中，
+ *    缓冲区积累到一定数量时，由恰好拿到锁（tryLock）的线程批量取出，依次执行与afterNodeAccess相同的移动，
+ *    拿不到锁的线程直接返回，不会等待；缓冲区满时新的访问记录被丢弃，只会让顺序稍有偏差，不影响正确性
+ * 4. 写操作持有淘汰锁执行，先处理读缓冲区中积压的访问记录，再插入/删除节点，
+ *    插入后与LinkedHashMap.afterNodeInsertion一样调用{@link #removeEldestEntry}决定是否淘汰链表头部的节点
+ *
+ * <p>读缓冲区按线程id分为若干段，段数为不小于CPU个数的2的幂，每段是一个环形数组，
+ * 写入位置由CAS递增的计数器分配，所以不同线程的get之间几乎没有竞争。
+ *
+ * <p>与ConcurrentHashMap一样，不允许null键和null值。迭代器和集合视图是弱一致的，按哈希顺序而不是访问顺序遍历，
+ * 遍历不算访问。compute、merge等方法的函数在淘汰锁内执行，函数中不能再修改此Map，否则会抛出IllegalStateException。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see LinkedHashMap
+ * @see StripedHashMap
+ * @since 1.8
+ */
+public class ConcurrentLinkedHashMap<K,V> extends AbstractMap<K,V>
+        implements ConcurrentMap<K,V> {
+
+    /**
+     * 读缓冲区的段数，不小于CPU个数4倍的2的幂，线程按id分配到各段，段数多一些可以减少不同线程落到同一段
+     */
+    static final int NUMBER_OF_READ_BUFFERS =
+            HashMap.tableSizeFor(Runtime.getRuntime().availableProcessors() << 2);
+
+    static final int READ_BUFFERS_MASK = NUMBER_OF_READ_BUFFERS - 1;
+
+    /**
+     * 每段读缓冲区的长度，必须为2的幂
+     */
+    static final int READ_BUFFER_SIZE = 32;
+
+    static final int READ_BUFFER_INDEX_MASK = READ_BUFFER_SIZE - 1;
+
+    /**
+     * 一段读缓冲区中积压的访问记录达到此数量时尝试批量处理
+     */
+    static final int READ_BUFFER_DRAIN_THRESHOLD = 16;
+
+    /**
+     * 各段的计数器在数组中的间隔，使它们位于不同的缓存行，避免伪共享
+     */
+    static final int COUNTER_STRIDE = 16;
+
+    /**
+     * 缓存中的节点，before/after的含义与LinkedHashMap.Entry相同，只在持有淘汰锁时读写
+     * 从链表中删除后before/after都为null，且不再是head
+     */
+    static final class Node<K,V> implements Map.Entry<K,V> {
+        final K key;
+        volatile V value;
+        Node<K,V> before, after;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public final K getKey()        { return key; }
+        public final V getValue()      { return value; }
+        public final String toString() { return key + "=" + value; }
+
+        /**
+         * 节点只会作为removeEldestEntry的参数暴露，不支持修改
+         */
+        public final V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public final int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+                return key.equals(e.getKey()) && value.equals(e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 存放所有节点，get直接在其中查找
+     */
+    final ConcurrentHashMap<K,Node<K,V>> data;
+
+    /**
+     * 保护链表和读缓冲区的读取位置，所有写操作都在此锁内执行
+     */
+    final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * 链表头部（最久未访问）和尾部（最近访问），只在持有淘汰锁时读写
+     */
+    Node<K,V> head, tail;
+
+    /**
+     * 正在调用removeEldestEntry，此时不排空读缓冲区，只在持有淘汰锁时读写
+     */
+    boolean evicting;
+
+    /**
+     * 最大元素个数，默认的removeEldestEntry在超过它时淘汰最久未访问的元素
+     */
+    volatile int capacity;
+
+    /**
+     * 读缓冲区，readBufferWriteCount为每段已分配的写入位置，
+     * readBufferReadCount为每段已处理的位置，只在持有淘汰锁时更新
+     */
+    final AtomicReferenceArray<Node<K,V>>[] readBuffers;
+    final AtomicLongArray readBufferWriteCount;
+    final AtomicLongArray readBufferReadCount;
+
+    /**
+     * 按给定的最大元素个数实例化
+     */
+    @SuppressWarnings({"rawtypes","unchecked"})
+    public ConcurrentLinkedHashMap(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        this.capacity = capacity;
+        this.data = new ConcurrentHashMap<>(Math.min(capacity, 1 << 16));
+        readBuffers = new AtomicReferenceArray[NUMBER_OF_READ_BUFFERS];
+        readBufferWriteCount = new AtomicLongArray(NUMBER_OF_READ_BUFFERS * COUNTER_STRIDE);
+        readBufferReadCount = new AtomicLongArray(NUMBER_OF_READ_BUFFERS * COUNTER_STRIDE);
+        for (int i = 0; i < NUMBER_OF_READ_BUFFERS; i++)
+            readBuffers[i] = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * 是否淘汰链表头部的元素，在每次插入新元素之后调用，与LinkedHashMap.removeEldestEntry相同
+     * 默认在元素个数超过最大元素个数时返回true，子类可以覆盖以实现其他淘汰条件，
+     * 但不能在其中修改此Map。调用时持有淘汰锁
+     *
+     * @param eldest 最久未访问的元素，不支持setValue
+     */
+    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+        return data.size() > capacity;
+    }
+
+    /**
+     * 最大元素个数
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 修改最大元素个数，缩小时立即淘汰多出的最久未访问的元素
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        lock();
+        try {
+            this.capacity = capacity;
+            drainBuffers();
+            Node<K,V> first;
+            while (data.size() > capacity && (first = head) != null)
+                evict(first);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // linked list operations, guarded by evictionLock
+
+    /**
+     * 把节点插入链表尾部，与LinkedHashMap.linkNodeLast相同
+     */
+    private void linkNodeLast(Node<K,V> p) {
+        Node<K,V> last = tail;
+        tail = p;
+        if (last == null)
+            head = p;
+        else {
+            p.before = last;
+            last.after = p;
+        }
+    }
+
+    /**
+     * 把仍在链表中的节点移到尾部，与LinkedHashMap.afterNodeAccess相同
+     * 读缓冲区中可能还留有已删除的节点，这里会跳过它们
+     */
+    private void moveToTail(Node<K,V> p) {
+        Node<K,V> last = tail;
+        if (p == last || (p.before == null && p != head))
+            return;
+        Node<K,V> b = p.before, a = p.after;
+        p.after = null;
+        if (b == null)
+            head = a;
+        else
+            b.after = a;
+        // p不是尾节点，所以a不为null
+        a.before = b;
+        p.before = last;
+        last.after = p;
+        tail = p;
+    }
+
+    /**
+     * 把节点从链表中删除，与LinkedHashMap.afterNodeRemoval相同
+     */
+    private void unlink(Node<K,V> p) {
+        Node<K,V> b = p.before, a = p.after;
+        p.before = p.after = null;
+        if (b == null)
+            head = a;
+        else
+            b.after = a;
+        if (a == null)
+            tail = b;
+        else
+            a.before = b;
+    }
+
+    private void evict(Node<K,V> p) {
+        data.remove(p.key, p);
+        unlink(p);
+    }
+
+    /**
+     * 插入新元素之后调用，与LinkedHashMap.afterNodeInsertion相同
+     */
+    private void afterNodeInsertion() {
+        Node<K,V> first;
+        if ((first = head) != null) {
+            // removeEldestEntry中的get会通过可重入的tryLock排空读缓冲区，移动链表后first可能已经不是头部，
+            // 所以判断期间禁止排空，这些访问留在缓冲区中，下一次排空时再处理
+            boolean remove;
+            evicting = true;
+            try {
+                remove = removeEldestEntry(first);
+            } finally {
+                evicting = false;
+            }
+            if (remove)
+                evict(first);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // read buffers
+
+    /**
+     * 当前线程对应的读缓冲区
+     */
+    private static int readBufferIndex() {
+        return (int)Thread.currentThread().getId() & READ_BUFFERS_MASK;
+    }
+
+    /**
+     * 记录一次访问，缓冲区满时丢弃，积压到一定数量时尝试批量处理
+     */
+    private void afterRead(Node<K,V> p) {
+        int i = readBufferIndex(), c = i * COUNTER_STRIDE;
+        long w = readBufferWriteCount.get(c);
+        long pending = w - readBufferReadCount.get(c);
+        if (pending < READ_BUFFER_SIZE && readBufferWriteCount.compareAndSet(c, w, w + 1))
+            readBuffers[i].lazySet((int)w & READ_BUFFER_INDEX_MASK, p);
+        if (pending >= READ_BUFFER_DRAIN_THRESHOLD)
+            tryToDrainBuffers();
+    }
+
+    /**
+     * 拿到锁时处理所有读缓冲区，否则直接返回
+     * 当前线程正在removeEldestEntry中时也直接返回
+     */
+    private void tryToDrainBuffers() {
+        if (evictionLock.tryLock()) {
+            try {
+                if (!evicting)
+                    drainBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按记录的顺序把被访问的节点移到链表尾部，必须持有淘汰锁
+     * 写入位置已分配但还未写入节点的槽位会留到下一次处理
+     */
+    private void drainBuffers() {
+        for (int i = 0; i < NUMBER_OF_READ_BUFFERS; i++) {
+            AtomicReferenceArray<Node<K,V>> buffer = readBuffers[i];
+            int c = i * COUNTER_STRIDE;
+            long r = readBufferReadCount.get(c);
+            long w = readBufferWriteCount.get(c);
+            for (; r < w; r++) {
+                int index = (int)r & READ_BUFFER_INDEX_MASK;
+                Node<K,V> p = buffer.get(index);
+                if (p == null)
+                    break;
+                buffer.lazySet(index, null);
+                moveToTail(p);
+            }
+            readBufferReadCount.lazySet(c, r);
+        }
+    }
+
+    /**
+     * 获取淘汰锁，在compute等方法的函数中修改此Map时抛出IllegalStateException
+     */
+    private void lock() {
+        if (evictionLock.isHeldByCurrentThread())
+            throw new IllegalStateException("Recursive update");
+        evictionLock.lock();
+    }
+
+    /* ------------------------------------------------------------ */
+    // map operations
+
+    public int size() {
+        return data.size();
+    }
+
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * 不加锁查找，找到时记录一次访问
+     */
+    public V get(Object key) {
+        Node<K,V> p = data.get(key);
+        if (p == null)
+            return null;
+        afterRead(p);
+        return p.value;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return (v = get(key)) == null ? defaultValue : v;
+    }
+
+    /**
+     * 判断是否包含key，不算访问
+     */
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        for (Node<K,V> p : data.values()) {
+            if (value.equals(p.value))
+                return true;
+        }
+        return false;
+    }
+
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /**
+     * 插入或替换，key已存在时与LinkedHashMap相同，也算一次访问
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        lock();
+        try {
+            drainBuffers();
+            Node<K,V> p = data.get(key);
+            if (p != null) {
+                V oldValue = p.value;
+                if (!onlyIfAbsent)
+                    p.value = value;
+                moveToTail(p);
+                return oldValue;
+            }
+            insert(key, value);
+            return null;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void insert(K key, V value) {
+        Node<K,V> p = new Node<>(key, value);
+        data.put(key, p);
+        linkNodeLast(p);
+        afterNodeInsertion();
+    }
+
+    public V remove(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        lock();
+        try {
+            Node<K,V> p = data.remove(key);
+            if (p == null)
+                return null;
+            unlink(p);
+            return p.value;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        if (value == null)
+            return false;
+        lock();
+        try {
+            Node<K,V> p = data.get(key);
+            if (p == null || !value.equals(p.value))
+                return false;
+            evict(p);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        lock();
+        try {
+            drainBuffers();
+            Node<K,V> p = data.get(key);
+            if (p == null || !oldValue.equals(p.value))
+                return false;
+            p.value = newValue;
+            moveToTail(p);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public V replace(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        lock();
+        try {
+            drainBuffers();
+            Node<K,V> p = data.get(key);
+            if (p == null)
+                return null;
+            V oldValue = p.value;
+            p.value = value;
+            moveToTail(p);
+            return oldValue;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 若key已存在，则不加锁直接返回（记录一次访问），否则在淘汰锁内计算并插入，
+     * 同一个key的并发调用只会计算一次
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        if (key == null || mappingFunction == null)
+            throw new NullPointerException();
+        V v;
+        if ((v = get(key)) != null)
+            return v;
+        lock();
+        try {
+            drainBuffers();
+            Node<K,V> p = data.get(key);
+            if (p != null) {
+                moveToTail(p);
+                return p.value;
+            }
+            if ((v = mappingFunction.apply(key)) != null)
+                insert(key, v);
+            return v;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (key == null || remappingFunction == null)
+            throw new NullPointerException();
+        lock();
+        try {
+            drainBuffers();
+            Node<K,V> p = data.get(key);
+            if (p == null)
+                return null;
+            return remap(p, remappingFunction.apply(key, p.value));
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (key == null || remappingFunction == null)
+            throw new NullPointerException();
+        lock();
+        try {
+            drainBuffers();
+            Node<K,V> p = data.get(key);
+            V v = remappingFunction.apply(key, (p == null) ? null : p.value);
+            if (p != null)
+                return remap(p, v);
+            if (v != null)
+                insert(key, v);
+            return v;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (key == null || value == null || remappingFunction == null)
+            throw new NullPointerException();
+        lock();
+        try {
+            drainBuffers();
+            Node<K,V> p = data.get(key);
+            if (p == null) {
+                insert(key, value);
+                return value;
+            }
+            return remap(p, remappingFunction.apply(p.value, value));
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 用函数计算出的新值替换已有节点的值，新值为null时删除节点
+     */
+    private V remap(Node<K,V> p, V v) {
+        if (v == null)
+            evict(p);
+        else {
+            p.value = v;
+            moveToTail(p);
+        }
+        return v;
+    }
+
+    public void clear() {
+        lock();
+        try {
+            drainBuffers();
+            for (Node<K,V> p = head, a; p != null; p = a) {
+                a = p.after;
+                p.before = p.after = null;
+            }
+            head = tail = null;
+            data.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 按哈希顺序遍历，不算访问
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Node<K,V> p : data.values())
+            action.accept(p.key, p.value);
+    }
+
+    /**
+     * 按访问顺序返回最久未访问的最多limit个key，用于观察缓存的状态
+     * 返回前会先处理读缓冲区中积压的访问记录
+     */
+    public List<K> coldestKeys(int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Illegal limit: " + limit);
+        lock();
+        try {
+            drainBuffers();
+            ArrayList<K> keys = new ArrayList<>(Math.min(limit, data.size()));
+            for (Node<K,V> p = head; p != null && keys.size() < limit; p = p.after)
+                keys.add(p.key);
+            return keys;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // views
+
+    /**
+     * 视图，均为弱一致的，按哈希顺序遍历
+     */
+    transient Set<K> keySet;
+    transient Collection<V> values;
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ? (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = values) == null ? (values = new Values()) : vs;
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    abstract class NodeIterator {
+        final Iterator<Node<K,V>> it = data.values().iterator();
+        Node<K,V> current;
+
+        public final boolean hasNext() {
+            return it.hasNext();
+        }
+
+        final Node<K,V> nextNode() {
+            return current = it.next();
+        }
+
+        public final void remove() {
+            Node<K,V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            current = null;
+            ConcurrentLinkedHashMap.this.remove(p.key, p.value);
+        }
+    }
+
+    final class KeyIterator extends NodeIterator implements Iterator<K> {
+        public K next() { return nextNode().key; }
+    }
+
+    final class ValueIterator extends NodeIterator implements Iterator<V> {
+        public V next() { return nextNode().value; }
+    }
+
+    final class EntryIterator extends NodeIterator implements Iterator<Map.Entry<K,V>> {
+        public Map.Entry<K,V> next() {
+            Node<K,V> p = nextNode();
+            return new MapEntry(p.key, p.value);
+        }
+    }
+
+    /**
+     * 迭代器返回的键值对，setValue会写回Map
+     */
+    final class MapEntry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = 2249069246763182397L;
+
+        MapEntry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            V v = super.setValue(value);
+            put(getKey(), value);
+            return v;
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return ConcurrentLinkedHashMap.this.size(); }
+        public final void clear()               { ConcurrentLinkedHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object o) {
+            return ConcurrentLinkedHashMap.this.remove(o) != null;
+        }
+        public final Spliterator<K> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.CONCURRENT |
+                    Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return ConcurrentLinkedHashMap.this.size(); }
+        public final void clear()               { ConcurrentLinkedHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+        public final Spliterator<V> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.CONCURRENT |
+                    Spliterator.NONNULL);
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return ConcurrentLinkedHashMap.this.size(); }
+        public final void clear()               { ConcurrentLinkedHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k, v; Node<K,V> p;
+            return ((k = e.getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    (p = data.get(k)) != null &&
+                    v.equals(p.value));
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k, v;
+            return ((k = e.getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    ConcurrentLinkedHashMap.this.remove(k, v));
+        }
+        public final Spliterator<Map.Entry<K,V>> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.CONCURRENT |
+                    Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * 按总权重限制大小、支持写入后过期和访问后过期的缓存，基于访问顺序的LinkedHashMap实现
+ *
+ * <p>removeEldestEntry只能按元素个数限制大小，也不能表达元素的存活时间，
+ * 这里在LinkedHashMap之上增加了两种淘汰方式：
+ * <pre>
+ *   1. 权重：每个元素的权重由weigher计算（例如值的字节数），所有元素的权重之和超过maximumWeight时，
+ *      从链表头部开始淘汰最久未访问的元素，直到总权重不超过上限
+ *   2. 过期：expireAfterWrite为写入后的存活时间，expireAfterAccess为最后一次访问后的存活时间，
+ *      两者都设置时取较早的到期时间
+ * </pre>
+ * 到期的元素由{@link TimerWheel}分层时间轮管理，调度和取消都是O(1)。
+ * 没有后台线程，过期元素的清理分摊在LinkedHashMap的afterNodeInsertion和afterNodeAccess钩子中完成：
+ * 每次插入或访问时时间轮前进到当前时间，清理指针扫过的桶中已到期的元素，之后再按权重淘汰。
+ * 时间轮的粒度约为1秒，所以已到期的元素可能稍晚才被真正删除，但get、containsKey等读操作
+ * 会自己比较到期时间，不会返回已过期的值。{@link #size()}和遍历可能包含尚未清理的过期元素，
+ * 需要准确结果时先调用{@link #cleanUp()}。
+ *
+ * <p>元素以Timed节点的形式保存在内部的LinkedHashMap中，节点同时也是时间轮中的节点，
+ * 权重和到期时间随节点保存，不需要额外的查找。不允许null值，允许null键。
+ * 遍历时不算访问，返回的Entry不支持setValue。
+ * 时间默认取自{@link System#nanoTime()}，可以通过构造方法传入其他时间源。
+ * 不是线程安全的，并发使用时需要外部同步，也不支持序列化。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see LinkedHashMap
+ * @see TimerWheel
+ * @since 1.8
+ */
+public class ExpiringLinkedHashMap<K,V> extends AbstractMap<K,V> {
+
+    /**
+     * 表示不过期的时长
+     */
+    public static final long NO_EXPIRATION = -1L;
+
+    /**
+     * 存活时长的上限，避免计算到期时间时溢出
+     */
+    static final long MAXIMUM_DURATION = 1L << 62;
+
+    /**
+     * 保存在内部LinkedHashMap中的值，同时也是时间轮中的节点
+     * time为到期时间，没有设置过期时不会被调度
+     */
+    static final class Timed<K,V> extends TimerWheel.Node {
+        final K key;
+        final V value;
+        final int weight;
+        final long writeTime;
+
+        Timed(K key, V value, int weight, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * 访问顺序的LinkedHashMap，通过重写钩子完成过期清理、权重淘汰和权重统计
+     */
+    final class Store extends LinkedHashMap<K,Timed<K,V>> {
+
+        private static final long serialVersionUID = 6305398917472349108L;
+
+        Store() {
+            super(16, 0.75f, true);
+        }
+
+        /**
+         * 插入新元素后，清理到期的元素，再按权重淘汰
+         */
+        @Override
+        void afterNodeInsertion(boolean evict) {
+            if (evict) {
+                expireEntries();
+                evictEntries();
+            }
+        }
+
+        /**
+         * 访问元素后，移动到链表尾部并更新访问后过期的到期时间，再清理和淘汰
+         */
+        @Override
+        void afterNodeAccess(Node<K,Timed<K,V>> e) {
+            super.afterNodeAccess(e);
+            Timed<K,V> t = e.value;
+            if (expireAfterAccess >= 0) {
+                t.time = deadline(t.writeTime, now);
+                timerWheel.schedule(t);
+            }
+            expireEntries();
+            evictEntries();
+        }
+
+        /**
+         * 删除元素后，取消调度并扣除权重
+         */
+        @Override
+        void afterNodeRemoval(Node<K,Timed<K,V>> e) {
+            super.afterNodeRemoval(e);
+            Timed<K,V> t = e.value;
+            timerWheel.unlink(t);
+            weightedSize -= t.weight;
+        }
+    }
+
+    /**
+     * 总权重的上限
+     */
+    final long maximumWeight;
+
+    /**
+     * 计算元素的权重
+     */
+    final ToIntBiFunction<? super K, ? super V> weigher;
+
+    /**
+     * 写入后和访问后的存活纳秒数，小于0表示不过期
+     */
+    final long expireAfterWrite;
+    final long expireAfterAccess;
+
+    /**
+     * 是否设置了过期
+     */
+    final boolean expires;
+
+    /**
+     * 纳秒时间源
+     */
+    final LongSupplier ticker;
+
+    final Store store;
+
+    final TimerWheel timerWheel;
+
+    /**
+     * 时间轮清理到期节点时调用，从store中删除节点
+     */
+    final Predicate<TimerWheel.Node> expirer;
+
+    /**
+     * 当前所有元素的权重之和
+     */
+    long weightedSize;
+
+    /**
+     * 当前操作开始时读取的时间，供钩子方法使用
+     */
+    long now;
+
+    /**
+     * 按最大元素个数实例化，不过期
+     */
+    public ExpiringLinkedHashMap(long maximumSize) {
+        this(maximumSize, (k, v) -> 1, NO_EXPIRATION, NO_EXPIRATION, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 按给定的总权重上限、权重计算方法和存活时长实例化，时长为NO_EXPIRATION表示不按此方式过期
+     */
+    public ExpiringLinkedHashMap(long maximumWeight,
+                                 ToIntBiFunction<? super K, ? super V> weigher,
+                                 long expireAfterWrite, long expireAfterAccess,
+                                 TimeUnit unit) {
+        this(maximumWeight, weigher, expireAfterWrite, expireAfterAccess, unit, System::nanoTime);
+    }
+
+    /**
+     * 同上，使用给定的纳秒时间源
+     */
+    public ExpiringLinkedHashMap(long maximumWeight,
+                                 ToIntBiFunction<? super K, ? super V> weigher,
+                                 long expireAfterWrite, long expireAfterAccess,
+                                 TimeUnit unit, LongSupplier ticker) {
+        if (maximumWeight < 0)
+            throw new IllegalArgumentException("Illegal maximum weight: " + maximumWeight);
+        if (expireAfterWrite < 0 && expireAfterWrite != NO_EXPIRATION)
+            throw new IllegalArgumentException("Illegal expireAfterWrite: " + expireAfterWrite);
+        if (expireAfterAccess < 0 && expireAfterAccess != NO_EXPIRATION)
+            throw new IllegalArgumentException("Illegal expireAfterAccess: " + expireAfterAccess);
+        this.maximumWeight = maximumWeight;
+        this.weigher = Objects.requireNonNull(weigher);
+        this.ticker = Objects.requireNonNull(ticker);
+        this.expireAfterWrite = toNanos(expireAfterWrite, unit);
+        this.expireAfterAccess = toNanos(expireAfterAccess, unit);
+        this.expires = this.expireAfterWrite >= 0 || this.expireAfterAccess >= 0;
+        this.store = new Store();
+        this.now = ticker.getAsLong();
+        this.timerWheel = new TimerWheel(now);
+        this.expirer = this::expire;
+    }
+
+    private static long toNanos(long duration, TimeUnit unit) {
+        return (duration < 0) ? NO_EXPIRATION
+            : Math.min(unit.toNanos(duration), MAXIMUM_DURATION);
+    }
+
+    /**
+     * 总权重的上限
+     */
+    public long maximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * 当前所有元素的权重之和，可能包含尚未清理的过期元素
+     */
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * 清理所有到期的元素，并按权重淘汰
+     */
+    public void cleanUp() {
+        tick();
+        expireEntries();
+        evictEntries();
+    }
+
+    /* ------------------------------------------------------------ */
+    // internal utilities
+
+    final long tick() {
+        return now = ticker.getAsLong();
+    }
+
+    /**
+     * 按写入时间和最后访问时间计算到期时间，取两者中较早的一个
+     */
+    final long deadline(long writeTime, long accessTime) {
+        long afterWrite = expireAfterWrite, afterAccess = expireAfterAccess;
+        if (afterAccess < 0)
+            return writeTime + afterWrite;
+        if (afterWrite < 0)
+            return accessTime + afterAccess;
+        long w = writeTime + afterWrite, a = accessTime + afterAccess;
+        return (w - a < 0) ? w : a;
+    }
+
+    final boolean isExpired(Timed<K,V> t, long time) {
+        return expires && t.time - time <= 0;
+    }
+
+    /**
+     * 时间轮前进到当前时间，清理到期的元素
+     */
+    final void expireEntries() {
+        if (expires)
+            timerWheel.advance(now, expirer);
+    }
+
+    /**
+     * 时间轮清理到期节点的回调，返回false表示节点已不在store中
+     */
+    @SuppressWarnings("unchecked")
+    final boolean expire(TimerWheel.Node node) {
+        Timed<K,V> t = (Timed<K,V>)node;
+        K key = t.key;
+        return store.removeNode(store.keyHash(key), key, t, true, true) != null;
+    }
+
+    /**
+     * 从链表头部开始淘汰最久未访问的元素，直到总权重不超过上限
+     */
+    final void evictEntries() {
+        LinkedHashMap.Entry<K,Timed<K,V>> first;
+        while (weightedSize > maximumWeight && (first = store.head) != null)
+            store.removeNode(first.hash, first.key, null, false, true);
+    }
+
+    final Timed<K,V> newTimed(K key, V value, long time) {
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0)
+            throw new IllegalArgumentException("Illegal weight: " + weight);
+        Timed<K,V> t = new Timed<>(key, value, weight, time);
+        if (expires) {
+            t.time = deadline(time, time);
+            timerWheel.schedule(t);
+        }
+        return t;
+    }
+
+    /* ------------------------------------------------------------ */
+    // Map operations
+
+    public int size() {
+        return store.size();
+    }
+
+    public boolean isEmpty() {
+        return store.isEmpty();
+    }
+
+    /**
+     * 不算访问，不改变元素的顺序和到期时间
+     */
+    public boolean containsKey(Object key) {
+        HashMap.Node<K,Timed<K,V>> e = store.getNode(store.keyHash(key), key);
+        return e != null && !isExpired(e.value, ticker.getAsLong());
+    }
+
+    public V get(Object key) {
+        long time = tick();
+        int hash = store.keyHash(key);
+        HashMap.Node<K,Timed<K,V>> e = store.getNode(hash, key);
+        if (e == null)
+            return null;
+        Timed<K,V> t = e.value;
+        if (isExpired(t, time)) {
+            store.removeNode(hash, key, null, false, true);
+            return null;
+        }
+        store.afterNodeAccess(e);
+        return t.value;
+    }
+
+    public V put(K key, V value) {
+        Objects.requireNonNull(value);
+        long time = tick();
+        int hash = store.keyHash(key);
+        HashMap.Node<K,Timed<K,V>> e = store.getNode(hash, key);
+        Timed<K,V> t = newTimed(key, value, time);
+        weightedSize += t.weight;
+        if (e == null) {
+            store.putVal(hash, key, t, false, true);
+            return null;
+        }
+        Timed<K,V> old = e.value;
+        timerWheel.unlink(old);
+        weightedSize -= old.weight;
+        e.value = t;
+        store.afterNodeAccess(e);
+        return isExpired(old, time) ? null : old.value;
+    }
+
+    public V remove(Object key) {
+        long time = tick();
+        HashMap.Node<K,Timed<K,V>> e =
+            store.removeNode(store.keyHash(key), key, null, false, true);
+        return (e == null || isExpired(e.value, time)) ? null : e.value.value;
+    }
+
+    public void clear() {
+        store.clear();
+        timerWheel.clear();
+        weightedSize = 0L;
+    }
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 按从最久未访问到最近访问的顺序遍历，跳过已过期的元素，遍历不算访问
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public int size() {
+            return store.size();
+        }
+
+        public void clear() {
+            ExpiringLinkedHashMap.this.clear();
+        }
+
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    /**
+     * 与LinkedHashMap的迭代器一样沿双向链表遍历，提前找到下一个未过期的节点
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        final long time = ticker.getAsLong();
+        LinkedHashMap.Entry<K,Timed<K,V>> next, current;
+        int expectedModCount = store.modCount;
+
+        EntryIterator() {
+            next = skipExpired(store.head);
+        }
+
+        private LinkedHashMap.Entry<K,Timed<K,V>> skipExpired(LinkedHashMap.Entry<K,Timed<K,V>> e) {
+            while (e != null && isExpired(e.value, time))
+                e = e.after;
+            return e;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<K,V> next() {
+            LinkedHashMap.Entry<K,Timed<K,V>> e = next;
+            if (store.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            current = e;
+            next = skipExpired(e.after);
+            Timed<K,V> t = e.value;
+            return new AbstractMap.SimpleImmutableEntry<>(t.key, t.value);
+        }
+
+        public void remove() {
+            LinkedHashMap.Entry<K,Timed<K,V>> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (store.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            store.removeNode(p.hash, p.key, null, false, false);
+            expectedModCount = store.modCount;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+/**
+ * 估计key访问频率的Count-Min Sketch，供TinyLFU准入策略使用
+ *
+ * <p>每个计数器占4位，一个long中存放16个计数器，最大计到15。
+ * 一个key对应4个计数器，分别位于由4个不同种子计算出的4个long中，
+ * 在每个long中使用的是16个计数器里固定一组（由哈希值的低2位选择）中的一个，
+ * 频率取这4个计数器中的最小值，只可能高估不会低估。
+ *
+ * <p>累计增加sampleSize次之后，所有计数器减半，使频率随时间衰减，
+ * 过去的热点key如果不再被访问，频率会逐渐降低，不会一直占据缓存。
+ *
+ * <p>不是线程安全的，由使用者同步。
+ *
+ * @see TinyLfuLinkedHashMap
+ * @since 1.8
+ */
+final class FrequencySketch {
+
+    /**
+     * 4个计算下标的种子
+     */
+    static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    /**
+     * 减半时去掉每个计数器最高位借入的位
+     */
+    static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * 每个计数器的最低位，用于统计减半时被舍去的奇数
+     */
+    static final long ONE_MASK = 0x1111111111111111L;
+
+    long[] table;
+    int tableMask;
+    int sampleSize;
+    int size;
+
+    /**
+     * @param maximumSize 缓存的最大元素个数，计数器的个数与它成正比
+     */
+    FrequencySketch(int maximumSize) {
+        int n = HashMap.tableSizeFor(Math.max(maximumSize, 1));
+        table = new long[n];
+        tableMask = n - 1;
+        sampleSize = (maximumSize <= 0) ? 10 :
+                (int)Math.min(10L * maximumSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 估计的访问频率，在[0, 15]之间
+     */
+    int frequency(Object key) {
+        int hash = spread(Objects.hashCode(key));
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 增加一次访问，4个计数器都已经达到15时不计数
+     */
+    void increment(Object key) {
+        int hash = spread(Objects.hashCode(key));
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+            added |= incrementAt(indexOf(hash, i), start + i);
+        if (added && ++size == sampleSize)
+            reset();
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半，size也相应减去被舍去的部分
+     */
+    void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+    }
+
+    /**
+     * 第i个种子对应的long的下标
+     */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += h >>> 32;
+        return (int)h & tableMask;
+    }
+
+    /**
+     * 对hashCode再做一次混合，避免低质量的hashCode集中在少数计数器上
+     */
+    static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import sun.misc.SharedSecrets;
+
+/**
+ * 不可变的只读Map，由{@link HashMap#freeze()}或{@link #copyOf(Map)}生成
+ *
+ * <p>构造时用CHD（Compress, Hash and Displace）算法为所有key生成一个完美哈希函数：
+ * 先按key的哈希值把key分到约n/4个组中，再从大到小为每个组找一个位移值，
+ * 使组内每个key在槽位数组中都落到空闲且互不相同的位置。槽位数只比元素个数多约6%，
+ * key、value和key的hashCode分别存放在三个平铺的数组中，没有Node对象，也没有链表和红黑树。
+ *
+ * <p>查找时先根据哈希值取出所在组的位移值，再计算出唯一的槽位，只需比较这一个槽位上的key，
+ * 不存在的key也只需一次比较即可判定。hashCode完全相同的多个key无法用任何基于hashCode的函数区分，
+ * 其中第一个参与完美哈希，其余的放在一个小的溢出表中，只有查找这些key时才会多一次查找。
+ *
+ * <p>每个元素的占用约为3个引用/整数再加上约1字节的位移值，而HashMap中每个元素需要一个Node对象
+ * （32字节左右）加上桶数组中的一个引用。构造的耗时与元素个数成线性关系，适合一次构造、多次读取的场景。
+ *
+ * <p>所有修改操作都会抛出UnsupportedOperationException。允许null作为key或value。
+ *
+ * @param <K> key的类型
+ * @param <V> value的类型
+ * @see HashMap#freeze()
+ * @since 1.8
+ */
+public final class FrozenHashMap<K,V> extends AbstractMap<K,V>
+        implements Serializable {
+
+    private static final long serialVersionUID = 5364921843707461729L;
+
+    /**
+     * 平均每组的key个数
+     */
+    static final int BUCKET_SIZE = 4;
+
+    /**
+     * 为一个组寻找位移值的最大尝试次数，超过后换一个盐值重新构造
+     */
+    static final int MAX_DISPLACEMENT = 1 << 16;
+
+    /**
+     * 用于替代null key，使得空槽位可以用null表示
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * 槽位数组，keys[i]为null表示空槽位
+     */
+    private transient Object[] keys;
+    private transient Object[] values;
+    private transient int[] hashes;
+
+    /**
+     * 每个组的位移值
+     */
+    private transient int[] displacements;
+
+    /**
+     * 混入哈希值的盐值，构造失败重试时会更换
+     */
+    private transient int salt;
+
+    /**
+     * hashCode与完美哈希中的某个key完全相同的其他key，没有时为null
+     */
+    private transient HashMap<Object,Object> overflow;
+
+    private transient int size;
+
+    private transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 复制给定的Map，m是FrozenHashMap时直接返回
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> FrozenHashMap<K,V> copyOf(Map<? extends K, ? extends V> m) {
+        if (m instanceof FrozenHashMap)
+            return (FrozenHashMap<K,V>)m;
+        return new FrozenHashMap<>(m);
+    }
+
+    FrozenHashMap(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        Object[] ks = new Object[n], vs = new Object[n];
+        int i = 0;
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            if (i == n)
+                throw new ConcurrentModificationException();
+            ks[i] = e.getKey();
+            vs[i++] = e.getValue();
+        }
+        if (i != n)
+            throw new ConcurrentModificationException();
+        build(ks, vs, n);
+    }
+
+    /* ---------------- Construction -------------- */
+
+    private static int hashOf(Object key) {
+        return (key == null) ? 0 : key.hashCode();
+    }
+
+    private static Object maskNull(Object key) {
+        return (key == null) ? NULL_KEY : key;
+    }
+
+    private static Object unmaskNull(Object key) {
+        return (key == NULL_KEY) ? null : key;
+    }
+
+    /**
+     * 把x均匀地映射到[0, n)，用乘法代替取模
+     */
+    private static int reduce(int x, int n) {
+        return (int)(((x & 0xFFFFFFFFL) * n) >>> 32);
+    }
+
+    /**
+     * 混入盐值后的哈希值，用于选择组，也作为计算槽位的输入
+     */
+    private static int mix(int h, int salt) {
+        return HashMap.fmix32(h ^ salt);
+    }
+
+    /**
+     * 位移值为d时的槽位，x为mix的结果
+     */
+    private static int slot(int x, int d, int m) {
+        return reduce(HashMap.fmix32(x + d * 0x9E3779B9 + 0x7F4A7C15), m);
+    }
+
+    /**
+     * 构造完美哈希，hashCode重复的key先挑出来放入溢出表
+     */
+    private void build(Object[] ks, Object[] vs, int n) {
+        // 用一个临时的线性探测表按hashCode去重，hashCode相同的key中只保留第一个参与完美哈希
+        int[] hs = new int[n];
+        int[] members = new int[n];
+        int mask = HashMap.tableSizeFor(Math.max(2, n << 1)) - 1;
+        int[] seen = new int[mask + 1];
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            int h = hs[i] = hashOf(ks[i]);
+            int j = HashMap.fmix32(h) & mask, first;
+            while ((first = seen[j]) != 0 && hs[first - 1] != h)
+                j = (j + 1) & mask;
+            if (first == 0) {
+                seen[j] = i + 1;
+                members[p++] = i;
+                continue;
+            }
+            Object k = ks[i];
+            if (overflow == null)
+                overflow = new HashMap<>();
+            if (Objects.equals(k, ks[first - 1]) || overflow.containsKey(k))
+                throw new IllegalArgumentException("Duplicate key: " + k);
+            overflow.put(k, vs[i]);
+        }
+        seen = null;
+        int m = p + (p >>> 4) + 1;
+        for (int s = 0x5BD1E995; ; s = s * 0x9E3779B9 + 1) {
+            if (place(ks, vs, hs, members, p, m, s))
+                break;
+            // 多次失败说明槽位太紧，适当放宽
+            m += (m >>> 4) + 1;
+        }
+        size = n;
+    }
+
+    /**
+     * 以给定的盐值和槽位数尝试构造，某个组找不到位移值时返回false
+     */
+    private boolean place(Object[] ks, Object[] vs, int[] hs, int[] members,
+                          int n, int m, int s) {
+        int r = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        int[] xs = new int[n];
+        int[] start = new int[r + 1];
+        for (int i = 0; i < n; i++) {
+            xs[i] = mix(hs[members[i]], s);
+            start[reduce(xs[i], r) + 1]++;
+        }
+        int maxBucket = 0;
+        for (int b = 0; b < r; b++) {
+            maxBucket = Math.max(maxBucket, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        // 按组排列的成员下标
+        int[] order = new int[n];
+        int[] fill = Arrays.copyOf(start, r);
+        for (int i = 0; i < n; i++)
+            order[fill[reduce(xs[i], r)]++] = i;
+        // 按组的大小从大到小处理，大的组先占位置更容易成功
+        int[] bySize = new int[r];
+        int[] sizeStart = new int[maxBucket + 2];
+        for (int b = 0; b < r; b++)
+            sizeStart[maxBucket - (start[b + 1] - start[b]) + 1]++;
+        for (int k = 0; k <= maxBucket; k++)
+            sizeStart[k + 1] += sizeStart[k];
+        for (int b = 0; b < r; b++)
+            bySize[sizeStart[maxBucket - (start[b + 1] - start[b])]++] = b;
+
+        boolean[] taken = new boolean[m];
+        int[] disp = new int[r];
+        int[] pos = new int[maxBucket];
+        for (int b : bySize) {
+            int lo = start[b], len = start[b + 1] - lo;
+            if (len == 0)
+                break;
+            int d = 0;
+            search: for (; d < MAX_DISPLACEMENT; d++) {
+                for (int j = 0; j < len; j++) {
+                    int q = slot(xs[order[lo + j]], d, m);
+                    if (taken[q])
+                        continue search;
+                    for (int t = 0; t < j; t++) {
+                        if (pos[t] == q)
+                            continue search;
+                    }
+                    pos[j] = q;
+                }
+                break;
+            }
+            if (d == MAX_DISPLACEMENT)
+                return false;
+            disp[b] = d;
+            for (int j = 0; j < len; j++)
+                taken[pos[j]] = true;
+        }
+
+        Object[] tk = new Object[m], tv = new Object[m];
+        int[] th = new int[m];
+        for (int i = 0; i < n; i++) {
+            int q = slot(xs[i], disp[reduce(xs[i], r)], m);
+            Object k = ks[members[i]];
+            tk[q] = maskNull(k);
+            tv[q] = vs[members[i]];
+            th[q] = hs[members[i]];
+        }
+        keys = tk;
+        values = tv;
+        hashes = th;
+        displacements = disp;
+        salt = s;
+        return true;
+    }
+
+    /* ---------------- Lookup -------------- */
+
+    /**
+     * 查找key所在的槽位，不在完美哈希中时返回-1
+     */
+    private int indexOf(Object key) {
+        Object[] tk = keys;
+        if (tk.length == 0)
+            return -1;
+        int h = hashOf(key);
+        int x = mix(h, salt);
+        int[] disp = displacements;
+        int q = slot(x, disp[reduce(x, disp.length)], tk.length);
+        Object k = tk[q], mk = maskNull(key);
+        return (hashes[q] == h && (k == mk || (k != null && mk.equals(k)))) ? q : -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int q = indexOf(key);
+        if (q >= 0)
+            return (V)values[q];
+        return (overflow == null) ? null : (V)overflow.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int q = indexOf(key);
+        if (q >= 0)
+            return (V)values[q];
+        return (overflow == null) ? defaultValue :
+                (V)overflow.getOrDefault(key, defaultValue);
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0 || (overflow != null && overflow.containsKey(key));
+    }
+
+    public boolean containsValue(Object value) {
+        Object[] tk = keys, tv = values;
+        for (int i = 0; i < tk.length; i++) {
+            if (tk[i] != null && Objects.equals(value, tv[i]))
+                return true;
+        }
+        return overflow != null && overflow.containsValue(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        Object[] tk = keys, tv = values;
+        for (int i = 0; i < tk.length; i++) {
+            if (tk[i] != null)
+                action.accept((K)unmaskNull(tk[i]), (V)tv[i]);
+        }
+        if (overflow != null) {
+            for (Map.Entry<Object,Object> e : overflow.entrySet())
+                action.accept((K)e.getKey(), (V)e.getValue());
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    /**
+     * 先遍历槽位数组，再遍历溢出表
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int index;
+        Iterator<Map.Entry<Object,Object>> rest;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            Object[] tk = keys;
+            while (index < tk.length && tk[index] == null)
+                index++;
+        }
+
+        public boolean hasNext() {
+            return index < keys.length || (rest != null ? rest.hasNext() :
+                    overflow != null && !overflow.isEmpty());
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (index < keys.length) {
+                int i = index++;
+                advance();
+                return new AbstractMap.SimpleImmutableEntry<>(
+                        (K)unmaskNull(keys[i]), (V)values[i]);
+            }
+            if (rest == null && overflow != null)
+                rest = overflow.entrySet().iterator();
+            if (rest == null)
+                throw new NoSuchElementException();
+            Map.Entry<Object,Object> e = rest.next();
+            return new AbstractMap.SimpleImmutableEntry<>((K)e.getKey(), (V)e.getValue());
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * 写出元素个数和所有键值对，读取时重新构造完美哈希
+     */
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (Map.Entry<K,V> e : entrySet()) {
+            s.writeObject(e.getKey());
+            s.writeObject(e.getValue());
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int n = s.readInt();
+        if (n < 0)
+            throw new InvalidObjectException("Illegal mappings count: " + n);
+        SharedSecrets.getJavaOISAccess().checkArray(s, Object[].class, n);
+        Object[] ks = new Object[n], vs = new Object[n];
+        for (int i = 0; i < n; i++) {
+            ks[i] = s.readObject();
+            vs[i] = s.readObject();
+        }
+        try {
+            build(ks, vs, n);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+    }
+}
@@ -30,6 +30,9 @@ import java.io.InvalidObjectException;
 import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -260,6 +263,56 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     static final int MIN_TREEIFY_CAPACITY = 64;
 
+    /**
+     * 渐进式扩容时，每次putVal、removeNode等操作顺序迁移的旧桶个数
+     * 扩容后到下一次扩容之前至少还会插入旧容量*加载因子个元素，在默认加载因子下，
+     * 仅靠插入操作也能在下一次扩容之前完成迁移，否则下一次扩容时会先一次性完成剩余的迁移
+     */
+    static final int TRANSFER_STRIDE = 16;
+
+    /**
+     * 按元素个数拆分时，统计元素个数的块大小的位数，每块包含64个桶
+     * 拆分点总是落在块的边界上，所以只需要为每个块保存一个前缀和
+     */
+    static final int SPLIT_BLOCK_SHIFT = 6;
+
+    /**
+     * 批量查找时每轮流水线处理的key个数
+     * 每轮的各个阶段中，对不同key的内存访问互不依赖，CPU可以同时发出这些访问，
+     * 个数太大时中间数组本身会挤占L1缓存
+     */
+    static final int LOOKUP_BATCH = 16;
+
+    /**
+     * 保存虚拟机启动后才能读取的配置
+     */
+    private static class Holder {
+
+        /**
+         * 元素个数不小于此值的Map，其Spliterator按各个桶中实际的元素个数拆分，而不是按桶的下标对半拆分，
+         * 可以通过系统属性jdk.map.balancedSplit.threshold设置，默认为Integer.MAX_VALUE，即不启用
+         */
+        static final int BALANCED_SPLIT_THRESHOLD;
+
+        static {
+            String threshold = java.security.AccessController.doPrivileged(
+                new sun.security.action.GetPropertyAction(
+                    "jdk.map.balancedSplit.threshold"));
+            int t;
+            try {
+                t = (null != threshold) ? Integer.parseInt(threshold) : Integer.MAX_VALUE;
+                // -1表示不启用
+                if (t == -1)
+                    t = Integer.MAX_VALUE;
+                if (t < 0)
+                    throw new IllegalArgumentException("value must be positive integer.");
+            } catch (IllegalArgumentException failed) {
+                throw new Error("Illegal value for 'jdk.map.balancedSplit.threshold'", failed);
+            }
+            BALANCED_SPLIT_THRESHOLD = t;
+        }
+    }
+
     /**
      * 哈希表中的基本节点结构，树化之后的红黑树节点也继承此类，方便通过next指针遍历所有节点
      */
@@ -318,6 +371,59 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
     }
 
+    /**
+     * 带种子的哈希函数，用于抵御哈希碰撞攻击(hash flooding)
+     *
+     * 固定的扰动函数下，攻击者可以构造大量hashCode相同的String（如"Aa"和"BB"的任意组合），
+     * 使它们落入同一个桶，每次查找都要在红黑树中通过compareTo比较。
+     * 对String，这里不使用其hashCode，而是以种子为初始值对字符内容计算MurmurHash3，
+     * 不知道种子就无法构造出碰撞；其他类型的key只能在hashCode的基础上混入种子并充分混合，
+     * hashCode相同的key依然会碰撞，但hashCode不同的key无法被刻意映射到同一个桶
+     */
+    static final int seededHash(Object key, int seed) {
+        if (key == null)
+            return 0;
+        if (key instanceof String)
+            return murmur3(seed, (String)key);
+        return fmix32(key.hashCode() ^ seed);
+    }
+
+    /**
+     * 以seed为种子，按MurmurHash3_x86_32算法计算字符串的哈希值，每两个字符作为一个32位的块
+     */
+    static int murmur3(int seed, String s) {
+        int h1 = seed, len = s.length(), i = 0;
+        for (; i + 1 < len; i += 2) {
+            int k1 = s.charAt(i) | (s.charAt(i + 1) << 16);
+            h1 ^= mixK1(k1);
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+        // 剩余的一个字符
+        if (i < len)
+            h1 ^= mixK1(s.charAt(i));
+        h1 ^= len << 1;
+        return fmix32(h1);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= 0xcc9e2d51;
+        k1 = Integer.rotateLeft(k1, 15);
+        return k1 * 0x1b873593;
+    }
+
+    /**
+     * MurmurHash3的最终混合函数，输入的每一位都会影响输出的每一位
+     */
+    static int fmix32(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
     /**
      * Returns x's Class if it is of the form "class C implements
      * Comparable<C>", else null.
@@ -407,6 +513,35 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     final float loadFactor;
 
+    /**
+     * 渐进式扩容时的旧桶数组，只在迁移期间不为null
+     * 迁移期间每个节点要么还在oldTable中未迁移的桶里，要么已经在table中
+     */
+    transient Node<K,V>[] oldTable;
+
+    /**
+     * 渐进式扩容时，oldTable中下一个待顺序迁移的桶的索引，小于此索引的桶均已迁移
+     */
+    transient int transferIndex;
+
+    /**
+     * 是否开启渐进式扩容
+     * 开启后resize()只分配新的桶数组，旧桶中的节点由后续的写操作分批迁移，
+     * 避免一次插入操作承担整个桶数组的迁移开销
+     */
+    transient boolean incrementalResize;
+
+    /**
+     * 随机哈希种子，为0时使用默认的扰动函数hash(Object)，否则使用seededHash
+     * 只能在构造时设置，之后所有节点的hash都基于同一个种子计算
+     */
+    transient int hashSeed;
+
+    /**
+     * 统计计数器，为null时表示未开启统计，见setStatsEnabled
+     */
+    transient HashMapStats.Counters statsCounters;
+
     /**
      * 按给定的初始容量和加载因子实例化
      */
@@ -440,6 +575,62 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         this(initialCapacity, DEFAULT_LOAD_FACTOR);
     }
 
+    /**
+     * 按给定的初始容量和加载因子实例化，并指定是否开启渐进式扩容
+     *
+     * 开启渐进式扩容后，扩容时只分配新的桶数组，旧桶由之后的每次put、remove、compute等
+     * 写操作迁移一部分（先迁移本次操作的key所在的旧桶，再顺序迁移TRANSFER_STRIDE个旧桶），
+     * 迁移期间get会根据key所在的旧桶是否已迁移决定在哪个桶数组中查找，本身不修改Map。
+     * 遍历（迭代器、forEach、containsValue、Spliterator等）同样不迁移，而是依次读取新桶数组
+     * 和旧桶数组中尚未迁移的桶，所以多个线程可以同时读取一个不再修改的Map；
+     * 通过迭代器删除元素时直接在元素所在的桶数组中删除，也不迁移。
+     * 只有replaceAll、putAll等需要遍历整个桶数组的写操作会先完成剩余的迁移。
+     *
+     * 此设置不会被序列化，反序列化得到的HashMap使用一次性扩容
+     */
+    public HashMap(int initialCapacity, float loadFactor,
+                   boolean incrementalResize) {
+        this(initialCapacity, loadFactor);
+        this.incrementalResize = incrementalResize;
+    }
+
+    /**
+     * 按给定的初始容量和加载因子实例化，并指定是否开启渐进式扩容和随机哈希
+     *
+     * 开启随机哈希后，每个实例使用一个随机生成的种子计算key的哈希值（见seededHash），
+     * 适用于key来自外部不可信输入的场景（如HTTP请求参数），攻击者无法预先构造出落入同一个桶的key。
+     * String类型的key每次查找都需要重新计算整个字符串的哈希值，无法利用String缓存的hashCode，
+     * 因此只在有必要时开启。
+     *
+     * 种子不会被序列化，反序列化得到的HashMap使用默认的扰动函数
+     */
+    public HashMap(int initialCapacity, float loadFactor,
+                   boolean incrementalResize, boolean randomizedHashing) {
+        this(initialCapacity, loadFactor, incrementalResize);
+        if (randomizedHashing)
+            this.hashSeed = randomHashSeed();
+    }
+
+    /**
+     * 生成一个非0的随机种子
+     */
+    static int randomHashSeed() {
+        int seed;
+        do {
+            seed = java.util.concurrent.ThreadLocalRandom.current().nextInt();
+        } while (seed == 0);
+        return seed;
+    }
+
+    /**
+     * 计算key的哈希值，未开启随机哈希时与hash(Object)相同
+     * 所有根据key定位桶的地方都要使用此方法，而不是直接调用hash(Object)
+     */
+    final int keyHash(Object key) {
+        int seed;
+        return ((seed = hashSeed) == 0) ? hash(key) : seededHash(key, seed);
+    }
+
     /**
      * 按默认初始容量（16）和默认加载因子（0.75）实例化
      */
@@ -467,7 +658,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (s > 0) {
 
             // 如果是构造函数调用的，则根据传入Map的大小计算初始化容量
-            // 如果桶数组已初始化且传入Map的大小超过了扩容阈值，则先进行一次扩容操作
+            // 如果桶数组已初始化，则按合并后元素个数的下限max(size, s)计算目标容量，一次重新分配到位，
+            // 两个Map的key可能大量重叠（例如m.putAll(m)或者用副本刷新），按两者大小之和扩容会白白翻倍，
+            // 而HashMap从不缩容，多出的内存会一直占用；真正超出的部分由putVal按阈值继续扩容
             if (table == null) {
                 float ft = ((float)s / loadFactor) + 1.0F;
                 int t = ((ft < (float)MAXIMUM_CAPACITY) ?
@@ -475,16 +668,73 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 if (t > threshold)
                     threshold = tableSizeFor(t);
             }
-            else if (s > threshold)
-                resize();
+            else if (s > threshold && table.length < MAXIMUM_CAPACITY)
+                // size不会超过threshold，所以只需要比较s
+                resizeTo((int)Math.ceil(s / loadFactor));
+
+            // 传入的也是HashMap且哈希种子相同时，节点中缓存的hash可以直接使用，不需要重新调用hashCode
+            boolean sameHash = (m instanceof HashMap) &&
+                    ((HashMap<?,?>)m).hashSeed == hashSeed;
+
+            // LinkedHashMap需要按传入Map的遍历顺序插入，并且每次插入后都要回调afterNodeInsertion
+            if (sameHash && !(this instanceof LinkedHashMap)) {
+                putHashMapEntries((HashMap<? extends K, ? extends V>)m, evict);
+                return;
+            }
 
             // 遍历传入Map中的所有元素，将其依次插入
             for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
                 K key = e.getKey();
                 V value = e.getValue();
-                putVal(hash(key), key, value, false, evict);
+                int hash = (sameHash && e instanceof Node) ?
+                        ((Node<?,?>)e).hash : keyHash(key);
+                putVal(hash, key, value, false, evict);
+            }
+        }
+    }
+
+    /**
+     * 批量插入另一个HashMap中的所有元素，调用前已经完成扩容
+     * 直接遍历传入Map的桶数组，使用节点中缓存的hash，目标桶为空时直接放入新节点，
+     * 不经过putVal的扩容阈值检查，只有目标桶非空时才交给putVal处理key已存在、链表和红黑树的情况
+     * 传入的Map只读不写，通过bins()读取，不会迁移它未完成的渐进式扩容
+     */
+    @SuppressWarnings("unchecked")
+    final void putHashMapEntries(HashMap<? extends K, ? extends V> m, boolean evict) {
+        // 插入自身的所有元素只会用相同的值覆盖，什么都不需要做
+        if (m == this)
+            return;
+        Node<K,V>[] src = (Node<K,V>[])m.bins();
+        Node<K,V>[] tab;
+        int mc = m.modCount, added = 0;
+        if (src == null)
+            return;
+        // 先完成自身未完成的渐进式迁移，保证直接放入的桶就是最终位置
+        if ((tab = completeTransfer()) == null)
+            tab = resize();
+        for (Node<K,V> b : src) {
+            for (Node<K,V> e = b; e != null; e = e.next) {
+                int i = (tab.length - 1) & e.hash;
+                if (tab[i] == null) {
+                    tab[i] = newNode(e.hash, e.key, e.value, null);
+                    ++added;
+                    // 已经预先扩容，只有达到最大容量时才可能超过阈值
+                    if (++size > threshold) {
+                        resize();
+                        tab = completeTransfer();
+                    }
+                }
+                else {
+                    putVal(e.hash, e.key, e.value, false, evict);
+                    // putVal中可能发生了扩容，重新读取桶数组并完成渐进式迁移
+                    tab = completeTransfer();
+                }
             }
         }
+        if (added > 0)
+            ++modCount;
+        if (m.modCount != mc)
+            throw new ConcurrentModificationException();
     }
 
     /**
@@ -507,7 +757,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     public V get(Object key) {
         Node<K,V> e;
         // 查找节点返回其value，找不到则返回null
-        return (e = getNode(hash(key), key)) == null ? null : e.value;
+        return (e = getNode(keyHash(key), key)) == null ? null : e.value;
     }
 
     /**
@@ -516,11 +766,15 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     final Node<K,V> getNode(int hash, Object key) {
         Node<K,V>[] tab; Node<K,V> first, e; int n; K k;
 
+        // 渐进式扩容期间，若hash对应的旧桶还未迁移，则在旧桶数组中查找
+        if ((tab = oldTable) == null || tab[(tab.length - 1) & hash] == null)
+            tab = table;
+
         // 首先判断桶数组table不为null，并且其长度不为0
         // 使用tab[(n - 1) & hash]从桶中获取对应hash的第一个节点
         // (n - 1) & hash是取hash对n的模，此方法只有当n为2的幂时才成立，
         // 所以桶数组的容量必须为2的幂，这个是通过tableSizeFor(int cap)方法计算的
-        if ((tab = table) != null && (n = tab.length) > 0 &&
+        if (tab != null && (n = tab.length) > 0 &&
                 (first = tab[(n - 1) & hash]) != null) {
 
             // 若第一个节点的key于要求的key相等，则返回第一个节点
@@ -553,14 +807,14 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      * 判断是否包含key
      */
     public boolean containsKey(Object key) {
-        return getNode(hash(key), key) != null;
+        return getNode(keyHash(key), key) != null;
     }
 
     /**
      * 向Map中添加键值对
      */
     public V put(K key, V value) {
-        return putVal(hash(key), key, value, false, true);
+        return putVal(keyHash(key), key, value, false, true);
     }
 
     /**
@@ -573,6 +827,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                    boolean evict) {
         Node<K,V>[] tab; Node<K,V> p; int n, i;
 
+        // 渐进式扩容期间，先迁移hash所在的旧桶，之后只需操作table
+        if (oldTable != null)
+            helpTransfer(hash);
+
         // 当第一次插入节点时，需要为桶数组开辟内存
         if ((tab = table) == null || (n = tab.length) == 0)
             n = (tab = resize()).length;
@@ -640,7 +898,12 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      * 初始化桶数组或将其容量扩大为原来的2倍
      */
     final Node<K,V>[] resize() {
-        Node<K,V>[] oldTab = table;
+        // 开启统计时记录扩容耗时
+        HashMapStats.Counters c = statsCounters;
+        long start = (c == null) ? 0L : System.nanoTime();
+
+        // 若上一次渐进式扩容还未完成，则先完成迁移
+        Node<K,V>[] oldTab = (oldTable != null) ? completeTransfer() : table;
 
         // 保存旧容量，若桶未初始化，旧容量置为0
         int oldCap = (oldTab == null) ? 0 : oldTab.length;
@@ -696,107 +959,259 @@ public class HashMap<K,V> extends AbstractMap<K,V>
 
         // 如果不是第一次初始化桶数组，则需要将旧桶中的元素迁移至新桶中
         if (oldTab != null) {
+            if (incrementalResize) {
+                // 渐进式扩容：此处只记录旧桶数组，由后续的putVal、removeNode等操作分批迁移
+                oldTable = oldTab;
+                transferIndex = 0;
+            }
+            else {
+                // 遍历旧桶
+                for (int j = 0; j < oldCap; ++j) {
+                    // 只处理不为空的位置
+                    if (oldTab[j] != null)
+                        transferBin(oldTab, newTab, j);
+                }
+            }
+            if (c != null) {
+                ++c.resizes;
+                c.resizeNanos += System.nanoTime() - start;
+            }
+        }
+        return newTab;
+    }
 
-            // 遍历旧桶
-            for (int j = 0; j < oldCap; ++j) {
-                Node<K,V> e;
-
-                // 只处理不为空的位置
-                if ((e = oldTab[j]) != null) {
-                    oldTab[j] = null;
+    /**
+     * 将已初始化的桶数组一次扩大到不小于cap的2的幂，用于putAll等预先知道元素个数的场景
+     * 与连续调用resize()逐次翻倍不同，每个节点只重新分配一次桶。
+     * 原来的一个桶j只会分散到新桶数组中下标为j + k * oldCap的桶里，互不交叉，
+     * 所以可以逐个旧桶处理：先把链表反转，再依次插入到目标桶的头部，每个新桶中的节点保持原来的相对顺序。
+     * 这是一次性的批量操作，开启渐进式扩容时也不分批迁移
+     */
+    final void resizeTo(int cap) {
+        HashMapStats.Counters c = statsCounters;
+        long start = (c == null) ? 0L : System.nanoTime();
+        Node<K,V>[] oldTab = (oldTable != null) ? completeTransfer() : table;
+        int oldCap = oldTab.length, newCap = tableSizeFor(cap);
+        if (newCap <= oldCap)
+            return;
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                (int)ft : Integer.MAX_VALUE);
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] newTab = (Node<K,V>[])new Node[newCap];
+        table = newTab;
+        int mask = newCap - 1;
+        for (int j = 0; j < oldCap; ++j) {
+            Node<K,V> e, r, next;
+            if ((e = oldTab[j]) == null)
+                continue;
+            oldTab[j] = null;
+            if (e.next == null) {
+                newTab[e.hash & mask] = e;
+                continue;
+            }
+            boolean tree = e instanceof TreeNode;
+            for (r = null; e != null; e = next) {
+                next = e.next;
+                e.next = r;
+                r = e;
+            }
+            for (; r != null; r = next) {
+                next = r.next;
+                int i = r.hash & mask;
+                Node<K,V> h = newTab[i];
+                if (tree) {
+                    // 红黑树的节点还要维护prev指针
+                    ((TreeNode<K,V>)r).prev = null;
+                    if (h != null)
+                        ((TreeNode<K,V>)h).prev = (TreeNode<K,V>)r;
+                }
+                r.next = h;
+                newTab[i] = r;
+            }
+            if (tree) {
+                // 与TreeNode.split相同，节点较少的桶退化为链表，其余的重新树化
+                for (int i = j; i < newCap; i += oldCap) {
+                    TreeNode<K,V> b = (TreeNode<K,V>)newTab[i];
+                    if (b == null)
+                        continue;
+                    int n = 0;
+                    for (Node<K,V> q = b; q != null && n <= UNTREEIFY_THRESHOLD; q = q.next)
+                        ++n;
+                    if (n <= UNTREEIFY_THRESHOLD)
+                        newTab[i] = b.untreeify(this);
+                    else
+                        b.treeify(newTab);
+                }
+            }
+        }
+        if (c != null) {
+            ++c.resizes;
+            c.resizeNanos += System.nanoTime() - start;
+        }
+    }
 
-                    if (e.next == null)
-                        // 如果这个位置只有一个节点，那么将其重新映射至新桶
-                        newTab[e.hash & (newCap - 1)] = e;
-                    else if (e instanceof TreeNode)
-                        // 如果此处已经树化，则交由红黑树操作
-                        ((TreeNode<K,V>)e).split(this, newTab, j, oldCap);
-                    else {
+    /**
+     * 将旧桶数组oldTab中索引为j的桶迁移至新桶数组newTab中，迁移后旧桶的该位置置空
+     * 新桶数组的容量为旧桶数组的2倍
+     */
+    final void transferBin(Node<K,V>[] oldTab, Node<K,V>[] newTab, int j) {
+        int oldCap = oldTab.length, newCap = newTab.length;
+        Node<K,V> e = oldTab[j];
+        oldTab[j] = null;
+
+        if (e.next == null)
+            // 如果这个位置只有一个节点，那么将其重新映射至新桶
+            newTab[e.hash & (newCap - 1)] = e;
+        else if (e instanceof TreeNode)
+            // 如果此处已经树化，则交由红黑树操作
+            ((TreeNode<K,V>)e).split(this, newTab, j, oldCap);
+        else {
 
-                        // 创建了两个新的链表，假设记做lo和hi
-                        // loHead是lo链表的头指针，loTail是lo链表的尾指针
-                        // hiHead是hi链表的头指针，hiTail是hi链表的尾指针
-                        // 创建这两个链表是因为后续通过(e.hash & oldCap) == 0条件的判断
-                        // 节点在新桶中的索引要么和原来相同，要么为原索引加原数组长度
-                        // lo链表储存索引不变的节点，hi链表储存索引变为原索引加原数组长度的节点
-                        // 为什么这个表达式能够区分出两组节点，下面举个例子说明一下
-
-                        // 假设新旧容量分别为32和16，两个key分别为37和53
-                        // 那么根据(hash & (cap - 1))计算两个key在容量为16时的索引
-                        // 37 = 0010 0101
-                        //    & 0000 1111
-                        //      0000 0101 = 5
-                        //
-                        // 53 = 0011 0101
-                        //    & 0000 1111
-                        //      0000 0101 = 5
-                        // 即37和53这两个key在容量为16的桶中索引都是5
-                        //
-                        // 再计算一下在容量为32的桶中的索引
-                        // 37 = 0010 0101
-                        //    & 0001 1111
-                        //      0000 0101 = 5
-                        //
-                        // 53 = 0011 0101
-                        //    & 0001 1111
-                        //      0001 0101 = 21 - 5 = 16
-                        //
-                        // 从上面的例子可以看出，因为31和15只有第5位不相同，那么重新映射后的索引与原索引相比
-                        // 也只可能在第5位有所不同，那么通过跟只有第5位为1的数即16进行按位与运算，即可区分出这两种不同的索引
-                        // 并且两个索引正好相差16，即旧桶的容量
-
-                        // 参考：
-                        // https://blog.csdn.net/qq32933432/article/details/86668385
-
-                        Node<K,V> loHead = null, loTail = null;
-                        Node<K,V> hiHead = null, hiTail = null;
-                        Node<K,V> next;
-
-                        // 遍历链表
-                        do {
-                            next = e.next;
-                            if ((e.hash & oldCap) == 0) {
-                                // 索引不变的进入这个分支
-                                if (loTail == null)
-                                    // lo链表的第一个节点，将lo的头指针指向此节点
-                                    loHead = e;
-                                else
-                                    // 节点链入lo链表中
-                                    loTail.next = e;
-
-                                // 修改lo链表的尾指针
-                                loTail = e;
-                            }
-                            else {
-                                // 索引变为原索引+原数组长度的进入这个分支
-                                if (hiTail == null)
-                                    // hi链表的第一个节点，将hi的头指针指向此节点
-                                    hiHead = e;
-                                else
-                                    // 节点链入hi链表中
-                                    hiTail.next = e;
-
-                                // 修改hi链表的尾指针
-                                hiTail = e;
-                            }
-                        } while ((e = next) != null);
+            // 创建了两个新的链表，假设记做lo和hi
+            // loHead是lo链表的头指针，loTail是lo链表的尾指针
+            // hiHead是hi链表的头指针，hiTail是hi链表的尾指针
+            // 创建这两个链表是因为后续通过(e.hash & oldCap) == 0条件的判断
+            // 节点在新桶中的索引要么和原来相同，要么为原索引加原数组长度
+            // lo链表储存索引不变的节点，hi链表储存索引变为原索引加原数组长度的节点
+            // 为什么这个表达式能够区分出两组节点，下面举个例子说明一下
+
+            // 假设新旧容量分别为32和16，两个key分别为37和53
+            // 那么根据(hash & (cap - 1))计算两个key在容量为16时的索引
+            // 37 = 0010 0101
+            //    & 0000 1111
+            //      0000 0101 = 5
+            //
+            // 53 = 0011 0101
+            //    & 0000 1111
+            //      0000 0101 = 5
+            // 即37和53这两个key在容量为16的桶中索引都是5
+            //
+            // 再计算一下在容量为32的桶中的索引
+            // 37 = 0010 0101
+            //    & 0001 1111
+            //      0000 0101 = 5
+            //
+            // 53 = 0011 0101
+            //    & 0001 1111
+            //      0001 0101 = 21 - 5 = 16
+            //
+            // 从上面的例子可以看出，因为31和15只有第5位不相同，那么重新映射后的索引与原索引相比
+            // 也只可能在第5位有所不同，那么通过跟只有第5位为1的数即16进行按位与运算，即可区分出这两种不同的索引
+            // 并且两个索引正好相差16，即旧桶的容量
+
+            // 参考：
+            // https://blog.csdn.net/qq32933432/article/details/86668385
+
+            Node<K,V> loHead = null, loTail = null;
+            Node<K,V> hiHead = null, hiTail = null;
+            Node<K,V> next;
+
+            // 遍历链表
+            do {
+                next = e.next;
+                if ((e.hash & oldCap) == 0) {
+                    // 索引不变的进入这个分支
+                    if (loTail == null)
+                        // lo链表的第一个节点，将lo的头指针指向此节点
+                        loHead = e;
+                    else
+                        // 节点链入lo链表中
+                        loTail.next = e;
 
-                        // 如果lo链表不为空，将其放入新桶的原索引处
-                        if (loTail != null) {
-                            loTail.next = null;
-                            newTab[j] = loHead;
-                        }
+                    // 修改lo链表的尾指针
+                    loTail = e;
+                }
+                else {
+                    // 索引变为原索引+原数组长度的进入这个分支
+                    if (hiTail == null)
+                        // hi链表的第一个节点，将hi的头指针指向此节点
+                        hiHead = e;
+                    else
+                        // 节点链入hi链表中
+                        hiTail.next = e;
 
-                        // 如果hi链表不为空，则将其放入新桶的原索引加原数组长度的位置
-                        if (hiTail != null) {
-                            hiTail.next = null;
-                            newTab[j + oldCap] = hiHead;
-                        }
-                    }
+                    // 修改hi链表的尾指针
+                    hiTail = e;
                 }
+            } while ((e = next) != null);
+
+            // 如果lo链表不为空，将其放入新桶的原索引处
+            if (loTail != null) {
+                loTail.next = null;
+                newTab[j] = loHead;
+            }
+
+            // 如果hi链表不为空，则将其放入新桶的原索引加原数组长度的位置
+            if (hiTail != null) {
+                hiTail.next = null;
+                newTab[j + oldCap] = hiHead;
             }
         }
-        return newTab;
+    }
+
+    /**
+     * 渐进式扩容期间由写操作调用
+     * 先迁移hash所在的旧桶，保证之后对此key的操作只需要处理table，
+     * 再从transferIndex开始顺序迁移TRANSFER_STRIDE个旧桶，全部迁移完成后丢弃旧桶数组
+     */
+    final void helpTransfer(int hash) {
+        Node<K,V>[] oldTab, tab; int j, n, bound;
+        if ((oldTab = oldTable) != null) {
+            HashMapStats.Counters c = statsCounters;
+            long start = (c == null) ? 0L : System.nanoTime();
+            tab = table;
+            n = oldTab.length;
+            if (oldTab[j = (n - 1) & hash] != null)
+                transferBin(oldTab, tab, j);
+            for (j = transferIndex, bound = Math.min(n, j + TRANSFER_STRIDE);
+                 j < bound; ++j) {
+                if (oldTab[j] != null)
+                    transferBin(oldTab, tab, j);
+            }
+            if ((transferIndex = j) >= n) {
+                oldTable = null;
+                transferIndex = 0;
+            }
+            if (c != null)
+                c.resizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * 完成剩余的渐进式扩容迁移并返回桶数组
+     * 需要遍历整个桶数组的写操作会先调用此方法，保证所有节点都在table中
+     */
+    final Node<K,V>[] completeTransfer() {
+        Node<K,V>[] oldTab, tab = table;
+        if ((oldTab = oldTable) != null) {
+            HashMapStats.Counters c = statsCounters;
+            long start = (c == null) ? 0L : System.nanoTime();
+            for (int j = transferIndex; j < oldTab.length; ++j) {
+                if (oldTab[j] != null)
+                    transferBin(oldTab, tab, j);
+            }
+            oldTable = null;
+            transferIndex = 0;
+            if (c != null)
+                c.resizeNanos += System.nanoTime() - start;
+        }
+        return tab;
+    }
+
+    /**
+     * 返回包含所有节点的桶数组，供只读的遍历使用，不会迁移任何桶
+     * 读操作不能修改table和oldTable，否则多个线程共享一个不再修改的Map时会出现数据竞争。
+     * 渐进式扩容期间节点分布在table和oldTable中尚未迁移的桶里，此时返回两者拼接而成的新数组，
+     * 只复制桶的引用，遍历本来就是O(n)的，复杂度不变
+     */
+    final Node<K,V>[] bins() {
+        Node<K,V>[] oldTab, tab = table;
+        if ((oldTab = oldTable) == null || tab == null)
+            return tab;
+        Node<K,V>[] a = Arrays.copyOf(tab, tab.length + oldTab.length);
+        System.arraycopy(oldTab, 0, a, tab.length, oldTab.length);
+        return a;
     }
 
     /**
@@ -819,8 +1234,11 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 }
                 tl = p;
             } while ((e = e.next) != null);
-            if ((tab[index] = hd) != null)
+            if ((tab[index] = hd) != null) {
                 hd.treeify(tab);
+                if (statsCounters != null)
+                    ++statsCounters.treeifies;
+            }
         }
     }
 
@@ -838,7 +1256,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         Node<K,V> e;
 
         // 若key存在，则返回其对应的值，否则返回null
-        return (e = removeNode(hash(key), key, null, false, true)) == null ?
+        return (e = removeNode(keyHash(key), key, null, false, true)) == null ?
                 null : e.value;
     }
 
@@ -850,8 +1268,16 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                                boolean matchValue, boolean movable) {
         Node<K,V>[] tab; Node<K,V> p; int n, index;
 
+        // 渐进式扩容期间，先迁移hash所在的旧桶
+        // 迭代器删除时movable为false，此时不能迁移，否则尚未遍历的节点可能被移到已经遍历过的位置，
+        // 直接在节点所在的桶数组中删除
+        if (oldTable != null && movable)
+            helpTransfer(hash);
+        if ((tab = oldTable) == null || tab[(tab.length - 1) & hash] == null)
+            tab = table;
+
         // hash映射的索引处不为空
-        if ((tab = table) != null && (n = tab.length) > 0 &&
+        if (tab != null && (n = tab.length) > 0 &&
                 (p = tab[index = (n - 1) & hash]) != null) {
             Node<K,V> node = null, e; K k; V v;
             if (p.hash == hash &&
@@ -914,6 +1340,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     public void clear() {
         Node<K,V>[] tab;
         modCount++;
+
+        // 渐进式扩容未完成时，旧桶数组直接丢弃即可
+        oldTable = null;
+        transferIndex = 0;
         if ((tab = table) != null && size > 0) {
             // 元素个数清零
             size = 0;
@@ -928,7 +1358,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     public boolean containsValue(Object value) {
         Node<K,V>[] tab; V v;
-        if ((tab = table) != null && size > 0) {
+        if ((tab = bins()) != null && size > 0) {
             // 遍历桶的所有位置
             for (int i = 0; i < tab.length; ++i) {
                 // 遍历所有节点
@@ -972,7 +1402,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         public final Iterator<K> iterator()     { return new KeyIterator(); }
         public final boolean contains(Object o) { return containsKey(o); }
         public final boolean remove(Object key) {
-            return removeNode(hash(key), key, null, false, true) != null;
+            return removeNode(keyHash(key), key, null, false, true) != null;
         }
         public final Spliterator<K> spliterator() {
             return new KeySpliterator<>(HashMap.this, 0, -1, 0, 0);
@@ -981,7 +1411,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
-            if (size > 0 && (tab = table) != null) {
+            if (size > 0 && (tab = bins()) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
                     for (Node<K,V> e = tab[i]; e != null; e = e.next)
@@ -1029,7 +1459,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
-            if (size > 0 && (tab = table) != null) {
+            if (size > 0 && (tab = bins()) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
                     for (Node<K,V> e = tab[i]; e != null; e = e.next)
@@ -1073,7 +1503,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 return false;
             Map.Entry<?,?> e = (Map.Entry<?,?>) o;
             Object key = e.getKey();
-            Node<K,V> candidate = getNode(hash(key), key);
+            Node<K,V> candidate = getNode(keyHash(key), key);
             return candidate != null && candidate.equals(e);
         }
         public final boolean remove(Object o) {
@@ -1081,7 +1511,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 Map.Entry<?,?> e = (Map.Entry<?,?>) o;
                 Object key = e.getKey();
                 Object value = e.getValue();
-                return removeNode(hash(key), key, value, true, true) != null;
+                return removeNode(keyHash(key), key, value, true, true) != null;
             }
             return false;
         }
@@ -1092,7 +1522,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
-            if (size > 0 && (tab = table) != null) {
+            if (size > 0 && (tab = bins()) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
                     for (Node<K,V> e = tab[i]; e != null; e = e.next)
@@ -1109,7 +1539,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     @Override
     public V getOrDefault(Object key, V defaultValue) {
         Node<K,V> e;
-        return (e = getNode(hash(key), key)) == null ? defaultValue : e.value;
+        return (e = getNode(keyHash(key), key)) == null ? defaultValue : e.value;
     }
 
     /**
@@ -1117,7 +1547,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     @Override
     public V putIfAbsent(K key, V value) {
-        return putVal(hash(key), key, value, true, true);
+        return putVal(keyHash(key), key, value, true, true);
     }
 
     /**
@@ -1128,7 +1558,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     @Override
     public boolean remove(Object key, Object value) {
-        return removeNode(hash(key), key, value, true, true) != null;
+        return removeNode(keyHash(key), key, value, true, true) != null;
     }
 
     /**
@@ -1139,7 +1569,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         Node<K,V> e; V v;
 
         // 若key对应的节点存在并且值等于传入的oldValue，那么对值进行更新
-        if ((e = getNode(hash(key), key)) != null &&
+        if ((e = getNode(keyHash(key), key)) != null &&
                 ((v = e.value) == oldValue || (v != null && v.equals(oldValue)))) {
             e.value = newValue;
             afterNodeAccess(e);
@@ -1156,7 +1586,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         Node<K,V> e;
 
         // 如果key对应的节点存在，则对值进行更新
-        if ((e = getNode(hash(key), key)) != null) {
+        if ((e = getNode(keyHash(key), key)) != null) {
             V oldValue = e.value;
             e.value = value;
             afterNodeAccess(e);
@@ -1173,7 +1603,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                              Function<? super K, ? extends V> mappingFunction) {
         if (mappingFunction == null)
             throw new NullPointerException();
-        int hash = hash(key);
+        int hash = keyHash(key);
         Node<K,V>[] tab; Node<K,V> first; int n, i;
         int binCount = 0;
         TreeNode<K,V> t = null;
@@ -1184,6 +1614,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 (n = tab.length) == 0)
             n = (tab = resize()).length;
 
+        // 渐进式扩容期间，先迁移hash所在的旧桶
+        if (oldTable != null)
+            helpTransfer(hash);
+
         // 查找key对应的节点
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
@@ -1247,7 +1681,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (remappingFunction == null)
             throw new NullPointerException();
         Node<K,V> e; V oldValue;
-        int hash = hash(key);
+        int hash = keyHash(key);
 
         // 根据key查找值不为空的节点，
         if ((e = getNode(hash, key)) != null &&
@@ -1277,7 +1711,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                      BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
         if (remappingFunction == null)
             throw new NullPointerException();
-        int hash = hash(key);
+        int hash = keyHash(key);
         Node<K,V>[] tab; Node<K,V> first; int n, i;
         int binCount = 0;
         TreeNode<K,V> t = null;
@@ -1288,6 +1722,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 (n = tab.length) == 0)
             n = (tab = resize()).length;
 
+        // 渐进式扩容期间，先迁移hash所在的旧桶
+        if (oldTable != null)
+            helpTransfer(hash);
+
         // 查找key对应的节点
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
@@ -1352,7 +1790,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             throw new NullPointerException();
         if (remappingFunction == null)
             throw new NullPointerException();
-        int hash = hash(key);
+        int hash = keyHash(key);
         Node<K,V>[] tab; Node<K,V> first; int n, i;
         int binCount = 0;
         TreeNode<K,V> t = null;
@@ -1363,6 +1801,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 (n = tab.length) == 0)
             n = (tab = resize()).length;
 
+        // 渐进式扩容期间，先迁移hash所在的旧桶
+        if (oldTable != null)
+            helpTransfer(hash);
+
         // 查找key对应的节点
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
@@ -1432,7 +1874,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         Node<K,V>[] tab;
         if (action == null)
             throw new NullPointerException();
-        if (size > 0 && (tab = table) != null) {
+        if (size > 0 && (tab = bins()) != null) {
             int mc = modCount;
             // 遍历桶
             for (int i = 0; i < tab.length; ++i) {
@@ -1455,7 +1897,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         Node<K,V>[] tab;
         if (function == null)
             throw new NullPointerException();
-        if (size > 0 && (tab = table) != null) {
+        if (size > 0 && (tab = completeTransfer()) != null) {
             int mc = modCount;
             // 遍历桶数组
             for (int i = 0; i < tab.length; ++i) {
@@ -1469,6 +1911,492 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
     }
 
+    /* ------------------------------------------------------------ */
+    // Batch lookup
+
+    /*
+     * 逐个调用get时，每个key都要依次等待table[i]、Node、Node.key三次缓存未命中，
+     * 而下一个key的访问要等上一个key查找完成才开始，缓存未命中完全串行。
+     * 批量查找把每LOOKUP_BATCH个key分成一轮，按阶段流水线处理：
+     * 先计算所有key的哈希值，再读取所有桶中的第一个节点，再读取所有节点的hash，
+     * 最后才逐个比较key并在需要时沿链表或红黑树查找。
+     * 同一阶段中对不同key的访问互不依赖，它们的缓存未命中可以重叠，
+     * 到最后一个阶段时大部分节点已经在缓存中。
+     *
+     * 渐进式扩容期间需要在两个桶数组之间选择，此时退化为逐个调用getNode。
+     */
+
+    /**
+     * 批量查找keys中的每个key，把对应的value写入values的相同下标处，不存在时写入null
+     * 按访问顺序遍历的LinkedHashMap中，找到的元素按keys中的顺序依次移到链表尾部，与逐个调用get相同
+     *
+     * @return 找到的key的个数
+     * @throws IllegalArgumentException values的长度小于keys的长度
+     */
+    public int getAll(Object[] keys, Object[] values) {
+        int n = keys.length;
+        if (values.length < n)
+            throw new IllegalArgumentException("values.length < keys.length");
+        int found = 0;
+        int[] hashes = new int[LOOKUP_BATCH];
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] nodes = (Node<K,V>[])new Node[LOOKUP_BATCH];
+        for (int off = 0; off < n; off += LOOKUP_BATCH) {
+            int len = Math.min(LOOKUP_BATCH, n - off);
+            findNodes(keys, off, len, hashes, nodes);
+            for (int j = 0; j < len; j++) {
+                Node<K,V> e = nodes[j];
+                if (e != null) {
+                    afterNodeRead(e);
+                    values[off + j] = e.value;
+                    ++found;
+                }
+                else
+                    values[off + j] = null;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 批量查找，返回包含所有存在的key及其value的新HashMap，不存在的key不会出现在结果中
+     */
+    public HashMap<K,V> getAll(Collection<?> keys) {
+        Object[] ks = keys.toArray();
+        Object[] vs = new Object[ks.length];
+        int[] hashes = new int[LOOKUP_BATCH];
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] nodes = (Node<K,V>[])new Node[LOOKUP_BATCH];
+        HashMap<K,V> result = new HashMap<>((int)(ks.length / DEFAULT_LOAD_FACTOR) + 1);
+        for (int off = 0; off < ks.length; off += LOOKUP_BATCH) {
+            int len = Math.min(LOOKUP_BATCH, ks.length - off);
+            findNodes(ks, off, len, hashes, nodes);
+            for (int j = 0; j < len; j++) {
+                Node<K,V> e = nodes[j];
+                if (e != null) {
+                    afterNodeRead(e);
+                    result.putVal(result.hashSeed == hashSeed ? e.hash : result.keyHash(e.key),
+                                  e.key, e.value, false, true);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量判断是否包含所有的key，遇到第一个不存在的key时立即返回false
+     */
+    public boolean containsAll(Collection<?> keys) {
+        Object[] ks = keys.toArray();
+        int[] hashes = new int[LOOKUP_BATCH];
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] nodes = (Node<K,V>[])new Node[LOOKUP_BATCH];
+        for (int off = 0; off < ks.length; off += LOOKUP_BATCH) {
+            int len = Math.min(LOOKUP_BATCH, ks.length - off);
+            findNodes(ks, off, len, hashes, nodes);
+            for (int j = 0; j < len; j++) {
+                if (nodes[j] == null)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按阶段查找keys[off, off + len)对应的节点，结果写入nodes[0, len)，不存在时为null
+     */
+    final void findNodes(Object[] keys, int off, int len, int[] hashes, Node<K,V>[] nodes) {
+        Node<K,V>[] tab = table;
+        // 第一阶段：计算哈希值
+        for (int j = 0; j < len; j++)
+            hashes[j] = keyHash(keys[off + j]);
+        if (oldTable != null || tab == null || size == 0) {
+            for (int j = 0; j < len; j++)
+                nodes[j] = (tab == null) ? null : getNode(hashes[j], keys[off + j]);
+            return;
+        }
+        // 第二阶段：读取每个桶中的第一个节点
+        int mask = tab.length - 1;
+        for (int j = 0; j < len; j++)
+            nodes[j] = tab[hashes[j] & mask];
+        // 第三阶段：读取每个节点的hash，不匹配的在miss中记下对应的位
+        // 这一轮的读取只依赖nodes[j]本身，节点的缓存行会被并行地载入
+        int miss = 0;
+        for (int j = 0; j < len; j++) {
+            Node<K,V> e = nodes[j];
+            if (e == null || e.hash != hashes[j])
+                miss |= 1 << j;
+        }
+        // 第四阶段：比较key，第一个节点不匹配时继续在链表或红黑树中查找
+        for (int j = 0; j < len; j++) {
+            Node<K,V> e = nodes[j];
+            if (e == null)
+                continue;
+            Object key = keys[off + j];
+            K k;
+            if ((miss & (1 << j)) == 0 &&
+                    ((k = e.key) == key || (key != null && key.equals(k))))
+                continue;
+            int h = hashes[j];
+            Node<K,V> p = e.next;
+            if (p != null && e instanceof TreeNode)
+                p = ((TreeNode<K,V>)e).getTreeNode(h, key);
+            else {
+                for (; p != null; p = p.next) {
+                    if (p.hash == h &&
+                            ((k = p.key) == key || (key != null && key.equals(k))))
+                        break;
+                }
+            }
+            nodes[j] = p;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Parallel bulk operations
+
+    /*
+     * 以下方法与ConcurrentHashMap的批量操作类似，按桶的下标范围把table拆分为若干段，
+     * 交给ForkJoinPool.commonPool()并行处理，拆分方式与HashMapSpliterator.trySplit相同，
+     * 每次对半拆分下标范围。
+     *
+     * parallelismThreshold是并行执行所需的最小元素个数：
+     * 元素个数小于它时在调用线程中顺序执行，Long.MAX_VALUE表示总是顺序执行，1表示尽可能并行。
+     *
+     * HashMap不是线程安全的，执行期间不能有其他线程修改此Map，传入的函数也不能修改此Map，
+     * 否则会在执行结束后抛出ConcurrentModificationException。
+     * 传入的函数会被多个线程同时调用，调用顺序也是不确定的。
+     */
+
+    /**
+     * 计算拆分的批次数，0表示不拆分
+     * 与ConcurrentHashMap.batchFor相同，最多拆分为并行度的4倍，以便工作窃取能平衡负载
+     */
+    final int batchFor(long b) {
+        long n;
+        if (b == Long.MAX_VALUE || (n = size) <= 1L || n < b)
+            return 0;
+        int sp = ForkJoinPool.getCommonPoolParallelism() << 2;
+        return (b <= 0L || (n /= b) >= sp) ? sp : (int)n;
+    }
+
+    /**
+     * 并行地遍历所有元素
+     *
+     * @param parallelismThreshold 并行执行所需的最小元素个数
+     * @param action 对每个元素执行的操作
+     */
+    public void forEach(long parallelismThreshold,
+                        BiConsumer<? super K, ? super V> action) {
+        Node<K,V>[] tab;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0 && (tab = bins()) != null) {
+            int mc = modCount;
+            new ForEachTask<K,V>(tab, 0, tab.length,
+                                 batchFor(parallelismThreshold), action).invoke();
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 并行地遍历所有元素，根据传入的方法对值进行替换
+     * 每个桶只会被一个任务处理，所以对节点值的写入互不冲突，任务join之后对调用线程可见
+     *
+     * @param parallelismThreshold 并行执行所需的最小元素个数
+     * @param function 计算新值的方法
+     */
+    public void replaceAll(long parallelismThreshold,
+                           BiFunction<? super K, ? super V, ? extends V> function) {
+        Node<K,V>[] tab;
+        if (function == null)
+            throw new NullPointerException();
+        if (size > 0 && (tab = completeTransfer()) != null) {
+            int mc = modCount;
+            new ReplaceAllTask<K,V>(tab, 0, tab.length,
+                                    batchFor(parallelismThreshold), function).invoke();
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 并行地查找，返回对任意一个元素执行searchFunction得到的非null结果，
+     * 找到之后其他任务会尽快停止，没有找到时返回null
+     *
+     * @param parallelismThreshold 并行执行所需的最小元素个数
+     * @param searchFunction 找到时返回非null结果，否则返回null
+     */
+    public <U> U search(long parallelismThreshold,
+                        BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        Node<K,V>[] tab;
+        if (searchFunction == null)
+            throw new NullPointerException();
+        U u = null;
+        if (size > 0 && (tab = bins()) != null) {
+            int mc = modCount;
+            u = new SearchTask<K,V,U>(tab, 0, tab.length,
+                                      batchFor(parallelismThreshold), searchFunction,
+                                      new AtomicReference<U>()).invoke();
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+        return u;
+    }
+
+    /**
+     * 并行地合并所有非null的值，没有非null的值时返回null
+     * reducer需要满足结合律，合并的顺序是不确定的
+     *
+     * @param parallelismThreshold 并行执行所需的最小元素个数
+     * @param reducer 合并两个值的方法
+     */
+    public V reduceValues(long parallelismThreshold,
+                          BiFunction<? super V, ? super V, ? extends V> reducer) {
+        return reduceValues(parallelismThreshold, Function.identity(), reducer);
+    }
+
+    /**
+     * 先用transformer转换每个非null的值，再并行地合并所有非null的转换结果，没有非null的结果时返回null
+     *
+     * @param parallelismThreshold 并行执行所需的最小元素个数
+     * @param transformer 转换方法，返回null表示跳过此元素
+     * @param reducer 合并两个转换结果的方法
+     */
+    public <U> U reduceValues(long parallelismThreshold,
+                              Function<? super V, ? extends U> transformer,
+                              BiFunction<? super U, ? super U, ? extends U> reducer) {
+        Node<K,V>[] tab;
+        if (transformer == null || reducer == null)
+            throw new NullPointerException();
+        U u = null;
+        if (size > 0 && (tab = bins()) != null) {
+            int mc = modCount;
+            u = new ReduceValuesTask<K,V,U>(tab, 0, tab.length,
+                                            batchFor(parallelismThreshold),
+                                            transformer, reducer).invoke();
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+        return u;
+    }
+
+    /**
+     * 批量操作任务的基类，负责处理桶数组中[lo, hi)范围内的桶
+     * 任务开始时先把右半部分不断拆分出去并fork，直到批次用完，剩下的左半部分由自己处理，
+     * 拆分出去的任务通过nextRight串成链表，处理完自己的部分后再依次join
+     */
+    abstract static class BulkTask<K,V,R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = -3521432185397372411L;
+
+        final Node<K,V>[] tab;
+        final int lo;
+        int hi;
+        int batch;                 // 剩余可拆分的批次
+        BulkTask<K,V,R> nextRight; // 拆分出去的兄弟任务
+
+        BulkTask(Node<K,V>[] tab, int lo, int hi, int batch) {
+            this.tab = tab;
+            this.lo = lo;
+            this.hi = hi;
+            this.batch = batch;
+        }
+
+        /**
+         * 创建处理[lo, hi)范围的同类任务
+         */
+        abstract BulkTask<K,V,R> newTask(int lo, int hi, int batch);
+
+        /**
+         * 对半拆分下标范围，右半部分fork出去，返回拆分出去的任务链表
+         */
+        final BulkTask<K,V,R> forkRights() {
+            BulkTask<K,V,R> rights = null;
+            for (int h; batch > 0 && (h = hi) - lo > 1; ) {
+                int mid = (lo + h) >>> 1;
+                BulkTask<K,V,R> t = newTask(mid, h, batch >>>= 1);
+                t.nextRight = rights;
+                (rights = t).fork();
+                hi = mid;
+            }
+            return rights;
+        }
+    }
+
+    static final class ForEachTask<K,V> extends BulkTask<K,V,Void> {
+        private static final long serialVersionUID = 2480616337283524932L;
+
+        final BiConsumer<? super K, ? super V> action;
+
+        ForEachTask(Node<K,V>[] tab, int lo, int hi, int batch,
+                    BiConsumer<? super K, ? super V> action) {
+            super(tab, lo, hi, batch);
+            this.action = action;
+        }
+
+        BulkTask<K,V,Void> newTask(int lo, int hi, int batch) {
+            return new ForEachTask<K,V>(tab, lo, hi, batch, action);
+        }
+
+        protected Void compute() {
+            BulkTask<K,V,Void> rights = forkRights();
+            for (int i = lo; i < hi; ++i) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next)
+                    action.accept(e.key, e.value);
+            }
+            for (; rights != null; rights = rights.nextRight)
+                rights.join();
+            return null;
+        }
+    }
+
+    static final class ReplaceAllTask<K,V> extends BulkTask<K,V,Void> {
+        private static final long serialVersionUID = -2016578385932264379L;
+
+        final BiFunction<? super K, ? super V, ? extends V> function;
+
+        ReplaceAllTask(Node<K,V>[] tab, int lo, int hi, int batch,
+                       BiFunction<? super K, ? super V, ? extends V> function) {
+            super(tab, lo, hi, batch);
+            this.function = function;
+        }
+
+        BulkTask<K,V,Void> newTask(int lo, int hi, int batch) {
+            return new ReplaceAllTask<K,V>(tab, lo, hi, batch, function);
+        }
+
+        protected Void compute() {
+            BulkTask<K,V,Void> rights = forkRights();
+            for (int i = lo; i < hi; ++i) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next)
+                    e.value = function.apply(e.key, e.value);
+            }
+            for (; rights != null; rights = rights.nextRight)
+                rights.join();
+            return null;
+        }
+    }
+
+    static final class SearchTask<K,V,U> extends BulkTask<K,V,U> {
+        private static final long serialVersionUID = 7734016529658718374L;
+
+        final BiFunction<? super K, ? super V, ? extends U> searchFunction;
+        final AtomicReference<U> result; // 所有任务共享，找到结果后其他任务据此提前结束
+
+        SearchTask(Node<K,V>[] tab, int lo, int hi, int batch,
+                   BiFunction<? super K, ? super V, ? extends U> searchFunction,
+                   AtomicReference<U> result) {
+            super(tab, lo, hi, batch);
+            this.searchFunction = searchFunction;
+            this.result = result;
+        }
+
+        BulkTask<K,V,U> newTask(int lo, int hi, int batch) {
+            return new SearchTask<K,V,U>(tab, lo, hi, batch, searchFunction, result);
+        }
+
+        protected U compute() {
+            BulkTask<K,V,U> rights = forkRights();
+            outer: for (int i = lo; i < hi && result.get() == null; ++i) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next) {
+                    U u;
+                    if ((u = searchFunction.apply(e.key, e.value)) != null) {
+                        result.compareAndSet(null, u);
+                        break outer;
+                    }
+                }
+            }
+            for (; rights != null; rights = rights.nextRight)
+                rights.join();
+            return result.get();
+        }
+    }
+
+    static final class ReduceValuesTask<K,V,U> extends BulkTask<K,V,U> {
+        private static final long serialVersionUID = -5297457405487307816L;
+
+        final Function<? super V, ? extends U> transformer;
+        final BiFunction<? super U, ? super U, ? extends U> reducer;
+
+        ReduceValuesTask(Node<K,V>[] tab, int lo, int hi, int batch,
+                         Function<? super V, ? extends U> transformer,
+                         BiFunction<? super U, ? super U, ? extends U> reducer) {
+            super(tab, lo, hi, batch);
+            this.transformer = transformer;
+            this.reducer = reducer;
+        }
+
+        BulkTask<K,V,U> newTask(int lo, int hi, int batch) {
+            return new ReduceValuesTask<K,V,U>(tab, lo, hi, batch, transformer, reducer);
+        }
+
+        protected U compute() {
+            BulkTask<K,V,U> rights = forkRights();
+            U r = null;
+            for (int i = lo; i < hi; ++i) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next) {
+                    U u;
+                    if (e.value != null && (u = transformer.apply(e.value)) != null)
+                        r = (r == null) ? u : reducer.apply(r, u);
+                }
+            }
+            // 合并拆分出去的任务的结果
+            for (; rights != null; rights = rights.nextRight) {
+                U u;
+                if ((u = rights.join()) != null)
+                    r = (r == null) ? u : reducer.apply(r, u);
+            }
+            return r;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Statistics
+
+    /**
+     * 开启或关闭统计，开启后在扩容、树化和取消树化时累加计数，关闭时丢弃已有的计数
+     * 统计的开关和计数都不会被序列化
+     *
+     * @see #stats()
+     */
+    public void setStatsEnabled(boolean enabled) {
+        if (!enabled)
+            statsCounters = null;
+        else if (statsCounters == null)
+            statsCounters = new HashMapStats.Counters();
+    }
+
+    /**
+     * 是否开启了统计
+     */
+    public boolean isStatsEnabled() {
+        return statsCounters != null;
+    }
+
+    /**
+     * 生成当前的统计信息快照，需要遍历整个桶数组，不修改此Map
+     * 桶长度的直方图等根据当前结构计算的信息总是可用，扩容、树化次数等事件计数只在开启统计后才会累加
+     *
+     * @see HashMapStats#register
+     */
+    public HashMapStats stats() {
+        return HashMapStats.of(this);
+    }
+
+    /* ------------------------------------------------------------ */
+    // Frozen snapshot
+
+    /**
+     * 生成当前内容的不可变快照，查找时只需探测一个槽位，占用的内存也比HashMap小得多
+     * 之后对此Map的修改不会影响快照；构造需要遍历所有元素，耗时与元素个数成线性关系
+     *
+     * @see FrozenHashMap
+     */
+    public FrozenHashMap<K,V> freeze() {
+        return new FrozenHashMap<>(this);
+    }
+
     /* ------------------------------------------------------------ */
     // Cloning and serialization
 
@@ -1569,7 +2497,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 K key = (K) s.readObject();
                 @SuppressWarnings("unchecked")
                 V value = (V) s.readObject();
-                putVal(hash(key), key, value, false, false);
+                putVal(keyHash(key), key, value, false, false);
             }
         }
     }
@@ -1582,15 +2510,31 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         Node<K,V> current;     // current entry
         int expectedModCount;  // for fast-fail
         int index;             // current slot
+        Node<K,V>[] tab;       // 创建时的桶数组
+        Node<K,V>[] oldTab;    // 创建时的旧桶数组，先遍历tab再遍历其中尚未迁移的桶
 
         HashIterator() {
             expectedModCount = modCount;
-            Node<K,V>[] t = table;
+            // 遍历不迁移任何桶，通过迭代器删除时也不会迁移，所以两个数组在遍历期间保持不变
+            Node<K,V>[] t = tab = table;
+            oldTab = oldTable;
             current = next = null;
             index = 0;
-            if (t != null && size > 0) { // advance to first entry
-                do {} while (index < t.length && (next = t[index++]) == null);
-            }
+            if (t != null && size > 0) // advance to first entry
+                advance();
+        }
+
+        /**
+         * 前进到下一个非空的桶，下标不小于tab.length时对应oldTab中的桶
+         */
+        private void advance() {
+            Node<K,V>[] t = tab, o = oldTab;
+            int n = t.length, hi = (o == null) ? n : n + o.length;
+            Node<K,V> e = null;
+            while (index < hi &&
+                   (e = (index < n) ? t[index++] : o[index++ - n]) == null)
+                ;
+            next = e;
         }
 
         public final boolean hasNext() {
@@ -1598,15 +2542,13 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
 
         final Node<K,V> nextNode() {
-            Node<K,V>[] t;
             Node<K,V> e = next;
             if (modCount != expectedModCount)
                 throw new ConcurrentModificationException();
             if (e == null)
                 throw new NoSuchElementException();
-            if ((next = (current = e).next) == null && (t = table) != null) {
-                do {} while (index < t.length && (next = t[index++]) == null);
-            }
+            if ((next = (current = e).next) == null && tab != null)
+                advance();
             return e;
         }
 
@@ -1618,7 +2560,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 throw new ConcurrentModificationException();
             current = null;
             K key = p.key;
-            removeNode(hash(key), key, null, false, false);
+            removeNode(keyHash(key), key, null, false, false);
             expectedModCount = modCount;
         }
     }
@@ -1641,6 +2583,16 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     /* ------------------------------------------------------------ */
     // spliterators
 
+    /*
+     * 默认按桶的下标对半拆分，每一半的大小只是估计值，桶数组稀疏或者存在大量红黑树时，
+     * 拆分出的任务大小可能相差很大。
+     * 元素个数达到Holder.BALANCED_SPLIT_THRESHOLD时，顶层Spliterator第一次拆分前会遍历一遍桶数组，
+     * 统计每个块（1 << SPLIT_BLOCK_SHIFT个桶）中的元素个数，红黑树桶同样通过next指针计数，
+     * 之后每次拆分都选择使两边元素个数最接近的块边界，拆分结果的大小是精确的，
+     * 因此会报告SIZED和SUBSIZED，并行流的toArray、collect等操作可以直接按大小分配结果数组。
+     * 统计需要额外遍历一遍所有节点，顺序遍历不会调用trySplit，不受影响。
+     */
+
     static class HashMapSpliterator<K,V> {
         final HashMap<K,V> map;
         Node<K,V> current;          // current node
@@ -1648,6 +2600,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         int fence;                  // one past last index
         int est;                    // size estimate
         int expectedModCount;       // for comodification checks
+        int[] prefix;               // 每个块元素个数的前缀和，所有拆分结果共享
+        boolean balanced;           // 是否按元素个数拆分，此时est是精确值
+        Node<K,V>[] tab;            // 初始化时由bins()得到的桶数组，所有拆分结果共享
 
         HashMapSpliterator(HashMap<K,V> m, int origin,
                            int fence, int est,
@@ -1659,14 +2614,25 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             this.expectedModCount = expectedModCount;
         }
 
+        HashMapSpliterator(HashMap<K,V> m, int origin,
+                           int fence, int est,
+                           int expectedModCount, int[] prefix,
+                           Node<K,V>[] tab) {
+            this(m, origin, fence, est, expectedModCount);
+            this.prefix = prefix;
+            this.balanced = prefix != null;
+            this.tab = tab;
+        }
+
         final int getFence() { // initialize fence and size on first use
             int hi;
             if ((hi = fence) < 0) {
                 HashMap<K,V> m = map;
                 est = m.size;
                 expectedModCount = m.modCount;
-                Node<K,V>[] tab = m.table;
+                Node<K,V>[] tab = this.tab = m.bins();
                 hi = fence = (tab == null) ? 0 : tab.length;
+                balanced = est >= Holder.BALANCED_SPLIT_THRESHOLD;
             }
             return hi;
         }
@@ -1675,6 +2641,91 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             getFence(); // force init
             return (long) est;
         }
+
+        /**
+         * 是否按元素个数拆分，初始化之前根据Map当前的大小判断
+         */
+        final boolean isBalanced() {
+            return (fence < 0) ? map.size >= Holder.BALANCED_SPLIT_THRESHOLD : balanced;
+        }
+
+        /**
+         * 计算拆分点，拆分后[index, mid)交给新的Spliterator，自己保留[mid, fence)，不能拆分时返回-1
+         */
+        final int splitIndex() {
+            int hi = getFence(), lo = index;
+            if (current != null)
+                return -1;
+            if (!balanced) {
+                int mid = (lo + hi) >>> 1;
+                return (lo < mid) ? mid : -1;
+            }
+            int mask = (1 << SPLIT_BLOCK_SHIFT) - 1;
+            // 已经开始遍历的Spliterator起点可能不在块的边界上，无法精确拆分
+            if ((lo & mask) != 0)
+                return -1;
+            int bl = lo >>> SPLIT_BLOCK_SHIFT, bh = (hi + mask) >>> SPLIT_BLOCK_SHIFT;
+            if (bh - bl < 2)
+                return -1;
+            int[] p;
+            if ((p = prefix) == null) {
+                // 只有尚未遍历的顶层Spliterator才会统计，否则est与统计结果对不上
+                if (lo != 0)
+                    return -1;
+                prefix = p = countBlocks(bh);
+            }
+            // 二分查找前缀和首次达到一半的块边界，拆分点至少保留一个块给两边
+            int half = p[bl] + ((p[bh] - p[bl]) >>> 1);
+            int l = bl + 1, h = bh - 1;
+            while (l < h) {
+                int m = (l + h) >>> 1;
+                if (p[m] < half)
+                    l = m + 1;
+                else
+                    h = m;
+            }
+            return l << SPLIT_BLOCK_SHIFT;
+        }
+
+        /**
+         * 拆分后更新自己的大小，返回[lo, mid)部分的大小
+         */
+        final int splitEst(int lo, int mid) {
+            int[] p;
+            if ((p = prefix) == null)
+                return est >>>= 1;
+            int n = p[mid >>> SPLIT_BLOCK_SHIFT] - p[lo >>> SPLIT_BLOCK_SHIFT];
+            est -= n;
+            return n;
+        }
+
+        /**
+         * 统计前blocks个块的元素个数，返回前缀和，p[b]为前b个块的元素总数
+         */
+        final int[] countBlocks(int blocks) {
+            int[] p = new int[blocks + 1];
+            Node<K,V>[] tab = this.tab;
+            if (tab != null) {
+                int n = 0;
+                for (int b = 0, i = 0; b < blocks; ++b) {
+                    for (int end = Math.min(i + (1 << SPLIT_BLOCK_SHIFT), tab.length);
+                         i < end; ++i) {
+                        for (Node<K,V> e = tab[i]; e != null; e = e.next)
+                            ++n;
+                    }
+                    p[b + 1] = n;
+                }
+            }
+            return p;
+        }
+
+        /**
+         * SIZED和SUBSIZED特征
+         */
+        final int sizeCharacteristics() {
+            return isBalanced() ? Spliterator.SIZED | Spliterator.SUBSIZED :
+                    (fence < 0 || est == map.size ? Spliterator.SIZED : 0);
+        }
     }
 
     static final class KeySpliterator<K,V>
@@ -1685,11 +2736,16 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             super(m, origin, fence, est, expectedModCount);
         }
 
+        KeySpliterator(HashMap<K,V> m, int origin, int fence, int est,
+                       int expectedModCount, int[] prefix, Node<K,V>[] tab) {
+            super(m, origin, fence, est, expectedModCount, prefix, tab);
+        }
+
         public KeySpliterator<K,V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                    new KeySpliterator<>(map, lo, index = mid, est >>>= 1,
-                            expectedModCount);
+            int lo = index, mid = splitIndex();
+            return (mid < 0) ? null :
+                    new KeySpliterator<>(map, lo, index = mid, splitEst(lo, mid),
+                            expectedModCount, prefix, tab);
         }
 
         public void forEachRemaining(Consumer<? super K> action) {
@@ -1697,13 +2753,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             if (action == null)
                 throw new NullPointerException();
             HashMap<K,V> m = map;
-            Node<K,V>[] tab = m.table;
-            if ((hi = fence) < 0) {
-                mc = expectedModCount = m.modCount;
-                hi = fence = (tab == null) ? 0 : tab.length;
-            }
-            else
-                mc = expectedModCount;
+            hi = getFence();
+            mc = expectedModCount;
+            Node<K,V>[] tab = this.tab;
             if (tab != null && tab.length >= hi &&
                     (i = index) >= 0 && (i < (index = hi) || current != null)) {
                 Node<K,V> p = current;
@@ -1725,8 +2777,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             int hi;
             if (action == null)
                 throw new NullPointerException();
-            Node<K,V>[] tab = map.table;
-            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
+            hi = getFence();
+            Node<K,V>[] tab = this.tab;
+            if (tab != null && tab.length >= hi && index >= 0) {
                 while (current != null || index < hi) {
                     if (current == null)
                         current = tab[index++];
@@ -1744,8 +2797,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
 
         public int characteristics() {
-            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
-                    Spliterator.DISTINCT;
+            return sizeCharacteristics() | Spliterator.DISTINCT;
         }
     }
 
@@ -1757,11 +2809,16 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             super(m, origin, fence, est, expectedModCount);
         }
 
+        ValueSpliterator(HashMap<K,V> m, int origin, int fence, int est,
+                         int expectedModCount, int[] prefix, Node<K,V>[] tab) {
+            super(m, origin, fence, est, expectedModCount, prefix, tab);
+        }
+
         public ValueSpliterator<K,V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                    new ValueSpliterator<>(map, lo, index = mid, est >>>= 1,
-                            expectedModCount);
+            int lo = index, mid = splitIndex();
+            return (mid < 0) ? null :
+                    new ValueSpliterator<>(map, lo, index = mid, splitEst(lo, mid),
+                            expectedModCount, prefix, tab);
         }
 
         public void forEachRemaining(Consumer<? super V> action) {
@@ -1769,13 +2826,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             if (action == null)
                 throw new NullPointerException();
             HashMap<K,V> m = map;
-            Node<K,V>[] tab = m.table;
-            if ((hi = fence) < 0) {
-                mc = expectedModCount = m.modCount;
-                hi = fence = (tab == null) ? 0 : tab.length;
-            }
-            else
-                mc = expectedModCount;
+            hi = getFence();
+            mc = expectedModCount;
+            Node<K,V>[] tab = this.tab;
             if (tab != null && tab.length >= hi &&
                     (i = index) >= 0 && (i < (index = hi) || current != null)) {
                 Node<K,V> p = current;
@@ -1797,8 +2850,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             int hi;
             if (action == null)
                 throw new NullPointerException();
-            Node<K,V>[] tab = map.table;
-            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
+            hi = getFence();
+            Node<K,V>[] tab = this.tab;
+            if (tab != null && tab.length >= hi && index >= 0) {
                 while (current != null || index < hi) {
                     if (current == null)
                         current = tab[index++];
@@ -1816,7 +2870,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
 
         public int characteristics() {
-            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0);
+            return sizeCharacteristics();
         }
     }
 
@@ -1828,11 +2882,16 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             super(m, origin, fence, est, expectedModCount);
         }
 
+        EntrySpliterator(HashMap<K,V> m, int origin, int fence, int est,
+                         int expectedModCount, int[] prefix, Node<K,V>[] tab) {
+            super(m, origin, fence, est, expectedModCount, prefix, tab);
+        }
+
         public EntrySpliterator<K,V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                    new EntrySpliterator<>(map, lo, index = mid, est >>>= 1,
-                            expectedModCount);
+            int lo = index, mid = splitIndex();
+            return (mid < 0) ? null :
+                    new EntrySpliterator<>(map, lo, index = mid, splitEst(lo, mid),
+                            expectedModCount, prefix, tab);
         }
 
         public void forEachRemaining(Consumer<? super Map.Entry<K,V>> action) {
@@ -1840,13 +2899,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             if (action == null)
                 throw new NullPointerException();
             HashMap<K,V> m = map;
-            Node<K,V>[] tab = m.table;
-            if ((hi = fence) < 0) {
-                mc = expectedModCount = m.modCount;
-                hi = fence = (tab == null) ? 0 : tab.length;
-            }
-            else
-                mc = expectedModCount;
+            hi = getFence();
+            mc = expectedModCount;
+            Node<K,V>[] tab = this.tab;
             if (tab != null && tab.length >= hi &&
                     (i = index) >= 0 && (i < (index = hi) || current != null)) {
                 Node<K,V> p = current;
@@ -1868,8 +2923,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             int hi;
             if (action == null)
                 throw new NullPointerException();
-            Node<K,V>[] tab = map.table;
-            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
+            hi = getFence();
+            Node<K,V>[] tab = this.tab;
+            if (tab != null && tab.length >= hi && index >= 0) {
                 while (current != null || index < hi) {
                     if (current == null)
                         current = tab[index++];
@@ -1887,8 +2943,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
 
         public int characteristics() {
-            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
-                    Spliterator.DISTINCT;
+            return sizeCharacteristics() | Spliterator.DISTINCT;
         }
     }
 
@@ -1928,7 +2983,12 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      * Reset to initial default state.  Called by clone and readObject.
      */
     void reinitialize() {
+        // 克隆得到的HashMap保留统计开关，但计数器重新开始
+        if (statsCounters != null)
+            statsCounters = new HashMapStats.Counters();
         table = null;
+        oldTable = null;
+        transferIndex = 0;
         entrySet = null;
         keySet = null;
         values = null;
@@ -1939,13 +2999,15 @@ public class HashMap<K,V> extends AbstractMap<K,V>
 
     // Callbacks to allow LinkedHashMap post-actions
     void afterNodeAccess(Node<K,V> p) { }
+    // 只读查找（如getAll）命中后调用，LinkedHashMap在此记录访问，而不是直接调整顺序
+    void afterNodeRead(Node<K,V> p) { }
     void afterNodeInsertion(boolean evict) { }
     void afterNodeRemoval(Node<K,V> p) { }
 
     // Called only from writeObject, to ensure compatible ordering.
     void internalWriteEntries(java.io.ObjectOutputStream s) throws IOException {
         Node<K,V>[] tab;
-        if (size > 0 && (tab = table) != null) {
+        if (size > 0 && (tab = bins()) != null) {
             for (int i = 0; i < tab.length; ++i) {
                 for (Node<K,V> e = tab[i]; e != null; e = e.next) {
                     s.writeObject(e.key);
@@ -2116,6 +3178,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
          */
         final Node<K,V> untreeify(HashMap<K,V> map) {
             Node<K,V> hd = null, tl = null;
+            if (map.statsCounters != null)
+                ++map.statsCounters.untreeifies;
             for (Node<K,V> q = this; q != null; q = q.next) {
                 Node<K,V> p = map.replacementNode(q, null);
                 if (tl == null)
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HashMap和LinkedHashMap的二进制编解码器，用于在进程之间传输Map
+ *
+ * <p>与Java序列化（{@code writeObject}/{@code readObject}逐个条目经过ObjectOutputStream）不同，
+ * 这里的key和value由调用方提供的{@link Serializer}直接写成紧凑的二进制，
+ * 不带类描述符和对象句柄。格式如下（整数均为大端序）：
+ * <pre>
+ * int    魔数
+ * byte   标志位：1表示LinkedHashMap，2表示按访问顺序遍历
+ * float  加载因子
+ * int    容量（桶数组的长度）
+ * int    元素个数
+ * 若干个批次：int 条目数，int 字节数，之后是这些条目的内容
+ * int    0，表示结束
+ * </pre>
+ * 每个条目先写一个字节标记key和value是否为null，再依次写非null的key和value。
+ * 条目先编码到内存缓冲区中，凑够约{@code batchBytes}字节后连同长度一起写出，
+ * 读取时也是整批读入后再解析，避免了对底层流的大量小读写。
+ *
+ * <p>读取时根据头部的容量和元素个数一次性分配好桶数组，之后通过putVal直接插入，
+ * 不会发生中间扩容。LinkedHashMap按原来的遍历顺序写出和插入，读回后顺序不变。
+ *
+ * <p>编解码器本身没有可变状态，可以在多个线程之间共享；被写出的Map在写出期间不能被修改。
+ *
+ * @param <K> key的类型
+ * @param <V> value的类型
+ * @see HashMap
+ * @see LinkedHashMap
+ * @since 1.8
+ */
+public final class HashMapCodec<K,V> {
+
+    /**
+     * 单个key或value的编解码方式，实现类只需处理非null的对象
+     */
+    public interface Serializer<T> {
+        void write(T t, DataOutput out) throws IOException;
+        T read(DataInput in) throws IOException;
+    }
+
+    /**
+     * 字符串按UTF-8编码，前面加上int类型的字节数，没有writeUTF的64KB限制
+     */
+    public static final Serializer<String> STRING = new Serializer<String>() {
+        public void write(String s, DataOutput out) throws IOException {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        public String read(DataInput in) throws IOException {
+            byte[] b = new byte[readLength(in)];
+            in.readFully(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    };
+
+    public static final Serializer<Integer> INTEGER = new Serializer<Integer>() {
+        public void write(Integer i, DataOutput out) throws IOException {
+            out.writeInt(i);
+        }
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    public static final Serializer<Long> LONG = new Serializer<Long>() {
+        public void write(Long l, DataOutput out) throws IOException {
+            out.writeLong(l);
+        }
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /**
+     * 字节数组，前面加上int类型的长度
+     */
+    public static final Serializer<byte[]> BYTES = new Serializer<byte[]>() {
+        public void write(byte[] b, DataOutput out) throws IOException {
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        public byte[] read(DataInput in) throws IOException {
+            byte[] b = new byte[readLength(in)];
+            in.readFully(b);
+            return b;
+        }
+    };
+
+    /**
+     * 读取长度，批次内的长度不可能超过批次剩余的字节数，提前检查以免按损坏的长度分配数组
+     */
+    static int readLength(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || (in instanceof InputStream && n > ((InputStream)in).available()))
+            throw new StreamCorruptedException("Illegal length: " + n);
+        return n;
+    }
+
+    /**
+     * 魔数，"HMC1"
+     */
+    static final int MAGIC = 0x484D4331;
+
+    static final int LINKED = 1;
+    static final int ACCESS_ORDER = 2;
+
+    static final int KEY_NULL = 1;
+    static final int VALUE_NULL = 2;
+
+    /**
+     * 默认的批次大小
+     */
+    static final int DEFAULT_BATCH_BYTES = 64 * 1024;
+
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final int batchBytes;
+
+    public HashMapCodec(Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this(keySerializer, valueSerializer, DEFAULT_BATCH_BYTES);
+    }
+
+    /**
+     * @param batchBytes 每个批次的目标字节数，单个条目超过此大小时独占一个批次
+     */
+    public HashMapCodec(Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                        int batchBytes) {
+        if (batchBytes <= 0)
+            throw new IllegalArgumentException("Illegal batch size: " + batchBytes);
+        this.keySerializer = Objects.requireNonNull(keySerializer);
+        this.valueSerializer = Objects.requireNonNull(valueSerializer);
+        this.batchBytes = batchBytes;
+    }
+
+    /**
+     * 把map写入输出流，不会关闭输出流
+     * LinkedHashMap按其遍历顺序写出，HashMap按桶的顺序写出
+     */
+    public void write(HashMap<K,V> map, OutputStream out) throws IOException {
+        DataOutputStream o = new DataOutputStream(out);
+        int flags = 0;
+        if (map instanceof LinkedHashMap) {
+            flags = LINKED;
+            if (((LinkedHashMap<K,V>)map).accessOrder)
+                flags |= ACCESS_ORDER;
+        }
+        int mc = map.modCount;
+        o.writeInt(MAGIC);
+        o.writeByte(flags);
+        o.writeFloat(map.loadFactor());
+        o.writeInt(map.capacity());
+        o.writeInt(map.size);
+        BatchOutput batch = new BatchOutput(Math.min(batchBytes, 1 << 20) + 64);
+        DataOutputStream b = new DataOutputStream(batch);
+        int count = 0;
+        if ((flags & LINKED) != 0) {
+            for (LinkedHashMap.Entry<K,V> e = ((LinkedHashMap<K,V>)map).head;
+                 e != null; e = e.after) {
+                writeEntry(e.key, e.value, b);
+                if (++count == Integer.MAX_VALUE || batch.count >= batchBytes)
+                    count = flush(batch, count, o);
+            }
+        }
+        else {
+            HashMap.Node<K,V>[] tab = map.bins();
+            if (tab != null && map.size > 0) {
+                for (HashMap.Node<K,V> e : tab) {
+                    for (; e != null; e = e.next) {
+                        writeEntry(e.key, e.value, b);
+                        if (++count == Integer.MAX_VALUE || batch.count >= batchBytes)
+                            count = flush(batch, count, o);
+                    }
+                }
+            }
+        }
+        if (count > 0)
+            flush(batch, count, o);
+        o.writeInt(0);
+        o.flush();
+        if (map.modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    private void writeEntry(K key, V value, DataOutputStream b) throws IOException {
+        b.writeByte((key == null ? KEY_NULL : 0) | (value == null ? VALUE_NULL : 0));
+        if (key != null)
+            keySerializer.write(key, b);
+        if (value != null)
+            valueSerializer.write(value, b);
+    }
+
+    /**
+     * 写出一个批次并清空缓冲区，返回0作为新的条目数
+     */
+    private static int flush(BatchOutput batch, int count, DataOutputStream o)
+            throws IOException {
+        o.writeInt(count);
+        o.writeInt(batch.count);
+        o.write(batch.buf, 0, batch.count);
+        batch.count = 0;
+        return 0;
+    }
+
+    /**
+     * 从输入流读取一个Map，写出时是LinkedHashMap则返回LinkedHashMap（保留遍历顺序和accessOrder），
+     * 否则返回HashMap；只读取到结束标记为止，不会关闭输入流
+     *
+     * @throws StreamCorruptedException 数据格式不正确，或者条目数与头部记录的元素个数不一致
+     */
+    public HashMap<K,V> read(InputStream in) throws IOException {
+        DataInputStream i = new DataInputStream(in);
+        if (i.readInt() != MAGIC)
+            throw new StreamCorruptedException("Bad magic number");
+        int flags = i.readUnsignedByte();
+        float lf = i.readFloat();
+        int capacity = i.readInt();
+        int size = i.readInt();
+        if ((flags & ~(LINKED | ACCESS_ORDER)) != 0 || !(lf > 0) ||
+                capacity < 0 || size < 0)
+            throw new StreamCorruptedException("Illegal header");
+
+        // 与HashMap.readObject相同，按元素个数计算所需的容量，
+        // 写出时的容量更大（但不超过4倍）时沿用它，保持相同的桶分布
+        float fc = (float)size / Math.min(Math.max(0.25f, lf), 4.0f) + 1.0f;
+        int cap = (fc >= HashMap.MAXIMUM_CAPACITY) ? HashMap.MAXIMUM_CAPACITY :
+                HashMap.tableSizeFor((int)fc);
+        if (capacity > cap && capacity / 4 <= cap)
+            cap = HashMap.tableSizeFor(capacity);
+        HashMap<K,V> map = ((flags & LINKED) == 0) ? new HashMap<>(cap, lf) :
+                new LinkedHashMap<>(cap, lf, (flags & ACCESS_ORDER) != 0);
+
+        BatchInput batch = new BatchInput();
+        DataInputStream b = new DataInputStream(batch);
+        int remaining = size;
+        for (int count; (count = i.readInt()) != 0; ) {
+            int len = i.readInt();
+            if (count < 0 || count > remaining || len < count)
+                throw new StreamCorruptedException("Illegal batch");
+            batch.fill(i, len);
+            try {
+                for (int n = 0; n < count; n++) {
+                    int nulls = b.readUnsignedByte();
+                    K key = ((nulls & KEY_NULL) != 0) ? null : keySerializer.read(b);
+                    V value = ((nulls & VALUE_NULL) != 0) ? null : valueSerializer.read(b);
+                    map.putVal(map.keyHash(key), key, value, false, true);
+                }
+            } catch (EOFException e) {
+                throw new StreamCorruptedException("Batch underflow");
+            }
+            if (batch.pos != batch.limit)
+                throw new StreamCorruptedException("Batch overflow");
+            remaining -= count;
+        }
+        if (remaining != 0 || map.size != size)
+            throw new StreamCorruptedException("Expected " + size + " mappings");
+        return map;
+    }
+
+    /**
+     * 不加锁的可增长字节缓冲区，用于编码一个批次
+     */
+    static final class BatchOutput extends OutputStream {
+        byte[] buf;
+        int count;
+
+        BatchOutput(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensureCapacity(int min) {
+            if (min - buf.length > 0)
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, min));
+        }
+
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte)b;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+    }
+
+    /**
+     * 不加锁的字节缓冲区，每次装入一个完整的批次后再解析
+     */
+    static final class BatchInput extends InputStream {
+        byte[] buf = new byte[0];
+        int pos, limit;
+
+        /**
+         * 读入len个字节，缓冲区随着实际读到的数据逐步增长，
+         * 避免按损坏的长度一次性分配过大的数组
+         */
+        void fill(DataInputStream in, int len) throws IOException {
+            for (int n = 0; n < len; ) {
+                if (n == buf.length)
+                    buf = Arrays.copyOf(buf, (int)Math.min(len,
+                            Math.max(DEFAULT_BATCH_BYTES, (long)n << 1)));
+                int k = Math.min(len, buf.length) - n;
+                in.readFully(buf, n, k);
+                n += k;
+            }
+            pos = 0;
+            limit = len;
+        }
+
+        public int read() {
+            return (pos < limit) ? buf[pos++] & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            int n = Math.min(len, limit - pos);
+            if (n <= 0)
+                return -1;
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        public int available() {
+            return limit - pos;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * HashMap在某一时刻的统计信息快照，通过{@link HashMap#stats()}获取
+ *
+ * <p>桶长度的直方图、树化的桶个数和平均探测长度在生成快照时遍历桶数组计算，总是可用；
+ * 树化/取消树化次数、扩容次数和扩容耗时需要事先调用{@link HashMap#setStatsEnabled(boolean)}开启统计，
+ * 未开启时均为0。未开启统计时HashMap只在扩容和树化这些低频路径上多一次null判断，
+ * get、put等操作没有额外开销。
+ *
+ * <p>渐进式扩容期间，尚未迁移的旧桶也计入直方图，但容量只按新桶数组计算。
+ * HashMap不是线程安全的，在其他线程（如JMX）中生成快照时结果只是近似值。
+ *
+ * @see HashMap
+ * @see HashMapStatsMXBean
+ * @since 1.8
+ */
+public final class HashMapStats implements HashMapStatsMXBean {
+
+    /**
+     * 直方图的长度，包含不少于HISTOGRAM_SIZE - 1个节点的桶都计入最后一项
+     */
+    static final int HISTOGRAM_SIZE = 16;
+
+    /**
+     * HashMap开启统计后累加的计数器，只在扩容、树化等低频路径上更新
+     * 与HashMap一样不做同步
+     */
+    static final class Counters {
+        long treeifies;     // 链表转为红黑树的次数
+        long untreeifies;   // 红黑树转回链表的次数
+        long resizes;       // 扩容次数
+        long resizeNanos;   // 扩容累计耗时，渐进式扩容时包括之后的迁移耗时
+    }
+
+    private final int size;
+    private final int capacity;
+    private final int[] histogram;
+    private final int maxBinLength;
+    private final int treeBins;
+    private final double averageProbeLength;
+    private final long treeifyCount;
+    private final long untreeifyCount;
+    private final long resizeCount;
+    private final long resizeTimeNanos;
+
+    private HashMapStats(int size, int capacity, int[] histogram, int maxBinLength,
+                         int treeBins, double averageProbeLength, Counters c) {
+        this.size = size;
+        this.capacity = capacity;
+        this.histogram = histogram;
+        this.maxBinLength = maxBinLength;
+        this.treeBins = treeBins;
+        this.averageProbeLength = averageProbeLength;
+        if (c != null) {
+            this.treeifyCount = c.treeifies;
+            this.untreeifyCount = c.untreeifies;
+            this.resizeCount = c.resizes;
+            this.resizeTimeNanos = c.resizeNanos;
+        } else {
+            this.treeifyCount = this.untreeifyCount = 0L;
+            this.resizeCount = this.resizeTimeNanos = 0L;
+        }
+    }
+
+    /**
+     * 遍历桶数组生成快照，不修改HashMap
+     */
+    static <K,V> HashMapStats of(HashMap<K,V> m) {
+        int[] histogram = new int[HISTOGRAM_SIZE];
+        int maxLen = 0, treeBins = 0;
+        long probes = 0L, nodes = 0L;
+        HashMap.Node<K,V>[] tab = m.table, oldTab = m.oldTable;
+        for (int t = 0; t < 2; ++t, tab = oldTab) {
+            if (tab == null)
+                continue;
+            for (HashMap.Node<K,V> b : tab) {
+                // 旧桶数组中已迁移的桶为null，不计入直方图
+                if (b == null && t == 1)
+                    continue;
+                int len = 0;
+                boolean tree = b instanceof HashMap.TreeNode;
+                for (HashMap.Node<K,V> e = b; e != null; e = e.next) {
+                    ++len;
+                    // 链表中第len个节点需要比较len次，红黑树中需要比较其深度+1次
+                    probes += tree ? depth((HashMap.TreeNode<K,V>)e) : len;
+                }
+                if (tree)
+                    ++treeBins;
+                nodes += len;
+                if (len > maxLen)
+                    maxLen = len;
+                ++histogram[Math.min(len, HISTOGRAM_SIZE - 1)];
+            }
+        }
+        HashMap.Node<K,V>[] cur = m.table;
+        return new HashMapStats(m.size, (cur == null) ? 0 : cur.length, histogram,
+                                maxLen, treeBins,
+                                (nodes == 0L) ? 0.0 : (double)probes / nodes,
+                                m.statsCounters);
+    }
+
+    /**
+     * 红黑树节点的深度，根节点为1
+     */
+    private static int depth(HashMap.TreeNode<?,?> p) {
+        int d = 1;
+        // 限制层数，防止并发修改时出现环
+        for (HashMap.TreeNode<?,?> q = p.parent; q != null && d < 64; q = q.parent)
+            ++d;
+        return d;
+    }
+
+    public int getSize()                  { return size; }
+    public int getCapacity()              { return capacity; }
+    public int[] getBinLengthHistogram()  { return histogram.clone(); }
+    public int getMaxBinLength()          { return maxBinLength; }
+    public int getTreeBins()              { return treeBins; }
+    public double getAverageProbeLength() { return averageProbeLength; }
+    public long getTreeifyCount()         { return treeifyCount; }
+    public long getUntreeifyCount()       { return untreeifyCount; }
+    public long getResizeCount()          { return resizeCount; }
+    public long getResizeTimeNanos()      { return resizeTimeNanos; }
+
+    public String toString() {
+        return "HashMapStats{size=" + size +
+                ", capacity=" + capacity +
+                ", binLengthHistogram=" + Arrays.toString(histogram) +
+                ", maxBinLength=" + maxBinLength +
+                ", treeBins=" + treeBins +
+                ", averageProbeLength=" + averageProbeLength +
+                ", treeifyCount=" + treeifyCount +
+                ", untreeifyCount=" + untreeifyCount +
+                ", resizeCount=" + resizeCount +
+                ", resizeTimeNanos=" + resizeTimeNanos + '}';
+    }
+
+    /* ------------------------------------------------------------ */
+    // JMX
+
+    /**
+     * 将给定HashMap的统计信息注册到平台MBeanServer，同时开启其统计
+     * ObjectName为java.util:type=HashMapStats,name=&lt;name&gt;
+     *
+     * MBean只持有HashMap的弱引用，HashMap被回收后各属性均返回0，
+     * 但MBean本身需要调用{@link #unregister}注销
+     *
+     * @param name 用于区分不同HashMap的名字
+     * @param map 要监控的HashMap
+     * @return 注册使用的ObjectName
+     * @throws JMException 名字已被使用等注册失败的情况
+     */
+    public static ObjectName register(String name, HashMap<?,?> map)
+            throws JMException {
+        Objects.requireNonNull(map);
+        ObjectName on = new ObjectName("java.util:type=HashMapStats,name=" +
+                                       ObjectName.quote(name));
+        map.setStatsEnabled(true);
+        ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new Monitor(map), on);
+        return on;
+    }
+
+    /**
+     * 注销通过{@link #register}注册的MBean
+     */
+    public static void unregister(ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.unregisterMBean(name);
+    }
+
+    /**
+     * 注册到MBeanServer的对象，每次读取属性时生成新的快照
+     */
+    static final class Monitor implements HashMapStatsMXBean {
+        private static final HashMapStats EMPTY =
+                new HashMapStats(0, 0, new int[HISTOGRAM_SIZE], 0, 0, 0.0, null);
+
+        private final WeakReference<HashMap<?,?>> ref;
+
+        Monitor(HashMap<?,?> map) {
+            this.ref = new WeakReference<HashMap<?,?>>(map);
+        }
+
+        private HashMapStats current() {
+            HashMap<?,?> m = ref.get();
+            return (m == null) ? EMPTY : m.stats();
+        }
+
+        public int getSize()                  { return current().getSize(); }
+        public int getCapacity()              { return current().getCapacity(); }
+        public int[] getBinLengthHistogram()  { return current().getBinLengthHistogram(); }
+        public int getMaxBinLength()          { return current().getMaxBinLength(); }
+        public int getTreeBins()              { return current().getTreeBins(); }
+        public double getAverageProbeLength() { return current().getAverageProbeLength(); }
+        public long getTreeifyCount()         { return current().getTreeifyCount(); }
+        public long getUntreeifyCount()       { return current().getUntreeifyCount(); }
+        public long getResizeCount()          { return current().getResizeCount(); }
+        public long getResizeTimeNanos()      { return current().getResizeTimeNanos(); }
+    }
+}
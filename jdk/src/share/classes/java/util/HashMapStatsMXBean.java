@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+/**
+ * HashMap统计信息的管理接口，通过{@link HashMapStats#register}注册到平台MBeanServer后，
+ * 每次读取属性都会重新生成一份{@link HashMapStats}快照
+ *
+ * @see HashMapStats
+ * @since 1.8
+ */
+public interface HashMapStatsMXBean {
+
+    /**
+     * 元素个数
+     */
+    int getSize();
+
+    /**
+     * 桶数组的容量
+     */
+    int getCapacity();
+
+    /**
+     * 桶长度的直方图，第i项为包含i个节点的桶的个数，最后一项包含所有更长的桶
+     */
+    int[] getBinLengthHistogram();
+
+    /**
+     * 最长的桶中的节点个数
+     */
+    int getMaxBinLength();
+
+    /**
+     * 已树化的桶的个数
+     */
+    int getTreeBins();
+
+    /**
+     * 查找一个已存在的key平均需要比较的节点个数
+     */
+    double getAverageProbeLength();
+
+    /**
+     * 链表转为红黑树的次数
+     */
+    long getTreeifyCount();
+
+    /**
+     * 红黑树转回链表的次数
+     */
+    long getUntreeifyCount();
+
+    /**
+     * 扩容次数，不包括第一次分配桶数组
+     */
+    long getResizeCount();
+
+    /**
+     * 扩容累计耗时，单位为纳秒
+     */
+    long getResizeTimeNanos();
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 带统计和淘汰通知的LRU缓存，基于访问顺序的LinkedHashMap实现
+ *
+ * <p>在LinkedHashMap的LRU缓存用法（accessOrder = true并重写removeEldestEntry）上增加：
+ * <pre>
+ *   1. 命中/未命中：get、getOrDefault和computeIfAbsent找到非null值时计为命中，否则计为未命中
+ *   2. 加载：computeIfAbsent调用mappingFunction的次数、是否成功（返回非null）以及耗时
+ *   3. 淘汰：afterNodeInsertion中因removeEldestEntry返回true而删除的元素个数
+ * </pre>
+ * 计数器是{@link java.util.concurrent.atomic.LongAdder}，通过{@link #cacheStats()}生成
+ * {@link CacheStats}快照，监控线程读取统计时不需要获取缓存的锁。
+ * containsKey、遍历等操作不计入统计，remove等显式删除也不算淘汰。
+ *
+ * <p>被淘汰的元素交给evictionListener处理，但监听器不在淘汰发生的线程中执行：
+ * 淘汰时只把键值对放入无锁队列，由executor中的单个任务按淘汰的顺序依次回调，
+ * 同一时刻最多只有一个这样的任务，所以get、put等操作不会因为回调变慢，回调也不需要考虑并发。
+ * 回调抛出的异常交给执行线程的UncaughtExceptionHandler，不影响后续通知。
+ *
+ * <p>默认的removeEldestEntry在元素个数超过maximumSize时返回true，可以重写。
+ * 与LinkedHashMap(accessOrder = true)一样，get等访问操作会修改链表，遍历期间不能访问此Map。
+ * 不是线程安全的，并发使用时需要外部同步。统计和监听器不会被序列化，
+ * 反序列化和clone得到的Map计数器重新开始，clone保留监听器。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see LinkedHashMap
+ * @see CacheStats
+ * @since 1.8
+ */
+public class InstrumentedLinkedHashMap<K,V> extends LinkedHashMap<K,V> {
+
+    private static final long serialVersionUID = 3914272360785516297L;
+
+    /**
+     * 最大元素个数，默认的removeEldestEntry使用
+     */
+    final int maximumSize;
+
+    /**
+     * 统计计数器，反序列化和clone时重新创建
+     */
+    transient CacheStats.Counters counters;
+
+    /**
+     * 淘汰通知，没有设置监听器时为null
+     */
+    transient EvictionNotifier<K,V> notifier;
+
+    /**
+     * 按给定的最大元素个数实例化，不通知淘汰
+     */
+    public InstrumentedLinkedHashMap(int maximumSize) {
+        this(maximumSize, null, null);
+    }
+
+    /**
+     * 按给定的最大元素个数实例化，淘汰的元素在{@link ForkJoinPool#commonPool()}中通知给listener
+     */
+    public InstrumentedLinkedHashMap(int maximumSize,
+                                     BiConsumer<? super K, ? super V> evictionListener) {
+        this(maximumSize, Objects.requireNonNull(evictionListener), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 按给定的最大元素个数实例化，淘汰的元素在executor中通知给listener
+     * listener为null时不通知，此时executor被忽略
+     */
+    public InstrumentedLinkedHashMap(int maximumSize,
+                                     BiConsumer<? super K, ? super V> evictionListener,
+                                     Executor executor) {
+        super(Math.max((int)(Math.min(maximumSize, 1 << 20) / 0.75f) + 1, 16), 0.75f, true);
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+        this.maximumSize = maximumSize;
+        this.counters = new CacheStats.Counters();
+        if (evictionListener != null)
+            this.notifier = new EvictionNotifier<>(evictionListener,
+                                                   Objects.requireNonNull(executor));
+    }
+
+    /**
+     * 最大元素个数
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 生成当前的统计信息快照，可以在其他线程中不加锁调用
+     */
+    public CacheStats cacheStats() {
+        return counters.snapshot();
+    }
+
+    /**
+     * 元素个数超过最大元素个数时淘汰最久未访问的元素
+     */
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+        return size() > maximumSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    // instrumented operations
+
+    public V get(Object key) {
+        Node<K,V> e;
+        if ((e = getNode(keyHash(key), key)) == null) {
+            counters.misses.increment();
+            return null;
+        }
+        counters.hits.increment();
+        recordAccess(e);
+        return e.value;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        Node<K,V> e;
+        if ((e = getNode(keyHash(key), key)) == null) {
+            counters.misses.increment();
+            return defaultValue;
+        }
+        counters.hits.increment();
+        recordAccess(e);
+        return e.value;
+    }
+
+    /**
+     * 值存在时计为命中，否则计为未命中，并记录mappingFunction的耗时和结果
+     */
+    @Override
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        CacheStats.Counters c = counters;
+        Node<K,V> e; V v;
+        if ((e = getNode(keyHash(key), key)) != null && (v = e.value) != null) {
+            c.hits.increment();
+            recordAccess(e);
+            return v;
+        }
+        c.misses.increment();
+        return super.computeIfAbsent(key, k -> {
+            long start = System.nanoTime();
+            V value;
+            try {
+                value = mappingFunction.apply(k);
+            } catch (Throwable ex) {
+                c.recordLoad(false, System.nanoTime() - start);
+                throw ex;
+            }
+            c.recordLoad(value != null, System.nanoTime() - start);
+            return value;
+        });
+    }
+
+    /**
+     * 与LinkedHashMap相同，removeEldestEntry返回true时删除链表头部的元素，
+     * 此外累加淘汰次数并通知监听器
+     */
+    @Override
+    void afterNodeInsertion(boolean evict) {
+        Entry<K,V> first;
+        if (evict && accessCount != 0)
+            drainAccesses();
+        if (evict && (first = head) != null && removeEldestEntry(first)) {
+            K key = first.key;
+            V value = first.value;
+            removeNode(keyHash(key), key, null, false, true);
+            counters.evictions.increment();
+            EvictionNotifier<K,V> n;
+            if ((n = notifier) != null)
+                n.enqueue(key, value);
+        }
+    }
+
+    @Override
+    void reinitialize() {
+        super.reinitialize();
+        counters = new CacheStats.Counters();
+    }
+
+    /* ------------------------------------------------------------ */
+    // eviction notification
+
+    /**
+     * 淘汰通知的队列，同一时刻最多只有一个排空任务在executor中运行
+     */
+    static final class EvictionNotifier<K,V> implements Runnable {
+        final BiConsumer<? super K, ? super V> listener;
+        final Executor executor;
+        final ConcurrentLinkedQueue<Map.Entry<K,V>> queue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 是否已经提交了排空任务
+         */
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        EvictionNotifier(BiConsumer<? super K, ? super V> listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        /**
+         * 在淘汰的线程中调用，只入队，必要时提交排空任务
+         */
+        void enqueue(K key, V value) {
+            queue.offer(new AbstractMap.SimpleImmutableEntry<>(key, value));
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    // 留在队列中，下一次淘汰时再提交
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * 依次回调队列中的通知，退出前再检查一次，避免与enqueue竞争时漏掉通知
+         */
+        public void run() {
+            for (;;) {
+                Map.Entry<K,V> e;
+                while ((e = queue.poll()) != null) {
+                    try {
+                        listener.accept(e.getKey(), e.getValue());
+                    } catch (Throwable ex) {
+                        Thread t = Thread.currentThread();
+                        t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+                    }
+                }
+                scheduled.set(false);
+                if (queue.isEmpty() || !scheduled.compareAndSet(false, true))
+                    return;
+            }
+        }
+    }
+}
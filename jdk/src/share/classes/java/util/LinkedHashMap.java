@@ -191,6 +191,14 @@ public class LinkedHashMap<K,V>
      */
     static class Entry<K,V> extends Node<K,V> {
         Entry<K,V> before, after;
+
+        /**
+         * 节点所在的段，供把双向链表划分为多个段的子类（如TinyLfuLinkedHashMap）使用，
+         * LinkedHashMap本身不使用，始终为0
+         * 开启压缩指针时Entry对象有4字节的对齐填充，这个字段正好放在填充中，不增加占用
+         */
+        byte segment;
+
         Entry(int hash, K key, V value, Node<K,V> next) {
             super(hash, key, value, next);
         }
@@ -216,6 +224,22 @@ public class LinkedHashMap<K,V>
      */
     final boolean accessOrder;
 
+    /**
+     * 访问缓冲区，为null时表示未开启，见setAccessBufferSize
+     * 开启后访问顺序模式下的get、getOrDefault只把被访问的节点记录在这里，由drainAccesses统一调整顺序
+     */
+    transient Entry<K,V>[] accessBuffer;
+
+    /**
+     * 访问缓冲区中已记录的节点个数，不超过缓冲区的大小
+     */
+    transient int accessCount;
+
+    /**
+     * 访问缓冲区是一个环，下一次访问记录的位置
+     */
+    transient int accessIndex;
+
     // internal utilities
 
     /**
@@ -251,13 +275,33 @@ public class LinkedHashMap<K,V>
             tail = dst;
         else
             a.before = dst;
+        dst.segment = src.segment;
+        // 树化或链化时节点被替换，访问缓冲区中记录的也要换成新节点
+        if (accessCount != 0) {
+            Entry<K,V>[] buf = accessBuffer;
+            for (int i = 0; i < buf.length; i++)
+                if (buf[i] == src)
+                    buf[i] = dst;
+        }
+        afterNodeReplacement(src, dst);
     }
 
+    /**
+     * 树化或取消树化时，链表中的节点src被替换为dst之后调用
+     * 子类若保存了指向链表中节点的指针，需要在这里更新
+     */
+    void afterNodeReplacement(Entry<K,V> src, Entry<K,V> dst) { }
+
     // overrides of HashMap hook methods
 
     void reinitialize() {
         super.reinitialize();
         head = tail = null;
+        // 克隆和反序列化得到的Map不共享访问缓冲区
+        Entry<K,V>[] buf = accessBuffer;
+        if (buf != null)
+            accessBuffer = newAccessBuffer(buf.length);
+        accessCount = accessIndex = 0;
     }
 
     /**
@@ -329,6 +373,10 @@ public class LinkedHashMap<K,V>
     void afterNodeInsertion(boolean evict) { // possibly remove eldest
         Entry<K,V> first;
 
+        // 先应用缓冲的访问，保证链表头部确实是最久未访问的元素
+        if (evict && accessCount != 0)
+            drainAccesses();
+
         // 若传入参数为true且Map不为空，则根据removeEldestEntry(first)方法的返回值决定是否移除链表的第一个元素
         // 当遍历顺序为插入顺序时，链表头节点为最先插入的元素
         // 当遍历顺序为访问顺序时，链表头节点为最远访问的元素（最近访问的元素会调整到链表尾部）
@@ -336,7 +384,7 @@ public class LinkedHashMap<K,V>
         // 可以通过重写此方法使其变得有意义，例如使用LinkedHashMap实现LRU缓存时，需要重写此方法，当元素数量大于缓存最大容量时，删除最近最少使用的节点
         if (evict && (first = head) != null && removeEldestEntry(first)) {
             K key = first.key;
-            removeNode(hash(key), key, null, false, true);
+            removeNode(keyHash(key), key, null, false, true);
         }
     }
 
@@ -463,11 +511,12 @@ public class LinkedHashMap<K,V>
      */
     public V get(Object key) {
         Node<K,V> e;
-        if ((e = getNode(hash(key), key)) == null)
+        if ((e = getNode(keyHash(key), key)) == null)
             return null;
         // 若遍历顺序为按访问顺序，则将被访问的这个元素放到链表的尾部
+        // 开启了访问缓冲区时只记录，稍后统一移动
         if (accessOrder)
-            afterNodeAccess(e);
+            recordAccess(e);
         return e.value;
     }
 
@@ -476,21 +525,125 @@ public class LinkedHashMap<K,V>
      */
     public V getOrDefault(Object key, V defaultValue) {
        Node<K,V> e;
-       if ((e = getNode(hash(key), key)) == null)
+       if ((e = getNode(keyHash(key), key)) == null)
            return defaultValue;
 
         // 若遍历顺序为按访问顺序，则将被访问的这个元素放到链表的尾部
        if (accessOrder)
-           afterNodeAccess(e);
+           recordAccess(e);
        return e.value;
    }
 
+    /**
+     * 查找key对应的值，但不算访问：访问顺序模式下也不移动元素，不修改modCount，
+     * 所以可以在遍历期间调用
+     */
+    public V peek(Object key) {
+        Node<K,V> e;
+        return (e = getNode(keyHash(key), key)) == null ? null : e.value;
+    }
+
+    /* ------------------------------------------------------------ */
+    // Access buffering
+
+    /**
+     * 设置访问缓冲区的大小，为0时关闭，只能用于访问顺序模式
+     *
+     * <p>开启后get和getOrDefault不再立即把元素移动到链表尾部，而是把节点记录在缓冲区中，
+     * 由{@link #drainAccesses()}按访问的先后顺序统一移动，所以get不修改链表，也不修改modCount，
+     * 遍历期间调用get不会导致ConcurrentModificationException。
+     * 只有插入新元素后判断removeEldestEntry之前，以及显式调用drainAccesses时才会排空。
+     * 缓冲区是一个环，满了之后新的访问覆盖最早的记录，只保留最近的size次访问，
+     * 被覆盖的访问不再调整顺序，所以按访问顺序淘汰是近似的，size越大越接近严格的LRU。
+     * 缓冲的访问在排空时才生效，相当于发生在排空的时刻，所以未排空的访问不反映在遍历顺序中，
+     * 新插入的元素也会排在这些元素之前；put、compute等写操作仍然立即调整顺序。
+     * 缓冲区大小不会被序列化。
+     *
+     * @param size 缓冲区能记录的访问次数，为0时先排空再关闭
+     * @throws IllegalStateException 此Map不是访问顺序的
+     * @throws IllegalArgumentException size为负数
+     */
+    public void setAccessBufferSize(int size) {
+        if (!accessOrder)
+            throw new IllegalStateException("Not access-ordered");
+        if (size < 0)
+            throw new IllegalArgumentException("Illegal buffer size: " + size);
+        drainAccesses();
+        accessBuffer = (size == 0) ? null : newAccessBuffer(size);
+    }
+
+    /**
+     * 访问缓冲区的大小，未开启时为0
+     */
+    public int accessBufferSize() {
+        Entry<K,V>[] buf = accessBuffer;
+        return (buf == null) ? 0 : buf.length;
+    }
+
+    /**
+     * 按记录的先后顺序应用缓冲区中的访问，与逐个调用afterNodeAccess的结果相同
+     * 记录之后已被删除的节点不在链表中，直接跳过
+     * 会修改链表和modCount，遍历期间调用会导致ConcurrentModificationException
+     */
+    public void drainAccesses() {
+        int n = accessCount;
+        if (n == 0)
+            return;
+        Entry<K,V>[] buf = accessBuffer;
+        int len = buf.length, i = accessIndex - n;
+        if (i < 0)
+            i += len;
+        accessCount = accessIndex = 0;
+        for (; n > 0; --n) {
+            Entry<K,V> p = buf[i];
+            buf[i] = null;
+            if (++i == len)
+                i = 0;
+            if (p.before != null || p.after != null || p == head)
+                afterNodeAccess(p);
+        }
+    }
+
+    /**
+     * getAll等只读查找命中时的回调，与get相同，只在访问顺序模式下记录访问
+     */
+    void afterNodeRead(Node<K,V> e) {
+        if (accessOrder)
+            recordAccess(e);
+    }
+
+    /**
+     * 访问顺序模式下记录一次访问，未开启缓冲区时直接调整顺序
+     * 缓冲区满时覆盖最早的记录，不会排空，所以读操作不会修改链表
+     */
+    final void recordAccess(Node<K,V> e) {
+        Entry<K,V>[] buf = accessBuffer;
+        if (buf == null)
+            afterNodeAccess(e);
+        else {
+            int i = accessIndex;
+            buf[i] = (Entry<K,V>)e;
+            accessIndex = (++i == buf.length) ? 0 : i;
+            if (accessCount < buf.length)
+                ++accessCount;
+        }
+    }
+
+    @SuppressWarnings({"rawtypes","unchecked"})
+    private static <K,V> Entry<K,V>[] newAccessBuffer(int size) {
+        return (Entry<K,V>[])new Entry[size];
+    }
+
     /**
      * 由父类HashMap清空桶数组，自己将链表的头尾指针清空
      */
     public void clear() {
         super.clear();
         head = tail = null;
+        if (accessCount != 0) {
+            Arrays.fill(accessBuffer, null);
+            accessCount = accessIndex = 0;
+        }
     }
 
     /**
@@ -573,7 +726,7 @@ public class LinkedHashMap<K,V>
         }
         public final boolean contains(Object o) { return containsKey(o); }
         public final boolean remove(Object key) {
-            return removeNode(hash(key), key, null, false, true) != null;
+            return removeNode(keyHash(key), key, null, false, true) != null;
         }
         public final Spliterator<K> spliterator()  {
             return Spliterators.spliterator(this, Spliterator.SIZED |
@@ -675,7 +828,7 @@ public class LinkedHashMap<K,V>
                 return false;
             Map.Entry<?,?> e = (Map.Entry<?,?>) o;
             Object key = e.getKey();
-            Node<K,V> candidate = getNode(hash(key), key);
+            Node<K,V> candidate = getNode(keyHash(key), key);
             return candidate != null && candidate.equals(e);
         }
         public final boolean remove(Object o) {
@@ -683,7 +836,7 @@ public class LinkedHashMap<K,V>
                 Map.Entry<?,?> e = (Map.Entry<?,?>) o;
                 Object key = e.getKey();
                 Object value = e.getValue();
-                return removeNode(hash(key), key, value, true, true) != null;
+                return removeNode(keyHash(key), key, value, true, true) != null;
             }
             return false;
         }
@@ -770,7 +923,7 @@ public class LinkedHashMap<K,V>
                 throw new ConcurrentModificationException();
             current = null;
             K key = p.key;
-            removeNode(hash(key), key, null, false, false);
+            removeNode(keyHash(key), key, null, false, false);
             expectedModCount = modCount;
         }
     }
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 线程安全的加载缓存，同一个key的并发加载合并为一次，基于访问顺序的LinkedHashMap实现
+ *
+ * <p>用Collections.synchronizedMap包装的LinkedHashMap调用computeIfAbsent时，加载在锁内执行，
+ * 一个热点key过期后所有线程都要排队等待，而不加锁时每个线程又会各自加载一遍。这里的做法是：
+ * <pre>
+ *   1. 锁内只做LinkedHashMap的查找和修改，命中时直接返回
+ *   2. 未命中时，第一个线程为key创建一个进行中的加载（CompletableFuture）并记在pending中，
+ *      释放锁后在自己的线程中调用加载函数
+ *   3. 同一个key的其他线程在pending中找到这个加载，释放锁后等待它完成，不会重复加载
+ *   4. 加载完成后重新获取锁，把结果通过put插入LinkedHashMap，由afterNodeInsertion按
+ *      removeEldestEntry淘汰最久未访问的元素，之后再通知等待的线程
+ * </pre>
+ * 设置了refreshAfterWrite时，命中的值写入时间超过此时长后，在executor中异步重新加载，
+ * 重新加载期间仍然返回旧值；expireAfterWrite到期之后的请求则会等待这次重新加载，而不是再发起一次。
+ * 重新加载失败时保留旧值，直到它过期。
+ *
+ * <p>加载函数返回null时不缓存，调用者得到null；抛出的异常传给所有等待这次加载的线程。
+ * 在加载函数中再次加载同一个key会抛出IllegalStateException，而不是死锁。
+ * 加载期间调用put或invalidate，加载的结果会被丢弃，不会覆盖更新的值。
+ * 统计信息与{@link InstrumentedLinkedHashMap}相同，通过{@link #cacheStats()}获取。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see LinkedHashMap
+ * @see CacheStats
+ * @since 1.8
+ */
+public class LoadingCache<K,V> {
+
+    /**
+     * 表示不过期或不刷新的时长
+     */
+    public static final long NEVER = -1L;
+
+    /**
+     * 缓存的值和写入时间
+     */
+    static final class Loaded<V> {
+        final V value;
+        final long writeTime;
+
+        Loaded(V value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * 进行中的一次加载，owner为执行加载的线程，用于发现递归加载
+     */
+    static final class Load<V> extends CompletableFuture<V> {
+        volatile Thread owner;
+        final boolean refresh;
+
+        Load(Thread owner, boolean refresh) {
+            this.owner = owner;
+            this.refresh = refresh;
+        }
+    }
+
+    /**
+     * 最大元素个数
+     */
+    final int maximumSize;
+
+    /**
+     * 写入后过期和刷新的纳秒数，小于0表示不过期或不刷新
+     */
+    final long expireAfterWrite;
+    final long refreshAfterWrite;
+
+    /**
+     * 默认的加载函数
+     */
+    final Function<? super K, ? extends V> loader;
+
+    /**
+     * 执行异步刷新
+     */
+    final Executor executor;
+
+    /**
+     * 纳秒时间源
+     */
+    final LongSupplier ticker;
+
+    /**
+     * 保护store和pending
+     */
+    final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 已加载的值，访问顺序，超过最大元素个数时淘汰最久未访问的元素
+     */
+    final LinkedHashMap<K,Loaded<V>> store;
+
+    /**
+     * 进行中的加载
+     */
+    final HashMap<K,Load<V>> pending = new HashMap<>();
+
+    final CacheStats.Counters counters = new CacheStats.Counters();
+
+    /**
+     * 按给定的最大元素个数、存活时长和加载函数实例化，异步刷新在{@link ForkJoinPool#commonPool()}中执行
+     */
+    public LoadingCache(int maximumSize, long expireAfterWrite, long refreshAfterWrite,
+                        TimeUnit unit, Function<? super K, ? extends V> loader) {
+        this(maximumSize, expireAfterWrite, refreshAfterWrite, unit, loader,
+             ForkJoinPool.commonPool(), System::nanoTime);
+    }
+
+    /**
+     * 同上，使用给定的executor和纳秒时间源
+     */
+    public LoadingCache(int maximumSize, long expireAfterWrite, long refreshAfterWrite,
+                        TimeUnit unit, Function<? super K, ? extends V> loader,
+                        Executor executor, LongSupplier ticker) {
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+        if (expireAfterWrite < 0 && expireAfterWrite != NEVER)
+            throw new IllegalArgumentException("Illegal expireAfterWrite: " + expireAfterWrite);
+        if (refreshAfterWrite < 0 && refreshAfterWrite != NEVER)
+            throw new IllegalArgumentException("Illegal refreshAfterWrite: " + refreshAfterWrite);
+        this.maximumSize = maximumSize;
+        this.expireAfterWrite = toNanos(expireAfterWrite, unit);
+        this.refreshAfterWrite = toNanos(refreshAfterWrite, unit);
+        this.loader = Objects.requireNonNull(loader);
+        this.executor = Objects.requireNonNull(executor);
+        this.ticker = Objects.requireNonNull(ticker);
+        this.store = new LinkedHashMap<K,Loaded<V>>(
+                Math.max((int)(Math.min(maximumSize, 1 << 20) / 0.75f) + 1, 16), 0.75f, true) {
+            private static final long serialVersionUID = -3188416466853219712L;
+
+            protected boolean removeEldestEntry(Map.Entry<K,Loaded<V>> eldest) {
+                if (size() > LoadingCache.this.maximumSize) {
+                    counters.evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static long toNanos(long duration, TimeUnit unit) {
+        return (duration < 0) ? NEVER : unit.toNanos(duration);
+    }
+
+    final boolean isExpired(Loaded<V> e, long now) {
+        return expireAfterWrite >= 0 && now - e.writeTime >= expireAfterWrite;
+    }
+
+    final boolean needsRefresh(Loaded<V> e, long now) {
+        return refreshAfterWrite >= 0 && now - e.writeTime >= refreshAfterWrite;
+    }
+
+    /* ------------------------------------------------------------ */
+    // Cache operations
+
+    /**
+     * 返回key对应的值，不存在或已过期时用默认的加载函数加载
+     */
+    public V get(K key) {
+        return get(key, loader);
+    }
+
+    /**
+     * 返回key对应的值，不存在或已过期时用给定的函数加载，同一个key的并发加载只执行一次
+     * 需要刷新时也用此函数重新加载
+     */
+    public V get(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        V value = null;
+        Load<V> load = null, refresh = null;
+        boolean owner = false;
+        lock.lock();
+        try {
+            long now = ticker.getAsLong();
+            Loaded<V> e = store.get(key);
+            if (e != null && !isExpired(e, now)) {
+                counters.hits.increment();
+                value = e.value;
+                if (needsRefresh(e, now) && !pending.containsKey(key))
+                    pending.put(key, refresh = new Load<>(null, true));
+            } else {
+                if (e != null)
+                    store.remove(key);
+                counters.misses.increment();
+                if ((load = pending.get(key)) == null) {
+                    pending.put(key, load = new Load<>(Thread.currentThread(), false));
+                    owner = true;
+                } else if (load.owner == Thread.currentThread())
+                    throw new IllegalStateException("Recursive load of key " + key);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (refresh != null)
+            refreshAsync(key, refresh, mappingFunction);
+        if (load == null)
+            return value;
+        if (owner)
+            load(key, load, mappingFunction);
+        return await(load);
+    }
+
+    /**
+     * 返回key对应的未过期的值，不存在时返回null，不加载
+     */
+    public V getIfPresent(Object key) {
+        lock.lock();
+        try {
+            Loaded<V> e = store.get(key);
+            if (e != null && !isExpired(e, ticker.getAsLong())) {
+                counters.hits.increment();
+                return e.value;
+            }
+            counters.misses.increment();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 直接放入值，进行中的加载结果会被丢弃
+     */
+    public void put(K key, V value) {
+        Objects.requireNonNull(value);
+        lock.lock();
+        try {
+            pending.remove(key);
+            store.put(key, new Loaded<>(value, ticker.getAsLong()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除key对应的值，进行中的加载结果会被丢弃，但等待它的线程仍会得到结果
+     */
+    public void invalidate(Object key) {
+        lock.lock();
+        try {
+            pending.remove(key);
+            store.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除所有的值
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            pending.clear();
+            store.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 用默认的加载函数异步重新加载key，已有进行中的加载时什么都不做
+     * 重新加载期间get仍返回旧值
+     */
+    public void refresh(K key) {
+        Load<V> refresh = null;
+        lock.lock();
+        try {
+            if (!pending.containsKey(key))
+                pending.put(key, refresh = new Load<>(null, true));
+        } finally {
+            lock.unlock();
+        }
+        if (refresh != null)
+            refreshAsync(key, refresh, loader);
+    }
+
+    /**
+     * 缓存的元素个数，可能包含已过期但还没有被访问到的元素
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return store.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 最大元素个数
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 生成当前的统计信息快照，不需要获取缓存的锁
+     */
+    public CacheStats cacheStats() {
+        return counters.snapshot();
+    }
+
+    /* ------------------------------------------------------------ */
+    // loading
+
+    /**
+     * 在锁外执行加载，完成后在锁内插入结果，再通知等待的线程
+     * 如果这次加载已经被put或invalidate取代，则只通知，不插入
+     */
+    final void load(K key, Load<V> load, Function<? super K, ? extends V> mappingFunction) {
+        V value = null;
+        Throwable failure = null;
+        long start = ticker.getAsLong();
+        try {
+            value = mappingFunction.apply(key);
+        } catch (Throwable ex) {
+            failure = ex;
+        }
+        long end = ticker.getAsLong();
+        counters.recordLoad(failure == null && value != null, end - start);
+        lock.lock();
+        try {
+            if (pending.get(key) == load) {
+                pending.remove(key);
+                if (failure == null) {
+                    if (value != null)
+                        store.put(key, new Loaded<>(value, end));
+                    else if (load.refresh)
+                        store.remove(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (failure != null)
+            load.completeExceptionally(failure);
+        else
+            load.complete(value);
+    }
+
+    /**
+     * 在executor中执行刷新，executor拒绝时放弃这次刷新
+     */
+    final void refreshAsync(K key, Load<V> refresh,
+                            Function<? super K, ? extends V> mappingFunction) {
+        try {
+            executor.execute(() -> {
+                refresh.owner = Thread.currentThread();
+                load(key, refresh, mappingFunction);
+            });
+        } catch (RejectedExecutionException ex) {
+            lock.lock();
+            try {
+                if (pending.get(key) == refresh)
+                    pending.remove(key);
+            } finally {
+                lock.unlock();
+            }
+            refresh.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * 等待加载完成，加载函数抛出的非受检异常原样抛出
+     */
+    static <V> V await(Load<V> load) {
+        try {
+            return load.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.util.function.LongObjBiConsumer;
+
+/**
+ * 以long为key的哈希表，用于替代HashMap&lt;Long, V&gt;
+ *
+ * <p>与HashMap的区别：
+ * 1. key保存在long[]中，value保存在与其下标对应的Object[]中，不创建Node节点，
+ *    get/put/remove不会装箱key，除扩容外不分配任何对象
+ * 2. 使用开放寻址法（线性探测）解决哈希冲突，删除时将后续的元素向前移动填补空位，
+ *    不使用墓碑标记，所以不会因为频繁删除导致探测链变长
+ * 3. 桶数组容量同样为2的幂，通过HashMap.tableSizeFor计算，
+ *    hash值同样将高位异或到低位，以便(n - 1) & hash能用上高位信息
+ *
+ * <p>value不能为null，values[i] == null表示此位置为空，所以key可以是任意long值（包括0）
+ *
+ * <p>与HashMap一样，此类不是线程安全的，forEach在遍历期间若发现Map被修改，
+ * 会抛出ConcurrentModificationException
+ *
+ * @param <V> value的类型
+ *
+ * @see HashMap
+ * @since 1.8
+ */
+public class LongObjectHashMap<V> {
+
+    /**
+     * 默认初始容量，此处为16，必须为2的幂
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，与HashMap相同
+     */
+    static final int MAXIMUM_CAPACITY = HashMap.MAXIMUM_CAPACITY;
+
+    /**
+     * 默认加载因子
+     * 线性探测在装载率较高时探测长度增长很快，所以比HashMap的0.75低一些
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    /**
+     * 保存key的数组，长度总是2的幂
+     */
+    transient long[] keys;
+
+    /**
+     * 保存value的数组，与keys下标一一对应，为null表示此位置为空
+     */
+    transient Object[] values;
+
+    /**
+     * 存放元素的个数
+     */
+    transient int size;
+
+    /**
+     * 修改次数，用作快速失败检查(fail-fast)
+     */
+    transient int modCount;
+
+    /**
+     * 扩容阈值，当元素个数大于此值时会触发扩容操作
+     * 与HashMap相同，桶数组未初始化时保存的是初始容量
+     */
+    int threshold;
+
+    /**
+     * 加载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 按给定的初始容量和加载因子实例化
+     * 为了保证探测总能遇到空位，加载因子必须小于1
+     */
+    public LongObjectHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+
+        // 按加载因子换算出能容纳initialCapacity个元素所需的桶数组大小
+        float ft = (float)initialCapacity / loadFactor + 1.0F;
+        this.threshold = HashMap.tableSizeFor((ft < (float)MAXIMUM_CAPACITY) ?
+                (int)ft : MAXIMUM_CAPACITY);
+    }
+
+    /**
+     * 指定初始容量，按默认加载因子（0.5）实例化
+     */
+    public LongObjectHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 按默认初始容量（16）和默认加载因子（0.5）实例化
+     */
+    public LongObjectHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+    }
+
+    /**
+     * 扰动函数，先将long的高32位异或到低32位，再与HashMap.hash一样将高16位异或到低16位
+     */
+    static int hash(long key) {
+        int h = (int)(key ^ (key >>> 32));
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 查询存放的元素个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查询是否为空
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 查找key所在的下标，找不到则返回-1
+     */
+    final int indexOf(long key) {
+        long[] ks; Object[] vs;
+        if ((vs = values) != null) {
+            ks = keys;
+            int mask = vs.length - 1;
+
+            // 从hash对应的位置开始向后探测，遇到空位说明key不存在
+            for (int i = hash(key) & mask; vs[i] != null; i = (i + 1) & mask) {
+                if (ks[i] == key)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 根据key值查找元素，找不到则返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i;
+        return (i = indexOf(key)) < 0 ? null : (V)values[i];
+    }
+
+    /**
+     * 根据key值查找元素，找不到则返回defaultValue
+     */
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(long key, V defaultValue) {
+        int i;
+        return (i = indexOf(key)) < 0 ? defaultValue : (V)values[i];
+    }
+
+    /**
+     * 判断是否包含key
+     */
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * 添加键值对，若key已存在则替换其值并返回旧值，否则返回null
+     * value不能为null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        long[] ks; Object[] vs; Object old;
+
+        // 当第一次插入元素时，需要为桶数组开辟内存
+        if ((vs = values) == null)
+            vs = resize();
+        ks = keys;
+        int mask = vs.length - 1;
+        int i = hash(key) & mask;
+
+        // 向后探测，直到找到相同的key或遇到空位
+        for (; (old = vs[i]) != null; i = (i + 1) & mask) {
+            if (ks[i] == key) {
+                vs[i] = value;
+                return (V)old;
+            }
+        }
+
+        // 在空位处插入
+        ks[i] = key;
+        vs[i] = value;
+        ++modCount;
+
+        // 如果元素数量大于扩容阈值，则进行扩容操作
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * 删除key对应的键值对，返回其值，不存在则返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i;
+        if ((i = indexOf(key)) < 0)
+            return null;
+        V old = (V)values[i];
+        removeAt(i);
+        return old;
+    }
+
+    /**
+     * 删除下标i处的元素
+     *
+     * 线性探测不能直接将此位置置空，否则会截断经过此位置的探测链，
+     * 所以需要继续向后扫描，把那些理想位置不在(i, j]区间内的元素移动到空位i上，
+     * 然后将j作为新的空位继续处理，直到遇到空位为止
+     */
+    final void removeAt(int i) {
+        long[] ks = keys; Object[] vs = values;
+        int mask = vs.length - 1;
+        for (int j = i;;) {
+            j = (j + 1) & mask;
+            if (vs[j] == null)
+                break;
+
+            // 元素j的理想位置
+            int k = hash(ks[j]) & mask;
+
+            // 若k不在(i, j]区间内（需要考虑环绕），说明元素j可以移动到i
+            if ((i <= j) ? (i >= k || k > j) : (i >= k && k > j)) {
+                ks[i] = ks[j];
+                vs[i] = vs[j];
+                i = j;
+            }
+        }
+        vs[i] = null;
+        ++modCount;
+        --size;
+    }
+
+    /**
+     * 清空Map，保留桶数组
+     */
+    public void clear() {
+        Object[] vs;
+        modCount++;
+        if ((vs = values) != null && size > 0) {
+            size = 0;
+            Arrays.fill(vs, null);
+        }
+    }
+
+    /**
+     * 遍历所有元素，若遍历期间被修改，则抛出异常
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjBiConsumer<? super V> action) {
+        long[] ks; Object[] vs; Object v;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0 && (vs = values) != null) {
+            ks = keys;
+            int mc = modCount;
+            for (int i = 0; i < vs.length; ++i) {
+                if ((v = vs[i]) != null)
+                    action.accept(ks[i], (V)v);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 初始化桶数组或将其容量扩大为原来的2倍
+     */
+    final Object[] resize() {
+        long[] oldKeys = keys;
+        Object[] oldVals = values;
+        int oldCap = (oldVals == null) ? 0 : oldVals.length;
+        int newCap;
+        if (oldCap > 0) {
+            // 已达最大容量则不再扩容，但至少要保留一个空位，否则查找不存在的key时探测不会终止
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                if (size >= oldCap - 1)
+                    throw new IllegalStateException("LongObjectHashMap is full");
+                threshold = oldCap - 2;
+                return oldVals;
+            }
+            newCap = oldCap << 1;
+        }
+        else if (threshold > 0)
+            // 桶未初始化，并且指定了初始容量
+            newCap = threshold;
+        else
+            newCap = DEFAULT_INITIAL_CAPACITY;
+
+        // 加载因子小于1，扩容阈值一定小于新容量
+        threshold = (int)((float)newCap * loadFactor);
+
+        long[] ks = new long[newCap];
+        Object[] vs = new Object[newCap];
+        keys = ks;
+        values = vs;
+
+        // 将旧桶中的元素重新探测插入新桶
+        if (oldVals != null) {
+            int mask = newCap - 1;
+            for (int j = 0; j < oldCap; ++j) {
+                Object v;
+                if ((v = oldVals[j]) != null) {
+                    long k = oldKeys[j];
+                    int i = hash(k) & mask;
+                    while (vs[i] != null)
+                        i = (i + 1) & mask;
+                    ks[i] = k;
+                    vs[i] = v;
+                }
+            }
+        }
+        return vs;
+    }
+
+    /**
+     * 返回形如{k1=v1, k2=v2}的字符串
+     */
+    public String toString() {
+        if (size == 0)
+            return "{}";
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(',').append(' ');
+            sb.append(k).append('=').append(v == this ? "(this Map)" : v);
+        });
+        return sb.append('}').toString();
+    }
+}
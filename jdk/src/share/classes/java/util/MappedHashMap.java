@@ -0,0 +1,689 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import sun.misc.Unsafe;
+import sun.nio.ch.DirectBuffer;
+
+/**
+ * 存放在内存映射文件中的持久化哈希表，键和值都是字节序列
+ *
+ * <p>哈希方式与桶的结构和{@link OffHeapHashMap}相同（Arrays.hashCode再经过HashMap.hash的扰动，
+ * 容量为2的幂，每个桶是一个单向链表），只是节点之间的指针换成了文件内的偏移量，
+ * 因此重新打开文件后不需要任何反序列化，映射完成即可直接get。
+ *
+ * <p>文件布局：
+ * <pre>
+ * [头部 4KB：两个交替写入的检查点槽位]
+ * [桶数组A：capacity个8字节的记录偏移量]
+ * [桶数组B：同上]
+ * [记录区：按64MB分段映射，只追加写入]
+ * </pre>
+ * 记录一旦写入就不再修改：put总是在桶的头部追加一条新记录（next指向原来的头部），
+ * remove追加一条墓碑记录，查找时以桶中第一条同key的记录为准。
+ * 两个桶数组一个是上次检查点提交的版本，一个是当前工作的版本，所有修改只写工作桶数组。
+ *
+ * <p>{@link #checkpoint()}先把记录区和工作桶数组刷到磁盘，再把工作桶数组的编号、记录区的末尾等
+ * 写入较旧的那个头部槽位（带序号和CRC32校验）并刷盘，最后把它复制到另一个桶数组作为新的工作版本。
+ * 已提交的桶数组和其引用的记录在下一次检查点之前都不会被修改，所以任意时刻断电，
+ * 重新打开后都能恢复到最后一次检查点的状态；打开时选择校验通过且序号最大的槽位，
+ * 并可以选择遍历所有桶校验记录的结构。
+ *
+ * <p>被覆盖的记录和墓碑在链表中的个数超过扩容阈值时，会把有效的记录重写到一个新文件中
+ * （元素较多时容量翻倍），完成后原子地替换原文件，这一步同时也是一次检查点。
+ *
+ * <p>文件使用本机字节序，不能在字节序不同的机器之间复制。此类不是线程安全的，
+ * 同一个文件同一时刻只能被一个实例打开，使用完毕后必须调用{@link #close()}。
+ *
+ * @see OffHeapHashMap
+ * @see HashMap
+ * @since 1.8
+ */
+public class MappedHashMap implements Closeable {
+
+    private static final Unsafe U = Unsafe.getUnsafe();
+
+    private static final long BYTE_ARRAY_BASE = U.arrayBaseOffset(byte[].class);
+
+    /**
+     * 文件魔数，"JUMAPHMP"
+     */
+    static final long MAGIC = 0x4A554D4150484D50L;
+
+    /**
+     * 文件格式版本
+     */
+    static final int VERSION = 1;
+
+    /**
+     * 默认初始容量
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * 最大容量，两个桶数组与头部需要在一次映射（不超过2GB）之内
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 26;
+
+    /**
+     * 默认加载因子，这里按链表中的记录个数（包括被覆盖的记录和墓碑）计算
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 头部大小，桶数组从此处开始
+     */
+    static final int HEADER_SIZE = 4096;
+
+    /**
+     * 记录区每段映射的大小为1 << CHUNK_SHIFT字节，记录不会跨段，所以单条记录不能超过此大小
+     */
+    static final int CHUNK_SHIFT = 26;
+    static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+    /*
+     * 头部槽位的布局，两个槽位分别位于0和SLOT_SIZE处
+     */
+    static final int SLOT_SIZE = 64;
+    static final long S_MAGIC = 0L;         // long
+    static final long S_VERSION = 8L;       // int
+    static final long S_CAPACITY = 12L;     // int
+    static final long S_TABLE = 16L;        // int，已提交的桶数组编号，0或1
+    static final long S_LOAD_FACTOR = 20L;  // float
+    static final long S_SIZE = 24L;         // long，有效元素个数
+    static final long S_RECORDS = 32L;      // long，链表中的记录个数
+    static final long S_END = 40L;          // long，记录区已提交的末尾
+    static final long S_SEQ = 48L;          // long，检查点序号
+    static final long S_CRC = 56L;          // int，前56字节的CRC32
+
+    /*
+     * 记录的布局，记录按8字节对齐
+     */
+    static final long NEXT = 0L;            // 同一个桶中下一条（更早的）记录的偏移量，0表示结束
+    static final long HASH = 8L;            // 扰动后的哈希值
+    static final long KEY_LENGTH = 12L;     // key的长度
+    static final long VALUE_LENGTH = 16L;   // value的长度，-1表示墓碑
+    static final long KEY = 24L;            // key的内容，之后紧接着value的内容
+
+    /**
+     * 墓碑记录的value长度
+     */
+    static final int TOMBSTONE = -1;
+
+    private final Path path;
+    private FileChannel channel;
+
+    /**
+     * 头部和两个桶数组所在的映射
+     */
+    private MappedByteBuffer header;
+    private long headerAddress;
+
+    /**
+     * 记录区的分段映射及其地址
+     */
+    private final ArrayList<MappedByteBuffer> chunks = new ArrayList<>();
+    private long[] chunkAddresses = new long[8];
+
+    /**
+     * 容量和加载因子，在文件的生命周期内不变，重建文件时才会改变
+     */
+    private int capacity;
+    private float loadFactor;
+    private int threshold;
+
+    /**
+     * 记录区在文件中的起始位置，紧跟在两个桶数组之后，按4KB对齐
+     */
+    private long recordsBase;
+
+    /**
+     * 当前工作的桶数组编号和地址，另一个是已提交的版本
+     */
+    private int working;
+    private long workingTable;
+
+    private long size;          // 有效元素个数
+    private long records;       // 链表中的记录个数，包括被覆盖的记录和墓碑
+    private long end;           // 记录区的末尾，下一条记录从此处开始写入
+    private long sequence;      // 最后一次检查点的序号
+
+    private MappedHashMap(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * 打开文件，文件不存在时按默认容量创建，不做完整的结构校验
+     */
+    public static MappedHashMap open(Path path) throws IOException {
+        return open(path, DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, false);
+    }
+
+    /**
+     * 打开文件，文件不存在时按给定的初始容量和加载因子创建，已存在时忽略这两个参数
+     *
+     * @param verify 是否遍历已提交的桶数组，校验每条记录的偏移量、长度和哈希值，
+     *               一般只在异常退出后的第一次打开时使用，耗时与记录个数成正比
+     * @throws IOException 文件不是有效的MappedHashMap，或者校验失败
+     */
+    public static MappedHashMap open(Path path, int initialCapacity,
+                                     float loadFactor, boolean verify)
+            throws IOException {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        MappedHashMap m = new MappedHashMap(path);
+        boolean ok = false;
+        try {
+            if (Files.exists(path) && Files.size(path) > 0)
+                m.load(verify);
+            else
+                m.create(path, tableSizeFor(initialCapacity), loadFactor);
+            ok = true;
+        } finally {
+            if (!ok)
+                m.unmap();
+        }
+        return m;
+    }
+
+    private static int tableSizeFor(int c) {
+        int n = HashMap.tableSizeFor(c);
+        return (n > MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : Math.max(n, 1);
+    }
+
+    /* ---------------- Opening and creating -------------- */
+
+    /**
+     * 在给定路径创建一个空文件，提交一个序号为1的检查点
+     */
+    private void create(Path p, int cap, float lf) throws IOException {
+        channel = FileChannel.open(p, StandardOpenOption.CREATE,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+        layout(cap, lf);
+        end = recordsBase;
+        size = records = 0L;
+        sequence = 0L;
+        working = 1;
+        workingTable = tableAddress(1);
+        commit();
+        startWorking();
+    }
+
+    /**
+     * 根据容量计算布局并映射头部和桶数组，新映射的区域内容为0
+     */
+    private void layout(int cap, float lf) throws IOException {
+        capacity = cap;
+        loadFactor = lf;
+        float ft = (float)cap * lf;
+        threshold = (cap < MAXIMUM_CAPACITY && ft < (float)Integer.MAX_VALUE) ?
+                (int)ft : Integer.MAX_VALUE;
+        long tables = HEADER_SIZE + 2 * ((long)cap << 3);
+        recordsBase = (tables + 4095) & ~4095L;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0L, recordsBase);
+        headerAddress = ((DirectBuffer)header).address();
+    }
+
+    /**
+     * 读取已有的文件，恢复到最后一次检查点的状态
+     */
+    private void load(boolean verify) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE)
+            throw new IOException("Not a MappedHashMap file: " + path);
+        MappedByteBuffer h = channel.map(FileChannel.MapMode.READ_ONLY, 0L, HEADER_SIZE);
+        long ha = ((DirectBuffer)h).address();
+        // 选择校验通过且序号最大的槽位
+        long slot = -1L;
+        for (long s = 0; s < 2 * SLOT_SIZE; s += SLOT_SIZE) {
+            if (validSlot(ha + s) &&
+                    (slot < 0 || U.getLong(ha + s + S_SEQ) > U.getLong(ha + slot + S_SEQ)))
+                slot = s;
+        }
+        if (slot < 0) {
+            unmap(h);
+            throw new IOException("No valid checkpoint in " + path);
+        }
+        long s = ha + slot;
+        int cap = U.getInt(s + S_CAPACITY);
+        float lf = Float.intBitsToFloat(U.getInt(s + S_LOAD_FACTOR));
+        int committed = U.getInt(s + S_TABLE);
+        size = U.getLong(s + S_SIZE);
+        records = U.getLong(s + S_RECORDS);
+        end = U.getLong(s + S_END);
+        sequence = U.getLong(s + S_SEQ);
+        unmap(h);
+        if (cap <= 0 || cap > MAXIMUM_CAPACITY || (cap & (cap - 1)) != 0 ||
+                (committed & ~1) != 0 || !(lf > 0))
+            throw new IOException("Corrupted checkpoint in " + path);
+        layout(cap, lf);
+        if (end < recordsBase || channel.size() < end)
+            throw new IOException("Truncated MappedHashMap file: " + path);
+        for (long c = 0; c < end - recordsBase; c += CHUNK_SIZE)
+            mapChunk((int)(c >>> CHUNK_SHIFT));
+        if (verify)
+            verify(tableAddress(committed));
+        // 丢弃上次检查点之后的修改：工作桶数组从已提交的版本复制，记录从end处继续追加
+        working = committed;
+        workingTable = tableAddress(committed);
+        startWorking();
+    }
+
+    private static boolean validSlot(long s) {
+        return U.getLong(s + S_MAGIC) == MAGIC &&
+                U.getInt(s + S_VERSION) == VERSION &&
+                U.getInt(s + S_CRC) == crc(s);
+    }
+
+    private static int crc(long s) {
+        byte[] b = new byte[(int)S_CRC];
+        U.copyMemory(null, s, b, BYTE_ARRAY_BASE, b.length);
+        CRC32 c = new CRC32();
+        c.update(b, 0, b.length);
+        return (int)c.getValue();
+    }
+
+    /**
+     * 校验已提交的桶数组引用的所有记录，记录都必须位于已提交的记录区之内，
+     * next必须指向更早的记录（因此不会有环），哈希值和所在的桶必须与key一致
+     */
+    private void verify(long table) throws IOException {
+        long n = 0L;
+        for (int i = 0; i < capacity; i++) {
+            long prev = Long.MAX_VALUE;
+            for (long off = U.getLong(table + ((long)i << 3)); off != 0L;
+                 off = U.getLong(address(off) + NEXT)) {
+                if (off < recordsBase || off >= prev || off + KEY > end ||
+                        ++n > records)
+                    throw new IOException("Corrupted bin " + i + " in " + path);
+                long r = address(off);
+                int klen = U.getInt(r + KEY_LENGTH), vlen = U.getInt(r + VALUE_LENGTH);
+                int hash = U.getInt(r + HASH);
+                if (klen < 0 || vlen < TOMBSTONE ||
+                        off + recordSize(klen, vlen) > end ||
+                        hash != OffHeapHashMap.hash(null, r + KEY, klen) ||
+                        (hash & (capacity - 1)) != i)
+                    throw new IOException("Corrupted record at " + off + " in " + path);
+                prev = off;
+            }
+        }
+        if (n != records)
+            throw new IOException("Record count mismatch in " + path);
+    }
+
+    /* ---------------- Checkpoints -------------- */
+
+    /**
+     * 提交检查点：刷盘后把当前状态写入较旧的头部槽位，之后的修改写入另一个桶数组
+     * 返回后，即使断电，重新打开也能恢复到此时的状态
+     */
+    public void checkpoint() throws IOException {
+        ensureOpen();
+        commit();
+        startWorking();
+    }
+
+    /**
+     * 把记录区和工作桶数组刷到磁盘，再写入并刷新头部槽位，提交working编号的桶数组
+     */
+    private void commit() throws IOException {
+        for (MappedByteBuffer c : chunks)
+            c.force();
+        header.force();
+        long s = headerAddress + ((sequence + 1) & 1) * SLOT_SIZE;
+        U.setMemory(s, SLOT_SIZE, (byte)0);
+        U.putLong(s + S_MAGIC, MAGIC);
+        U.putInt(s + S_VERSION, VERSION);
+        U.putInt(s + S_CAPACITY, capacity);
+        U.putInt(s + S_TABLE, working);
+        U.putInt(s + S_LOAD_FACTOR, Float.floatToRawIntBits(loadFactor));
+        U.putLong(s + S_SIZE, size);
+        U.putLong(s + S_RECORDS, records);
+        U.putLong(s + S_END, end);
+        U.putLong(s + S_SEQ, sequence + 1);
+        U.putInt(s + S_CRC, crc(s));
+        header.force();
+        ++sequence;
+    }
+
+    /**
+     * 把刚提交的桶数组复制到另一个桶数组，作为新的工作版本
+     */
+    private void startWorking() {
+        long committed = workingTable;
+        working ^= 1;
+        workingTable = tableAddress(working);
+        if (committed != workingTable)
+            U.copyMemory(committed, workingTable, (long)capacity << 3);
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 有效元素个数，超过Integer.MAX_VALUE时返回Integer.MAX_VALUE
+     */
+    public int size() {
+        return (size > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int)size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0L;
+    }
+
+    /**
+     * 根据key查找value，返回其在堆上的副本，不存在时返回null
+     */
+    public byte[] get(byte[] key) {
+        long r = find(key);
+        if (r == 0L || U.getInt(r + VALUE_LENGTH) == TOMBSTONE)
+            return null;
+        byte[] v = new byte[U.getInt(r + VALUE_LENGTH)];
+        U.copyMemory(null, r + KEY + key.length, v, BYTE_ARRAY_BASE, v.length);
+        return v;
+    }
+
+    public boolean containsKey(byte[] key) {
+        long r = find(key);
+        return r != 0L && U.getInt(r + VALUE_LENGTH) != TOMBSTONE;
+    }
+
+    /**
+     * 插入或替换键值对，在桶的头部追加一条新记录
+     *
+     * @return 此前不存在此key时返回true
+     * @throws UncheckedIOException 扩展记录区或重建文件失败
+     */
+    public boolean put(byte[] key, byte[] value) {
+        Objects.requireNonNull(value);
+        long r = find(key);
+        boolean absent = (r == 0L || U.getInt(r + VALUE_LENGTH) == TOMBSTONE);
+        append(key, value);
+        if (absent)
+            ++size;
+        return absent;
+    }
+
+    /**
+     * 删除key对应的键值对，在桶的头部追加一条墓碑记录
+     *
+     * @return 此前存在此key时返回true
+     * @throws UncheckedIOException 扩展记录区或重建文件失败
+     */
+    public boolean remove(byte[] key) {
+        long r = find(key);
+        if (r == 0L || U.getInt(r + VALUE_LENGTH) == TOMBSTONE)
+            return false;
+        append(key, null);
+        --size;
+        return true;
+    }
+
+    /**
+     * 遍历所有有效的键值对，传入的key和value都是堆上的副本，遍历期间不能修改此Map
+     */
+    public void forEach(BiConsumer<byte[], byte[]> action) {
+        Objects.requireNonNull(action);
+        ensureOpen();
+        for (int i = 0; i < capacity; i++) {
+            long head = U.getLong(workingTable + ((long)i << 3));
+            for (long off = head; off != 0L; off = U.getLong(address(off) + NEXT)) {
+                long r = address(off);
+                int vlen = U.getInt(r + VALUE_LENGTH);
+                if (vlen == TOMBSTONE || shadowed(head, off))
+                    continue;
+                int klen = U.getInt(r + KEY_LENGTH);
+                byte[] k = new byte[klen], v = new byte[vlen];
+                U.copyMemory(null, r + KEY, k, BYTE_ARRAY_BASE, klen);
+                U.copyMemory(null, r + KEY + klen, v, BYTE_ARRAY_BASE, vlen);
+                action.accept(k, v);
+            }
+        }
+    }
+
+    /**
+     * 提交一次检查点并释放所有映射，重复调用没有影响
+     */
+    public void close() throws IOException {
+        if (channel != null) {
+            try {
+                commit();
+            } finally {
+                unmap();
+            }
+        }
+    }
+
+    /* ---------------- Internal utilities -------------- */
+
+    private void ensureOpen() {
+        if (channel == null)
+            throw new IllegalStateException("MappedHashMap is closed");
+    }
+
+    private long tableAddress(int t) {
+        return headerAddress + HEADER_SIZE + (long)t * ((long)capacity << 3);
+    }
+
+    /**
+     * 记录偏移量对应的内存地址
+     */
+    private long address(long off) {
+        long rel = off - recordsBase;
+        return chunkAddresses[(int)(rel >>> CHUNK_SHIFT)] + (rel & (CHUNK_SIZE - 1));
+    }
+
+    private static long recordSize(int klen, int vlen) {
+        return (KEY + klen + Math.max(vlen, 0) + 7) & ~7L;
+    }
+
+    /**
+     * 查找key在桶中的第一条记录（可能是墓碑），返回其地址，不存在时返回0
+     */
+    private long find(byte[] key) {
+        ensureOpen();
+        int len = key.length;
+        int hash = OffHeapHashMap.hash(key, BYTE_ARRAY_BASE, len);
+        for (long off = U.getLong(workingTable + ((long)(hash & (capacity - 1)) << 3));
+             off != 0L; off = U.getLong(address(off) + NEXT)) {
+            long r = address(off);
+            if (U.getInt(r + HASH) == hash && U.getInt(r + KEY_LENGTH) == len &&
+                    OffHeapHashMap.bytesEqual(r + KEY, key, BYTE_ARRAY_BASE, len))
+                return r;
+        }
+        return 0L;
+    }
+
+    /**
+     * 同一个桶中，off之前（更新）是否已有相同key的记录
+     */
+    private boolean shadowed(long head, long off) {
+        long r = address(off);
+        int hash = U.getInt(r + HASH), len = U.getInt(r + KEY_LENGTH);
+        for (long o = head; o != off; o = U.getLong(address(o) + NEXT)) {
+            long q = address(o);
+            if (U.getInt(q + HASH) == hash && U.getInt(q + KEY_LENGTH) == len &&
+                    OffHeapHashMap.bytesEqual(q + KEY, null, r + KEY, len))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 在记录区末尾写入一条记录并链接到桶的头部，value为null时写入墓碑
+     * 记录不会跨段，剩余空间不足时从下一段的开头写入
+     */
+    private void append(byte[] key, byte[] value) {
+        int klen = key.length, vlen = (value == null) ? TOMBSTONE : value.length;
+        long rs = recordSize(klen, vlen);
+        if (rs > CHUNK_SIZE)
+            throw new IllegalArgumentException("Record too large: " + rs);
+        if (records >= threshold)
+            rebuild();
+        long off = end, rel = off - recordsBase;
+        if ((rel & (CHUNK_SIZE - 1)) + rs > CHUNK_SIZE)
+            off = recordsBase + ((rel >>> CHUNK_SHIFT) + 1 << CHUNK_SHIFT);
+        int chunk = (int)((off - recordsBase) >>> CHUNK_SHIFT);
+        if (chunk >= chunks.size()) {
+            try {
+                mapChunk(chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int hash = OffHeapHashMap.hash(key, BYTE_ARRAY_BASE, klen);
+        long bin = workingTable + ((long)(hash & (capacity - 1)) << 3);
+        long r = address(off);
+        U.putLong(r + NEXT, U.getLong(bin));
+        U.putInt(r + HASH, hash);
+        U.putInt(r + KEY_LENGTH, klen);
+        U.putInt(r + VALUE_LENGTH, vlen);
+        U.copyMemory(key, BYTE_ARRAY_BASE, null, r + KEY, klen);
+        if (value != null)
+            U.copyMemory(value, BYTE_ARRAY_BASE, null, r + KEY + klen, vlen);
+        // 记录写完之后才更新桶的头部
+        U.putLong(bin, off);
+        end = off + rs;
+        ++records;
+    }
+
+    private void mapChunk(int i) throws IOException {
+        while (chunks.size() <= i) {
+            int c = chunks.size();
+            MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_WRITE,
+                                             recordsBase + ((long)c << CHUNK_SHIFT),
+                                             CHUNK_SIZE);
+            if (c >= chunkAddresses.length)
+                chunkAddresses = Arrays.copyOf(chunkAddresses, c << 1);
+            chunkAddresses[c] = ((DirectBuffer)b).address();
+            chunks.add(b);
+        }
+    }
+
+    /**
+     * 重建文件：把有效的记录写入一个临时文件，有效元素较多时容量翻倍，
+     * 提交检查点后原子地替换原文件，再切换到新文件继续工作
+     * 替换完成之前原文件不受影响，替换之后新文件已经是一个完整的检查点
+     * 替换之后还要把目录刷到磁盘，否则断电后目录项可能仍然指向原文件，之后的检查点全部丢失
+     */
+    private void rebuild() {
+        long need = (long)((size + 1) / loadFactor) + 1;
+        int newCap = capacity;
+        while (newCap < MAXIMUM_CAPACITY && (long)newCap < (need << 1))
+            newCap <<= 1;
+        if (newCap == MAXIMUM_CAPACITY && capacity == MAXIMUM_CAPACITY &&
+                records - size < (records >>> 2)) {
+            // 已达到最大容量且可回收的记录不多，不再重建
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        MappedHashMap m = new MappedHashMap(tmp);
+        try {
+            Files.deleteIfExists(tmp);
+            m.create(tmp, newCap, loadFactor);
+            m.threshold = Integer.MAX_VALUE;
+            forEach((k, v) -> {
+                m.append(k, v);
+                ++m.size;
+            });
+            m.commit();
+            m.unmap();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(path.toAbsolutePath().getParent());
+            unmap();
+            load(false);
+        } catch (IOException e) {
+            m.unmap();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把目录的修改（包括rename）写入磁盘
+     * 有的平台（如Windows）不能打开目录，此时无法也不需要单独刷新目录，直接忽略
+     */
+    private static void forceDirectory(Path dir) throws IOException {
+        FileChannel ch;
+        try {
+            ch = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            ch.force(true);
+        } finally {
+            ch.close();
+        }
+    }
+
+    /**
+     * 释放所有映射并关闭文件
+     */
+    private void unmap() {
+        for (MappedByteBuffer c : chunks)
+            unmap(c);
+        chunks.clear();
+        if (header != null) {
+            unmap(header);
+            header = null;
+            headerAddress = 0L;
+        }
+        workingTable = 0L;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * 立即解除映射，不等待GC回收MappedByteBuffer
+     */
+    private static void unmap(MappedByteBuffer b) {
+        sun.misc.Cleaner c = ((DirectBuffer)b).cleaner();
+        if (c != null)
+            c.clean();
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.io.Closeable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.function.BiConsumer;
+import sun.misc.Unsafe;
+import sun.nio.ch.DirectBuffer;
+
+/**
+ * 桶数组、键和值都存放在堆外内存中的哈希表，键和值都是字节序列
+ *
+ * <p>结构与HashMap相同：容量为2的幂的桶数组，每个桶是一个单向链表，key的哈希值经过HashMap.hash
+ * 相同的扰动后取低位定位桶。不同的是桶数组和每个节点都通过Unsafe.allocateMemory分配在堆外：
+ * 桶数组中存放节点的地址，节点是一块连续的内存，依次存放next地址、hash、key长度、value长度、
+ * key的内容和value的内容。堆上只有这个对象本身，GC不需要扫描其中的任何元素。
+ *
+ * <p>key和value以byte[]或ByteBuffer传入，读取时复制到堆上。key的哈希值与Arrays.hashCode(byte[])相同。
+ * 替换value时，若长度不变则原地覆盖，否则通过Unsafe.reallocateMemory调整节点大小；
+ * 扩容时通过reallocateMemory将桶数组扩大一倍，再像HashMap.resize一样把每个桶拆分为高低两个链表。
+ *
+ * <p>堆外内存不受GC管理，使用完毕后必须调用{@link #close()}释放，否则会一直占用直到进程退出。
+ * 此类不是线程安全的，关闭之后的任何操作都会抛出IllegalStateException。
+ *
+ * @see HashMap
+ * @since 1.8
+ */
+public class OffHeapHashMap implements Closeable {
+
+    private static final Unsafe U = Unsafe.getUnsafe();
+
+    /**
+     * byte[]中第一个元素相对于数组对象的偏移量
+     */
+    static final long BYTE_ARRAY_BASE = U.arrayBaseOffset(byte[].class);
+
+    /**
+     * 当前平台是否支持非对齐的8字节读取，判断方式与java.nio.Bits.unaligned()相同
+     * key在byte[]和ByteBuffer中的起始位置是任意的，严格对齐的平台上按long读取会导致SIGBUS
+     */
+    static final boolean UNALIGNED;
+
+    static {
+        String arch = java.security.AccessController.doPrivileged(
+            new sun.security.action.GetPropertyAction("os.arch"));
+        UNALIGNED = arch.equals("i386") || arch.equals("x86")
+            || arch.equals("amd64") || arch.equals("x86_64")
+            || arch.equals("ppc64") || arch.equals("ppc64le")
+            || arch.equals("aarch64");
+    }
+
+    /**
+     * 默认初始容量
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * 最大容量，桶数组占用8 * MAXIMUM_CAPACITY字节
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 默认加载因子
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /*
+     * 节点的内存布局，key从8字节对齐的位置开始，方便按long比较
+     */
+    static final long NEXT = 0L;        // 下一个节点的地址，8字节
+    static final long HASH = 8L;        // 扰动后的哈希值，4字节
+    static final long KEY_LENGTH = 12L; // key的长度，4字节
+    static final long VALUE_LENGTH = 16L; // value的长度，4字节
+    static final long KEY = 24L;        // key的内容，之后紧接着value的内容
+
+    /**
+     * 桶数组的地址，每个桶是一个8字节的节点地址，0表示空桶
+     */
+    private long table;
+
+    /**
+     * 桶数组的容量
+     */
+    private int capacity;
+
+    /**
+     * 元素个数
+     */
+    private int size;
+
+    /**
+     * 扩容阈值
+     */
+    private int threshold;
+
+    /**
+     * 加载因子
+     */
+    private final float loadFactor;
+
+    /**
+     * 已分配的堆外内存字节数，包括桶数组和所有节点
+     */
+    private long memoryUsed;
+
+    /**
+     * 按给定的初始容量和加载因子实例化，立即分配桶数组
+     */
+    public OffHeapHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        this.loadFactor = loadFactor;
+        int cap = Math.max(HashMap.tableSizeFor(initialCapacity), 1);
+        long bytes = (long)cap << 3;
+        table = U.allocateMemory(bytes);
+        U.setMemory(table, bytes, (byte)0);
+        memoryUsed = bytes;
+        capacity = cap;
+        threshold = thresholdFor(cap);
+    }
+
+    /**
+     * 指定初始容量，按默认加载因子（0.75）实例化
+     */
+    public OffHeapHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 按默认初始容量（16）和默认加载因子（0.75）实例化
+     */
+    public OffHeapHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    private int thresholdFor(int cap) {
+        float ft = (float)cap * loadFactor;
+        return (cap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY) ?
+                (int)ft : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 检查是否已关闭，返回桶数组的地址
+     */
+    private long table() {
+        long t;
+        if ((t = table) == 0L)
+            throw new IllegalStateException("OffHeapHashMap is closed");
+        return t;
+    }
+
+    /* ---------------- Hashing and comparison -------------- */
+
+    /**
+     * 计算key的哈希值，先按Arrays.hashCode(byte[])的方式计算，再按HashMap.hash的方式扰动
+     * base为null时offset是堆外地址，否则是相对于base的偏移量
+     */
+    static int hash(Object base, long offset, int len) {
+        int h = 1;
+        for (int i = 0; i < len; i++)
+            h = 31 * h + U.getByte(base, offset + i);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 比较节点中的key与传入的key是否相同
+     */
+    static boolean keyEquals(long node, Object base, long offset, int len) {
+        return U.getInt(node + KEY_LENGTH) == len &&
+                bytesEqual(node + KEY, base, offset, len);
+    }
+
+    /**
+     * 比较堆外地址k开始的len个字节与传入的字节序列是否相同
+     * 平台支持非对齐读取时先按8字节比较，剩余部分逐字节比较，否则全部逐字节比较
+     */
+    static boolean bytesEqual(long k, Object base, long offset, int len) {
+        int i = 0;
+        if (UNALIGNED) {
+            for (; i + 8 <= len; i += 8) {
+                if (U.getLong(k + i) != U.getLong(base, offset + i))
+                    return false;
+            }
+        }
+        for (; i < len; i++) {
+            if (U.getByte(k + i) != U.getByte(base, offset + i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 查找key所在的节点，返回指向它的指针的地址（桶或者前一个节点的next字段），不存在时返回0
+     * 返回指针的地址而不是节点地址，是为了删除节点或重新分配节点内存时能直接修改前驱
+     */
+    private long findSlot(int hash, Object base, long offset, int len) {
+        long slot = table() + ((long)(hash & (capacity - 1)) << 3);
+        for (long e; (e = U.getAddress(slot)) != 0L; slot = e + NEXT) {
+            if (U.getInt(e + HASH) == hash && keyEquals(e, base, offset, len))
+                return slot;
+        }
+        return 0L;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 元素个数
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 已分配的堆外内存字节数，包括桶数组和所有节点，不包括malloc自身的开销
+     */
+    public long memoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * 根据key查找value，返回其在堆上的副本，不存在时返回null
+     */
+    public byte[] get(byte[] key) {
+        int len = key.length;
+        int hash = hash(key, BYTE_ARRAY_BASE, len);
+        long slot = findSlot(hash, key, BYTE_ARRAY_BASE, len);
+        return (slot == 0L) ? null : valueOf(U.getAddress(slot));
+    }
+
+    /**
+     * 根据key查找value，将其复制到dst中，dst的position会增加value的长度
+     * key中position到limit之间的内容作为key，key的position不变
+     *
+     * @return value的长度，不存在时返回-1且不修改dst
+     * @throws BufferOverflowException dst剩余空间不足以容纳value，此时不修改dst
+     * @throws ReadOnlyBufferException dst是只读的
+     */
+    public int get(ByteBuffer key, ByteBuffer dst) {
+        if (dst.isReadOnly())
+            throw new ReadOnlyBufferException();
+        if (!key.isDirect() && !key.hasArray())
+            key = ByteBuffer.wrap(bytesOf(key));
+        int len = key.remaining();
+        Object base = baseOf(key);
+        long offset = offsetOf(key);
+        long slot = findSlot(hash(base, offset, len), base, offset, len);
+        if (slot == 0L)
+            return -1;
+        long e = U.getAddress(slot);
+        int vlen = U.getInt(e + VALUE_LENGTH);
+        if (dst.remaining() < vlen)
+            throw new BufferOverflowException();
+        U.copyMemory(null, e + KEY + U.getInt(e + KEY_LENGTH),
+                     baseOf(dst), offsetOf(dst), vlen);
+        dst.position(dst.position() + vlen);
+        return vlen;
+    }
+
+    public boolean containsKey(byte[] key) {
+        int len = key.length;
+        return findSlot(hash(key, BYTE_ARRAY_BASE, len), key, BYTE_ARRAY_BASE, len) != 0L;
+    }
+
+    /**
+     * 插入或替换键值对，key和value的内容都会被复制到堆外
+     *
+     * @return 此前不存在此key时返回true
+     */
+    public boolean put(byte[] key, byte[] value) {
+        return putVal(key, BYTE_ARRAY_BASE, key.length,
+                      value, BYTE_ARRAY_BASE, value.length);
+    }
+
+    /**
+     * 插入或替换键值对，使用key和value中position到limit之间的内容，两者的position都不变
+     *
+     * @return 此前不存在此key时返回true
+     */
+    public boolean put(ByteBuffer key, ByteBuffer value) {
+        if (!key.isDirect() && !key.hasArray())
+            key = ByteBuffer.wrap(bytesOf(key));
+        if (!value.isDirect() && !value.hasArray())
+            value = ByteBuffer.wrap(bytesOf(value));
+        return putVal(baseOf(key), offsetOf(key), key.remaining(),
+                      baseOf(value), offsetOf(value), value.remaining());
+    }
+
+    /**
+     * 插入或替换键值对
+     * key已存在时，value长度相同则原地覆盖，否则重新分配节点内存并更新前驱中的指针
+     */
+    private boolean putVal(Object kb, long ko, int klen,
+                           Object vb, long vo, int vlen) {
+        int hash = hash(kb, ko, klen);
+        long slot = findSlot(hash, kb, ko, klen);
+        if (slot != 0L) {
+            long e = U.getAddress(slot);
+            int old = U.getInt(e + VALUE_LENGTH);
+            if (old != vlen) {
+                long ne = U.reallocateMemory(e, KEY + klen + vlen);
+                memoryUsed += vlen - old;
+                U.putAddress(slot, ne);
+                U.putInt(ne + VALUE_LENGTH, vlen);
+                e = ne;
+            }
+            U.copyMemory(vb, vo, null, e + KEY + klen, vlen);
+            return false;
+        }
+        long bytes = KEY + klen + vlen;
+        long e = U.allocateMemory(bytes);
+        memoryUsed += bytes;
+        U.putInt(e + HASH, hash);
+        U.putInt(e + KEY_LENGTH, klen);
+        U.putInt(e + VALUE_LENGTH, vlen);
+        U.copyMemory(kb, ko, null, e + KEY, klen);
+        U.copyMemory(vb, vo, null, e + KEY + klen, vlen);
+        // 插入到桶的头部，与HashMap插入到尾部不同，但桶内顺序不影响结果
+        long bin = table + ((long)(hash & (capacity - 1)) << 3);
+        U.putAddress(e + NEXT, U.getAddress(bin));
+        U.putAddress(bin, e);
+        if (++size > threshold)
+            resize();
+        return true;
+    }
+
+    /**
+     * 删除key对应的键值对并释放其内存
+     *
+     * @return 此前存在此key时返回true
+     */
+    public boolean remove(byte[] key) {
+        int len = key.length;
+        return removeVal(hash(key, BYTE_ARRAY_BASE, len), key, BYTE_ARRAY_BASE, len);
+    }
+
+    /**
+     * 删除key对应的键值对并释放其内存，使用key中position到limit之间的内容，position不变
+     *
+     * @return 此前存在此key时返回true
+     */
+    public boolean remove(ByteBuffer key) {
+        if (!key.isDirect() && !key.hasArray())
+            key = ByteBuffer.wrap(bytesOf(key));
+        Object base = baseOf(key);
+        long offset = offsetOf(key);
+        int len = key.remaining();
+        return removeVal(hash(base, offset, len), base, offset, len);
+    }
+
+    private boolean removeVal(int hash, Object base, long offset, int len) {
+        long slot = findSlot(hash, base, offset, len);
+        if (slot == 0L)
+            return false;
+        long e = U.getAddress(slot);
+        U.putAddress(slot, U.getAddress(e + NEXT));
+        free(e);
+        --size;
+        return true;
+    }
+
+    /**
+     * 遍历所有键值对，传入的key和value都是堆上的副本，遍历期间不能修改此Map
+     */
+    public void forEach(BiConsumer<byte[], byte[]> action) {
+        Objects.requireNonNull(action);
+        long t = table();
+        for (int i = 0; i < capacity; i++) {
+            for (long e = U.getAddress(t + ((long)i << 3)); e != 0L;
+                 e = U.getAddress(e + NEXT)) {
+                byte[] k = new byte[U.getInt(e + KEY_LENGTH)];
+                U.copyMemory(null, e + KEY, k, BYTE_ARRAY_BASE, k.length);
+                action.accept(k, valueOf(e));
+            }
+        }
+    }
+
+    /**
+     * 删除所有键值对并释放其内存，保留桶数组
+     */
+    public void clear() {
+        long t = table();
+        for (int i = 0; i < capacity; i++) {
+            long bin = t + ((long)i << 3);
+            for (long e = U.getAddress(bin), next; e != 0L; e = next) {
+                next = U.getAddress(e + NEXT);
+                free(e);
+            }
+            U.putAddress(bin, 0L);
+        }
+        size = 0;
+    }
+
+    /**
+     * 释放所有堆外内存，重复调用没有影响
+     */
+    public void close() {
+        if (table != 0L) {
+            clear();
+            U.freeMemory(table);
+            memoryUsed -= (long)capacity << 3;
+            table = 0L;
+        }
+    }
+
+    /* ---------------- Internal utilities -------------- */
+
+    /**
+     * 扩容为原来的两倍
+     * 通过reallocateMemory扩大桶数组，新增的高半部分清零后，
+     * 与HashMap.resize相同，根据hash & oldCap把每个旧桶拆分到原位置j和j + oldCap
+     */
+    private void resize() {
+        int oldCap = capacity;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        int newCap = oldCap << 1;
+        long t = U.reallocateMemory(table, (long)newCap << 3);
+        U.setMemory(t + ((long)oldCap << 3), (long)oldCap << 3, (byte)0);
+        memoryUsed += (long)oldCap << 3;
+        for (int j = 0; j < oldCap; j++) {
+            long loBin = t + ((long)j << 3), hiBin = loBin + ((long)oldCap << 3);
+            long loTail = 0L, hiTail = 0L;
+            long e = U.getAddress(loBin);
+            U.putAddress(loBin, 0L);
+            for (long next; e != 0L; e = next) {
+                next = U.getAddress(e + NEXT);
+                U.putAddress(e + NEXT, 0L);
+                if ((U.getInt(e + HASH) & oldCap) == 0) {
+                    U.putAddress(loTail == 0L ? loBin : loTail + NEXT, e);
+                    loTail = e;
+                }
+                else {
+                    U.putAddress(hiTail == 0L ? hiBin : hiTail + NEXT, e);
+                    hiTail = e;
+                }
+            }
+        }
+        table = t;
+        capacity = newCap;
+        threshold = thresholdFor(newCap);
+    }
+
+    /**
+     * 释放一个节点
+     */
+    private void free(long e) {
+        memoryUsed -= KEY + U.getInt(e + KEY_LENGTH) + U.getInt(e + VALUE_LENGTH);
+        U.freeMemory(e);
+    }
+
+    /**
+     * 复制节点中的value到堆上
+     */
+    private static byte[] valueOf(long e) {
+        byte[] v = new byte[U.getInt(e + VALUE_LENGTH)];
+        U.copyMemory(null, e + KEY + U.getInt(e + KEY_LENGTH),
+                     v, BYTE_ARRAY_BASE, v.length);
+        return v;
+    }
+
+    /**
+     * ByteBuffer对应的Unsafe访问基址，直接缓冲区为null，堆缓冲区为其底层数组
+     */
+    static Object baseOf(ByteBuffer b) {
+        return b.isDirect() ? null : b.array();
+    }
+
+    /**
+     * ByteBuffer当前position对应的Unsafe访问偏移量
+     */
+    static long offsetOf(ByteBuffer b) {
+        return b.isDirect() ?
+                ((DirectBuffer)b).address() + b.position() :
+                BYTE_ARRAY_BASE + b.arrayOffset() + b.position();
+    }
+
+    /**
+     * 只读的堆缓冲区无法访问底层数组，复制出其剩余内容
+     */
+    static byte[] bytesOf(ByteBuffer b) {
+        byte[] a = new byte[b.remaining()];
+        b.duplicate().get(a);
+        return a;
+    }
+}
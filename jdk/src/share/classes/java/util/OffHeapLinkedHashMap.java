@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.io.Closeable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.SlabAllocator.Chunk;
+import java.util.function.BiConsumer;
+import sun.misc.Unsafe;
+
+/**
+ * value存放在堆外内存中的LinkedHashMap，用于缓存大量较大的二进制数据
+ *
+ * <p>堆上只有一个LinkedHashMap作为索引，每个元素的value是一个很小的对象，记录value在堆外的地址和长度。
+ * value本身由{@link SlabAllocator}分配在堆外的slab中：按大小分级的定长块，每个slab维护空闲链表，
+ * 删除元素时块被放回空闲链表，供之后同一级别的value复用。百万级的byte[]不再进入老年代，
+ * GC只需要扫描索引。
+ *
+ * <p>遍历顺序与LinkedHashMap相同，可以是插入顺序或访问顺序，默认为访问顺序，即LRU缓存。
+ * 每次put之后都会像LinkedHashMap.afterNodeInsertion一样调用{@link #removeEldestEntry}，
+ * 不同的是只要它返回true就会继续淘汰，直到返回false或者为空，所以一次put可以淘汰多个较小的元素。
+ * 默认的实现在value占用的堆外内存超过maximumMemory时返回true。替换value时也会检查，
+ * 因为更长的value同样会占用更多内存。
+ *
+ * <p>value以byte[]或ByteBuffer传入，读取时复制到堆上或传入的ByteBuffer中。
+ * 替换value时，若新的长度与原来属于同一级别，则原地覆盖，否则分配新的块再释放原来的块。
+ *
+ * <p>堆外内存不受GC管理，使用完毕后必须调用{@link #close()}释放。
+ * 此类不是线程安全的，关闭之后的任何操作都会抛出IllegalStateException。
+ *
+ * @param <K> key的类型
+ * @see LinkedHashMap
+ * @see OffHeapHashMap
+ * @since 1.8
+ */
+public class OffHeapLinkedHashMap<K> implements Closeable {
+
+    private static final Unsafe U = Unsafe.getUnsafe();
+
+    private static final long BYTE_ARRAY_BASE = OffHeapHashMap.BYTE_ARRAY_BASE;
+
+    /**
+     * 堆上的索引，元素被删除时释放对应的堆外内存
+     */
+    final class Index extends LinkedHashMap<K,Chunk> {
+
+        private static final long serialVersionUID = -2914520167323361852L;
+
+        Index(boolean accessOrder) {
+            super(16, 0.75f, accessOrder);
+        }
+
+        @Override
+        void afterNodeRemoval(Node<K,Chunk> e) {
+            super.afterNodeRemoval(e);
+            allocator.free(e.value);
+        }
+
+        @Override
+        public void clear() {
+            for (Entry<K,Chunk> e = head; e != null; e = e.after)
+                allocator.free(e.value);
+            super.clear();
+        }
+    }
+
+    /**
+     * 传给removeEldestEntry的元素，value在调用getValue时才复制到堆上
+     */
+    final class EldestEntry implements Map.Entry<K,byte[]> {
+        final K key;
+        final Chunk chunk;
+
+        EldestEntry(K key, Chunk chunk) {
+            this.key = key;
+            this.chunk = chunk;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * 每次调用都会复制一次value
+         */
+        public byte[] getValue() {
+            return valueOf(chunk);
+        }
+
+        public byte[] setValue(byte[] value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String toString() {
+            return key + "=byte[" + chunk.length + "]";
+        }
+    }
+
+    final Index index;
+
+    final SlabAllocator allocator;
+
+    /**
+     * 默认的removeEldestEntry允许value占用的最大堆外内存
+     */
+    private final long maximumMemory;
+
+    private boolean closed;
+
+    /**
+     * 按访问顺序实例化，即LRU缓存
+     *
+     * @param maximumMemory value占用的堆外内存超过此值时淘汰最久未访问的元素
+     */
+    public OffHeapLinkedHashMap(long maximumMemory) {
+        this(maximumMemory, true);
+    }
+
+    /**
+     * @param maximumMemory value占用的堆外内存超过此值时淘汰链表头部的元素
+     * @param accessOrder true为访问顺序，false为插入顺序
+     */
+    public OffHeapLinkedHashMap(long maximumMemory, boolean accessOrder) {
+        this(maximumMemory, accessOrder, SlabAllocator.DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param maximumMemory value占用的堆外内存超过此值时淘汰链表头部的元素
+     * @param accessOrder true为访问顺序，false为插入顺序
+     * @param slabSize 每次向系统申请的slab大小，超过此大小的value单独分配
+     */
+    public OffHeapLinkedHashMap(long maximumMemory, boolean accessOrder, int slabSize) {
+        if (maximumMemory <= 0)
+            throw new IllegalArgumentException("Illegal maximum memory: " +
+                                               maximumMemory);
+        this.maximumMemory = maximumMemory;
+        this.allocator = new SlabAllocator(slabSize);
+        this.index = new Index(accessOrder);
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("OffHeapLinkedHashMap is closed");
+    }
+
+    /**
+     * 返回true时淘汰eldest，每次put之后反复调用，直到返回false或者为空
+     * 默认在value占用的堆外内存超过maximumMemory时返回true
+     *
+     * @param eldest 链表头部的元素，即最早插入或最久未访问的元素
+     */
+    protected boolean removeEldestEntry(Map.Entry<K,byte[]> eldest) {
+        return memoryUsed() > maximumMemory;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return index.size();
+    }
+
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    /**
+     * value占用的堆外内存，按块的大小计算，不包括堆上的索引
+     */
+    public long memoryUsed() {
+        return allocator.used;
+    }
+
+    /**
+     * 向系统申请的堆外内存，包括slab中未分配的块
+     */
+    public long memoryReserved() {
+        return allocator.reserved;
+    }
+
+    public long maximumMemory() {
+        return maximumMemory;
+    }
+
+    /**
+     * 根据key查找value，返回其在堆上的副本，不存在时返回null
+     * 访问顺序模式下会把元素移到链表尾部
+     */
+    public byte[] get(Object key) {
+        ensureOpen();
+        Chunk c;
+        return ((c = index.get(key)) == null) ? null : valueOf(c);
+    }
+
+    /**
+     * 根据key查找value，将其复制到dst中，dst的position会增加value的长度
+     *
+     * @return value的长度，不存在时返回-1且不修改dst
+     * @throws BufferOverflowException dst剩余空间不足以容纳value，此时不修改dst
+     * @throws ReadOnlyBufferException dst是只读的
+     */
+    public int get(Object key, ByteBuffer dst) {
+        ensureOpen();
+        if (dst.isReadOnly())
+            throw new ReadOnlyBufferException();
+        Chunk c;
+        if ((c = index.get(key)) == null)
+            return -1;
+        int len = c.length;
+        if (dst.remaining() < len)
+            throw new BufferOverflowException();
+        U.copyMemory(null, c.address, OffHeapHashMap.baseOf(dst),
+                     OffHeapHashMap.offsetOf(dst), len);
+        dst.position(dst.position() + len);
+        return len;
+    }
+
+    /**
+     * 不改变访问顺序
+     */
+    public boolean containsKey(Object key) {
+        ensureOpen();
+        return index.containsKey(key);
+    }
+
+    /**
+     * 插入或替换键值对，value的内容会被复制到堆外
+     *
+     * @return 此前不存在此key时返回true
+     */
+    public boolean put(K key, byte[] value) {
+        return putVal(key, value, BYTE_ARRAY_BASE, value.length);
+    }
+
+    /**
+     * 插入或替换键值对，使用value中position到limit之间的内容，position不变
+     *
+     * @return 此前不存在此key时返回true
+     */
+    public boolean put(K key, ByteBuffer value) {
+        if (!value.isDirect() && !value.hasArray())
+            value = ByteBuffer.wrap(OffHeapHashMap.bytesOf(value));
+        return putVal(key, OffHeapHashMap.baseOf(value),
+                      OffHeapHashMap.offsetOf(value), value.remaining());
+    }
+
+    /**
+     * 先分配并写入新的块再更新索引，替换下来的块由索引释放，最后按removeEldestEntry淘汰
+     */
+    private boolean putVal(K key, Object base, long offset, int len) {
+        ensureOpen();
+        Chunk c = index.get(key);
+        if (c != null && allocator.fits(c, len)) {
+            U.copyMemory(base, offset, null, c.address, len);
+            c.length = len;
+            return false;
+        }
+        Chunk n = allocator.allocate(len);
+        U.copyMemory(base, offset, null, n.address, len);
+        Chunk old = index.put(key, n);
+        if (old != null)
+            allocator.free(old);
+        evict();
+        return old == null;
+    }
+
+    /**
+     * 删除key对应的键值对并释放其内存
+     *
+     * @return 此前存在此key时返回true
+     */
+    public boolean remove(Object key) {
+        ensureOpen();
+        return index.remove(key) != null;
+    }
+
+    /**
+     * key的视图，按链表顺序遍历，通过它删除元素同样会释放堆外内存，不支持添加
+     */
+    public Set<K> keySet() {
+        ensureOpen();
+        return index.keySet();
+    }
+
+    /**
+     * 按链表顺序遍历所有键值对，value是堆上的副本，遍历期间不能修改此Map
+     */
+    public void forEach(BiConsumer<? super K, byte[]> action) {
+        Objects.requireNonNull(action);
+        ensureOpen();
+        int mc = index.modCount;
+        for (LinkedHashMap.Entry<K,Chunk> e = index.head; e != null; e = e.after) {
+            action.accept(e.key, valueOf(e.value));
+            if (index.modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 删除所有键值对，slab中的块回到空闲链表，每个级别最多保留一个slab
+     */
+    public void clear() {
+        ensureOpen();
+        index.clear();
+    }
+
+    /**
+     * 释放所有堆外内存，重复调用没有影响
+     */
+    public void close() {
+        if (!closed) {
+            index.clear();
+            allocator.close();
+            closed = true;
+        }
+    }
+
+    /* ---------------- Internal utilities -------------- */
+
+    /**
+     * 按removeEldestEntry淘汰链表头部的元素
+     */
+    private void evict() {
+        LinkedHashMap.Entry<K,Chunk> first;
+        while ((first = index.head) != null &&
+               removeEldestEntry(new EldestEntry(first.key, first.value)))
+            index.remove(first.key);
+    }
+
+    /**
+     * 复制块中的value到堆上
+     */
+    static byte[] valueOf(Chunk c) {
+        byte[] v = new byte[c.length];
+        U.copyMemory(null, c.address, v, BYTE_ARRAY_BASE, v.length);
+        return v;
+    }
+}
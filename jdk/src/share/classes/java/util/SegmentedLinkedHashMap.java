@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+/**
+ * 按分段LRU(SLRU)顺序淘汰的有界LinkedHashMap
+ *
+ * <p>访问顺序的LinkedHashMap在afterNodeAccess中把每个被访问的元素直接移到链表尾部，
+ * 一次超过容量的顺序扫描就会把所有热点数据挤出链表头部。分段LRU把链表分成两段：
+ * <pre>
+ *   head -> [试用段 LRU ... MRU][保护段 LRU ... MRU] <- tail
+ * </pre>
+ * 1. 新元素进入试用段的尾部，只被访问过一次的元素始终留在试用段中
+ * 2. 试用段中的元素再次被访问时晋升到保护段的尾部，保护段中的元素被访问时移到保护段的尾部
+ * 3. 保护段的元素个数超过maximumSize * protectedRatio时，其中最久未访问的元素降级为试用段中最近访问的元素
+ * 4. 淘汰总是从链表头部开始，即先淘汰试用段中最久未访问的元素，试用段为空时才淘汰保护段的
+ * 扫描产生的元素都只访问一次，只会在试用段中相互淘汰，保护段中的热点元素不受影响。
+ *
+ * <p>两个段没有单独的链表，而是LinkedHashMap双向链表中连续的两部分，节点所在的段记录在
+ * {@link LinkedHashMap.Entry#segment}中，这里只保存保护段第一个节点的指针，段的移动都是O(1)的指针操作。
+ * 遍历顺序是从最可能被淘汰到最不可能被淘汰。
+ *
+ * <p>默认的removeEldestEntry在元素个数超过maximumSize时返回true，可以重写。
+ * 与LinkedHashMap(accessOrder = true)一样，get等访问操作会修改链表，遍历期间不能访问此Map。
+ * 不是线程安全的，并发使用时需要外部同步。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see LinkedHashMap
+ * @see TinyLfuLinkedHashMap
+ * @since 1.8
+ */
+public class SegmentedLinkedHashMap<K,V> extends LinkedHashMap<K,V> {
+
+    private static final long serialVersionUID = 2901826178342066517L;
+
+    /*
+     * 段的编号，0表示不属于任何段
+     */
+    static final byte PROBATION = 1;
+    static final byte PROTECTED = 2;
+
+    /**
+     * 默认的保护段比例
+     */
+    static final float DEFAULT_PROTECTED_RATIO = 0.8f;
+
+    /**
+     * 最大元素个数
+     */
+    final int maximumSize;
+
+    /**
+     * 保护段占最大元素个数的比例
+     */
+    final float protectedRatio;
+
+    /**
+     * 保护段的最大元素个数
+     */
+    final int protectedMaximum;
+
+    /**
+     * 保护段的第一个（最久未访问的）节点，保护段为空时为null
+     */
+    transient Entry<K,V> protectedFirst;
+
+    /**
+     * 保护段中的元素个数，试用段的个数为size减去此值
+     */
+    transient int protectedSize;
+
+    /**
+     * 按给定的最大元素个数实例化，保护段占80%
+     */
+    public SegmentedLinkedHashMap(int maximumSize) {
+        this(maximumSize, DEFAULT_PROTECTED_RATIO);
+    }
+
+    /**
+     * 按给定的最大元素个数和保护段比例实例化
+     *
+     * @param protectedRatio 保护段占最大元素个数的比例，在[0, 1]之间，为0时退化为LRU
+     */
+    public SegmentedLinkedHashMap(int maximumSize, float protectedRatio) {
+        super(Math.max((int)(Math.min(maximumSize, 1 << 20) / 0.75f) + 1, 16), 0.75f, true);
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+        if (!(protectedRatio >= 0.0f && protectedRatio <= 1.0f))
+            throw new IllegalArgumentException("Illegal protected ratio: " + protectedRatio);
+        this.maximumSize = maximumSize;
+        this.protectedRatio = protectedRatio;
+        this.protectedMaximum = (int)(maximumSize * (double)protectedRatio);
+    }
+
+    /**
+     * 最大元素个数
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 保护段占最大元素个数的比例
+     */
+    public float protectedRatio() {
+        return protectedRatio;
+    }
+
+    /**
+     * 保护段中的元素个数
+     */
+    public int protectedSize() {
+        return protectedSize;
+    }
+
+    /**
+     * 元素个数超过最大元素个数时淘汰链表头部的元素
+     */
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+        return size() > maximumSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    // segment operations
+
+    /**
+     * 把节点插入到给定段的尾部，节点此时不在链表中
+     * 试用段的尾部在保护段之前，保护段的尾部就是链表尾部
+     */
+    private void append(Entry<K,V> p, byte segment) {
+        Entry<K,V> next;
+        if (segment == PROBATION)
+            next = protectedFirst;
+        else {
+            next = null;
+            if (protectedFirst == null)
+                protectedFirst = p;
+            protectedSize++;
+        }
+        p.segment = segment;
+        Entry<K,V> b = (next == null) ? tail : next.before;
+        p.before = b;
+        p.after = next;
+        if (b == null)
+            head = p;
+        else
+            b.after = p;
+        if (next == null)
+            tail = p;
+        else
+            next.before = p;
+    }
+
+    /**
+     * 把节点从链表和所在的段中摘除
+     */
+    private void detach(Entry<K,V> p) {
+        Entry<K,V> b = p.before, a = p.after;
+        if (p.segment == PROTECTED) {
+            if (p == protectedFirst)
+                protectedFirst = a;
+            protectedSize--;
+        }
+        p.before = p.after = null;
+        p.segment = 0;
+        if (b == null)
+            head = a;
+        else
+            b.after = a;
+        if (a == null)
+            tail = b;
+        else
+            a.before = b;
+    }
+
+    /**
+     * 把保护段中最久未访问的节点降级为试用段中最近访问的节点
+     * 两段相邻，只需要把保护段的起点后移一位
+     */
+    private void demote() {
+        Entry<K,V> p = protectedFirst;
+        p.segment = PROBATION;
+        protectedFirst = p.after;
+        protectedSize--;
+    }
+
+    /* ------------------------------------------------------------ */
+    // overrides of LinkedHashMap hook methods
+
+    void reinitialize() {
+        super.reinitialize();
+        protectedFirst = null;
+        protectedSize = 0;
+    }
+
+    /**
+     * 新节点由LinkedHashMap链入链表尾部，这里再把它移到试用段的尾部
+     */
+    Node<K,V> newNode(int hash, K key, V value, Node<K,V> e) {
+        Node<K,V> p = super.newNode(hash, key, value, e);
+        afterNodeLinked((Entry<K,V>)p);
+        return p;
+    }
+
+    TreeNode<K,V> newTreeNode(int hash, K key, V value, Node<K,V> next) {
+        TreeNode<K,V> p = super.newTreeNode(hash, key, value, next);
+        afterNodeLinked(p);
+        return p;
+    }
+
+    private void afterNodeLinked(Entry<K,V> p) {
+        if (protectedFirst != null) {
+            detach(p);
+            append(p, PROBATION);
+        }
+        else
+            p.segment = PROBATION;
+    }
+
+    void afterNodeReplacement(Entry<K,V> src, Entry<K,V> dst) {
+        if (protectedFirst == src)
+            protectedFirst = dst;
+    }
+
+    /**
+     * 试用段中的元素晋升到保护段，保护段溢出时把其中最久未访问的元素降级回试用段
+     * 保护段中的元素移到链表尾部
+     */
+    void afterNodeAccess(Node<K,V> e) {
+        Entry<K,V> p = (Entry<K,V>)e;
+        boolean promote = p.segment == PROBATION && protectedMaximum > 0;
+        // 不需要晋升并且已经是链表尾部（保护段尾部，或者没有保护段时的试用段尾部）时不需要移动，也不修改modCount
+        if (!promote && p == tail)
+            return;
+        if (promote) {
+            detach(p);
+            append(p, PROTECTED);
+            if (protectedSize > protectedMaximum)
+                demote();
+        }
+        else {
+            // 保护段中的元素，或者没有保护段时与LRU相同
+            byte segment = p.segment;
+            detach(p);
+            append(p, segment);
+        }
+        ++modCount;
+    }
+
+    void afterNodeRemoval(Node<K,V> e) {
+        detach((Entry<K,V>)e);
+    }
+
+    public void clear() {
+        super.clear();
+        protectedFirst = null;
+        protectedSize = 0;
+    }
+}
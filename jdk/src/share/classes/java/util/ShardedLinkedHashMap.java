@@ -0,0 +1,668 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 分片的并发LRU缓存，每个分片是一个独立的访问顺序LinkedHashMap
+ *
+ * <p>一个访问顺序的LinkedHashMap每次get都要修改双向链表（head/tail、before/after），
+ * 无论锁的粒度多细，这个链表本身都是所有线程竞争的热点。这里按hash把key分配到N个分片，
+ * 每个分片有自己的链表、自己的锁和自己的一份容量，不同分片上的访问完全不竞争：
+ * <pre>
+ *   1. 分片淘汰（默认）：每个分片的容量为maximumSize / N（向上取整），分片满时通过removeEldestEntry
+ *      淘汰分片内最久未访问的元素。各分片独立，吞吐量随核数增长，但key在分片间分布不均时，
+ *      热点集中的分片会过早淘汰，命中率低于整体LRU
+ *   2. 采样的全局淘汰：分片不限制容量，只限制总元素个数。超过上限时随机选取SAMPLES个分片，
+ *      比较它们链表头部元素（各分片最久未访问的元素）的最后访问时间，淘汰其中最早的一个。
+ *      相当于在各分片的LRU尾部做了一次采样近似，命中率接近整体LRU，代价是每个元素多保存一个访问时间
+ * </pre>
+ * 采样时对分片使用tryLock，正被其他线程持有的分片直接跳过，所以淘汰不会同时持有两个分片的锁，
+ * 也不会等待其他分片。总元素个数用一个AtomicLong维护，只在插入和删除时更新，get不会访问它。
+ *
+ * <p>与ConcurrentHashMap一样，不允许null键和null值。get会修改分片的链表，所以需要获取分片的锁，
+ * containsKey不算访问。迭代器和集合视图是弱一致的：每个分片在开始遍历时复制一份快照，
+ * 按分片内从最久未访问到最近访问的顺序返回。computeIfAbsent的函数在分片的锁内执行，
+ * 函数中可以调用size、containsKey或遍历此Map，但不能再修改此Map（get也会调整链表，同样算作修改），
+ * 否则会抛出IllegalStateException。不支持序列化。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see LinkedHashMap
+ * @see StripedHashMap
+ * @since 1.8
+ */
+public class ShardedLinkedHashMap<K,V> extends AbstractMap<K,V>
+        implements ConcurrentMap<K,V> {
+
+    /**
+     * 最大分片数
+     */
+    static final int MAX_SHARDS = 1 << 16;
+
+    /**
+     * 全局淘汰时每次采样的分片个数
+     */
+    static final int SAMPLES = 8;
+
+    /**
+     * 分片中保存的值，accessTime只在全局淘汰时更新
+     */
+    static final class Stamped<V> {
+        final V value;
+        long accessTime;
+
+        Stamped(V value, long accessTime) {
+            this.value = value;
+            this.accessTime = accessTime;
+        }
+    }
+
+    /**
+     * 一个分片，本身就是一个访问顺序的LinkedHashMap，再加上保护它的锁
+     */
+    static final class Shard<K,V> extends LinkedHashMap<K,Stamped<V>> {
+        private static final long serialVersionUID = -6042311810651457391L;
+
+        /**
+         * 保护此分片的锁
+         */
+        final transient ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * 分片淘汰时的容量，全局淘汰时为Integer.MAX_VALUE
+         */
+        final int capacity;
+
+        /**
+         * 此分片淘汰的元素个数，在锁内更新，由所属的Map合计
+         */
+        int evictions;
+
+        Shard(int capacity, int initialCapacity) {
+            super(initialCapacity, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        /**
+         * 修改操作加锁，检测computeIfAbsent等方法中的递归修改
+         * 只读操作（size、containsKey、遍历）直接使用lock，可以在computeIfAbsent的函数中重入
+         */
+        void lock() {
+            if (lock.isHeldByCurrentThread())
+                throw new IllegalStateException("Recursive update");
+            lock.lock();
+        }
+
+        void unlock() {
+            lock.unlock();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K,Stamped<V>> eldest) {
+            if (size() > capacity) {
+                ++evictions;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 在锁内复制出此分片所有的键值对，键和值交替存放，用于弱一致的遍历
+         */
+        Object[] snapshot() {
+            lock.lock();
+            try {
+                Object[] a = new Object[size << 1];
+                int i = 0;
+                for (Entry<K,Stamped<V>> e = head; e != null; e = e.after) {
+                    a[i++] = e.key;
+                    a[i++] = e.value.value;
+                }
+                return a;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 分片数组，长度为2的幂
+     */
+    final Shard<K,V>[] shards;
+
+    /**
+     * 计算分片下标时hash需要右移的位数，即32 - log2(分片数)
+     */
+    final int shardShift;
+
+    /**
+     * 最大元素个数
+     */
+    final int maximumSize;
+
+    /**
+     * 是否使用采样的全局淘汰
+     */
+    final boolean sampledEviction;
+
+    /**
+     * 总元素个数，只在全局淘汰时维护
+     */
+    final AtomicLong count = new AtomicLong();
+
+    /**
+     * 全局淘汰的元素个数
+     */
+    final AtomicLong globalEvictions = new AtomicLong();
+
+    /**
+     * 按给定的最大元素个数实例化，分片数为CPU核数的4倍，使用分片淘汰
+     */
+    public ShardedLinkedHashMap(int maximumSize) {
+        this(maximumSize, Runtime.getRuntime().availableProcessors() << 2, false);
+    }
+
+    /**
+     * 按给定的最大元素个数和分片数实例化，分片数会向上取整为2的幂
+     *
+     * @param sampledEviction 为true时使用采样的全局淘汰，否则每个分片按自己的容量淘汰
+     */
+    public ShardedLinkedHashMap(int maximumSize, int concurrencyLevel,
+                                boolean sampledEviction) {
+        if (maximumSize < 0 || concurrencyLevel <= 0)
+            throw new IllegalArgumentException();
+        int n = HashMap.tableSizeFor(Math.min(concurrencyLevel, MAX_SHARDS));
+        int share = (int)(((long)maximumSize + n - 1) / n);
+        int initialCapacity = Math.max((int)(Math.min(share, 1 << 20) / 0.75f) + 1, 16);
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Shard<K,V>[] ss = (Shard<K,V>[])new Shard[n];
+        for (int i = 0; i < n; i++)
+            ss[i] = new Shard<K,V>(sampledEviction ? Integer.MAX_VALUE : share, initialCapacity);
+        this.shards = ss;
+        this.shardShift = 32 - Integer.numberOfTrailingZeros(n);
+        this.maximumSize = maximumSize;
+        this.sampledEviction = sampledEviction;
+    }
+
+    /**
+     * 根据hash值选择分片，与StripedHashMap相同，使用斐波那契散列后的高位
+     */
+    final Shard<K,V> shardFor(int hash) {
+        Shard<K,V>[] ss = shards;
+        return (ss.length == 1) ? ss[0] : ss[(hash * 0x9E3779B9) >>> shardShift];
+    }
+
+    /**
+     * 最大元素个数
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 分片数
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 淘汰的元素个数，包括分片淘汰和全局淘汰
+     */
+    public long evictionCount() {
+        long n = globalEvictions.get();
+        for (Shard<K,V> s : shards) {
+            s.lock.lock();
+            try {
+                n += s.evictions;
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 访问时间，只在全局淘汰时读取时钟
+     */
+    final long now() {
+        return sampledEviction ? System.nanoTime() : 0L;
+    }
+
+    /* ------------------------------------------------------------ */
+    // Map operations
+
+    /**
+     * 元素个数，各分片分别读取后求和，不是一个原子的快照
+     */
+    public int size() {
+        long n = 0L;
+        for (Shard<K,V> s : shards) {
+            s.lock.lock();
+            try {
+                n += s.size();
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int)n;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 查找key对应的值，找到时移动到分片链表的尾部
+     */
+    public V get(Object key) {
+        Shard<K,V> s = shardFor(HashMap.hash(Objects.requireNonNull(key)));
+        int hash = s.keyHash(key);
+        s.lock();
+        try {
+            HashMap.Node<K,Stamped<V>> e = s.getNode(hash, key);
+            if (e == null)
+                return null;
+            Stamped<V> v = e.value;
+            if (sampledEviction)
+                v.accessTime = System.nanoTime();
+            s.afterNodeAccess(e);
+            return v.value;
+        } finally {
+            s.unlock();
+        }
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return (v = get(key)) == null ? defaultValue : v;
+    }
+
+    /**
+     * 不算访问
+     */
+    public boolean containsKey(Object key) {
+        Shard<K,V> s = shardFor(HashMap.hash(Objects.requireNonNull(key)));
+        int hash = s.keyHash(key);
+        s.lock.lock();
+        try {
+            return s.getNode(hash, key) != null;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /**
+     * 锁住key所在的分片插入，插入新元素后若超过最大元素个数则进行全局淘汰
+     * 全局淘汰在释放分片的锁之后进行
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Shard<K,V> s = shardFor(HashMap.hash(key));
+        int hash = s.keyHash(key);
+        Stamped<V> old;
+        s.lock();
+        try {
+            old = s.putVal(hash, key, new Stamped<>(value, now()), onlyIfAbsent, true);
+            if (old != null && onlyIfAbsent && sampledEviction)
+                old.accessTime = System.nanoTime();
+        } finally {
+            s.unlock();
+        }
+        if (old == null && sampledEviction && count.incrementAndGet() > maximumSize)
+            evictGlobally();
+        return (old == null) ? null : old.value;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            putVal(e.getKey(), e.getValue(), false);
+    }
+
+    public V remove(Object key) {
+        Stamped<V> v = removeVal(key, null);
+        return (v == null) ? null : v.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        return value != null && removeVal(key, value) != null;
+    }
+
+    /**
+     * 锁住key所在的分片删除，value不为null时只有值相等才删除
+     */
+    final Stamped<V> removeVal(Object key, Object value) {
+        Shard<K,V> s = shardFor(HashMap.hash(Objects.requireNonNull(key)));
+        int hash = s.keyHash(key);
+        HashMap.Node<K,Stamped<V>> e;
+        s.lock();
+        try {
+            if ((e = s.getNode(hash, key)) == null ||
+                (value != null && !value.equals(e.value.value)))
+                return null;
+            s.removeNode(hash, key, null, false, true);
+        } finally {
+            s.unlock();
+        }
+        if (sampledEviction)
+            count.decrementAndGet();
+        return e.value;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        Shard<K,V> s = shardFor(HashMap.hash(key));
+        int hash = s.keyHash(key);
+        s.lock();
+        try {
+            HashMap.Node<K,Stamped<V>> e = s.getNode(hash, key);
+            if (e != null && oldValue.equals(e.value.value)) {
+                e.value = new Stamped<>(newValue, now());
+                s.afterNodeAccess(e);
+                return true;
+            }
+            return false;
+        } finally {
+            s.unlock();
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Shard<K,V> s = shardFor(HashMap.hash(key));
+        int hash = s.keyHash(key);
+        s.lock();
+        try {
+            HashMap.Node<K,Stamped<V>> e = s.getNode(hash, key);
+            if (e != null) {
+                V oldValue = e.value.value;
+                e.value = new Stamped<>(value, now());
+                s.afterNodeAccess(e);
+                return oldValue;
+            }
+            return null;
+        } finally {
+            s.unlock();
+        }
+    }
+
+    /**
+     * 若key不存在，则在分片的锁内计算新值并插入，同一个key的并发调用只会计算一次
+     */
+    @Override
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (key == null || mappingFunction == null)
+            throw new NullPointerException();
+        Shard<K,V> s = shardFor(HashMap.hash(key));
+        int hash = s.keyHash(key);
+        V v;
+        s.lock();
+        try {
+            HashMap.Node<K,Stamped<V>> e = s.getNode(hash, key);
+            if (e != null) {
+                Stamped<V> t = e.value;
+                if (sampledEviction)
+                    t.accessTime = System.nanoTime();
+                s.afterNodeAccess(e);
+                return t.value;
+            }
+            if ((v = mappingFunction.apply(key)) == null)
+                return null;
+            s.putVal(hash, key, new Stamped<>(v, now()), false, true);
+        } finally {
+            s.unlock();
+        }
+        if (sampledEviction && count.incrementAndGet() > maximumSize)
+            evictGlobally();
+        return v;
+    }
+
+    /**
+     * 逐个分片清空，不是一个原子操作
+     */
+    public void clear() {
+        for (Shard<K,V> s : shards) {
+            s.lock();
+            try {
+                if (sampledEviction)
+                    count.addAndGet(-s.size());
+                s.clear();
+            } finally {
+                s.unlock();
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // sampled global eviction
+
+    /**
+     * 总元素个数超过上限时，每次先扣减计数，再淘汰一个元素，保证并发插入时不会重复淘汰
+     */
+    final void evictGlobally() {
+        long c;
+        while ((c = count.get()) > maximumSize) {
+            if (!count.compareAndSet(c, c - 1))
+                continue;
+            if (evictSampled() || evictAny())
+                globalEvictions.incrementAndGet();
+            else {
+                // 所有分片都是空的，其他线程的删除还没有更新计数
+                count.incrementAndGet();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 从随机位置开始采样SAMPLES个分片，淘汰其中链表头部元素访问时间最早的一个
+     * 被其他线程持有锁的分片直接跳过，所有采样的分片都不可用时返回false
+     */
+    final boolean evictSampled() {
+        Shard<K,V>[] ss = shards;
+        int n = ss.length, mask = n - 1;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        int samples = Math.min(SAMPLES, n);
+        Shard<K,V> victim = null;
+        long oldest = 0L;
+        for (int i = 0; i < samples; i++) {
+            Shard<K,V> s = ss[(start + i) & mask];
+            if (!s.lock.tryLock())
+                continue;
+            try {
+                LinkedHashMap.Entry<K,Stamped<V>> h = s.head;
+                if (h != null) {
+                    long t = h.value.accessTime;
+                    if (victim == null || t - oldest < 0) {
+                        victim = s;
+                        oldest = t;
+                    }
+                }
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return victim != null && evictHead(victim);
+    }
+
+    /**
+     * 采样失败时，依次尝试所有分片，淘汰第一个非空分片的链表头部元素
+     */
+    final boolean evictAny() {
+        Shard<K,V>[] ss = shards;
+        int start = ThreadLocalRandom.current().nextInt(ss.length);
+        for (int i = 0; i < ss.length; i++) {
+            if (evictHead(ss[(start + i) & (ss.length - 1)]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 淘汰分片中最久未访问的元素，分片为空时返回false
+     */
+    final boolean evictHead(Shard<K,V> s) {
+        s.lock();
+        try {
+            LinkedHashMap.Entry<K,Stamped<V>> h = s.head;
+            if (h == null)
+                return false;
+            s.removeNode(h.hash, h.key, null, false, true);
+            return true;
+        } finally {
+            s.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    /**
+     * 弱一致的迭代器，逐个分片遍历快照
+     */
+    abstract class ShardIterator {
+        int shardIndex;      // 下一个要复制快照的分片
+        Object[] current;    // 当前分片的快照，键和值交替存放
+        int index;           // 当前快照中的下一个位置
+        Object lastKey;      // 上一次返回的key，用于remove
+        Object lastValue;    // 上一次返回的value
+
+        ShardIterator() {
+            advance();
+        }
+
+        final void advance() {
+            Shard<K,V>[] ss = shards;
+            while ((current == null || index >= current.length) &&
+                    shardIndex < ss.length) {
+                current = ss[shardIndex++].snapshot();
+                index = 0;
+            }
+        }
+
+        public final boolean hasNext() {
+            return current != null && index < current.length;
+        }
+
+        final void nextEntry() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastKey = current[index];
+            lastValue = current[index + 1];
+            index += 2;
+            advance();
+        }
+
+        public final void remove() {
+            Object k = lastKey;
+            if (k == null)
+                throw new IllegalStateException();
+            lastKey = lastValue = null;
+            ShardedLinkedHashMap.this.remove(k);
+        }
+    }
+
+    final class EntryIterator extends ShardIterator implements Iterator<Map.Entry<K,V>> {
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            nextEntry();
+            return new MapEntry((K)lastKey, (V)lastValue);
+        }
+    }
+
+    /**
+     * 迭代器返回的键值对，setValue会写回Map
+     */
+    final class MapEntry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = 8418318497215092155L;
+
+        MapEntry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            V v = super.setValue(value);
+            put(getKey(), value);
+            return v;
+        }
+    }
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return ShardedLinkedHashMap.this.size(); }
+        public final void clear()               { ShardedLinkedHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k, v;
+            return ((k = e.getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    ShardedLinkedHashMap.this.remove(k, v));
+        }
+        public final Spliterator<Map.Entry<K,V>> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.CONCURRENT |
+                    Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import sun.misc.Unsafe;
+
+/**
+ * 堆外内存的slab分配器，按大小分级管理定长的内存块
+ *
+ * <p>堆外内存以slab为单位通过Unsafe.allocateMemory申请，每个slab属于一个大小级别，
+ * 被切分为该级别的定长块。级别从{@link #MIN_CHUNK}字节开始，每级约为上一级的1.25倍并按8字节对齐，
+ * 最大一级等于slab的大小。申请时取能容纳请求长度的最小级别，所以每块最多浪费约20%的空间。
+ * 超过slab大小的请求不经过slab，直接单独分配。
+ *
+ * <p>每个slab维护自己的空闲链表，链表的next指针存放在空闲块的前8个字节中，
+ * 从未使用过的块则从slab中按顺序切出。每个级别把还有空闲块的slab串成一个双向链表，
+ * 分配和释放都是O(1)。slab中的块全部释放后，若它不是该级别唯一有空闲块的slab，就把整个slab还给系统，
+ * 这样不同级别之间的内存可以随着数据大小的变化重新分配，而每个级别最多保留一个空的slab，
+ * 避免在临界点上反复申请和释放。
+ *
+ * <p>不是线程安全的，由使用者同步。
+ *
+ * @see OffHeapLinkedHashMap
+ * @since 1.8
+ */
+final class SlabAllocator {
+
+    private static final Unsafe U = Unsafe.getUnsafe();
+
+    /**
+     * 最小的块大小
+     */
+    static final int MIN_CHUNK = 64;
+
+    /**
+     * 默认的slab大小，1MB
+     */
+    static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    /**
+     * 一个slab，属于某个大小级别，被切分为chunks个大小为chunkSize的块
+     */
+    static final class Slab {
+        final long base;
+        final int sizeClass;
+        final int chunkSize;
+        final int chunks;
+        int used;           // 已分配出去的块数
+        int carved;         // 已从slab中切出的块数，之后的块从未使用过
+        long free;          // 空闲链表的第一个块，0表示空
+        Slab prev, next;    // 同一级别中有空闲块的slab组成的链表
+        int index;          // 在slabs数组中的下标
+
+        Slab(long base, int sizeClass, int chunkSize, int chunks) {
+            this.base = base;
+            this.sizeClass = sizeClass;
+            this.chunkSize = chunkSize;
+            this.chunks = chunks;
+        }
+    }
+
+    /**
+     * 分配出去的一块内存，slab为null时表示单独分配的大块
+     */
+    static final class Chunk {
+        final Slab slab;
+        final long address;
+        int length;
+
+        Chunk(Slab slab, long address, int length) {
+            this.slab = slab;
+            this.address = address;
+            this.length = length;
+        }
+
+        /**
+         * 块的实际大小，length可以在此范围内修改
+         */
+        int capacity() {
+            Slab s;
+            return ((s = slab) == null) ? length : s.chunkSize;
+        }
+    }
+
+    final int slabSize;
+
+    /**
+     * 每个级别的块大小，升序
+     */
+    final int[] chunkSizes;
+
+    /**
+     * 每个级别中有空闲块的slab链表的头部
+     */
+    final Slab[] partial;
+
+    /**
+     * 所有slab，用于close
+     */
+    Slab[] slabs = new Slab[16];
+    int slabCount;
+
+    /**
+     * 已分配出去的块的总大小，包括单独分配的大块
+     */
+    long used;
+
+    /**
+     * 向系统申请的内存总大小，包括所有slab和单独分配的大块
+     */
+    long reserved;
+
+    SlabAllocator(int slabSize) {
+        if (slabSize < MIN_CHUNK)
+            throw new IllegalArgumentException("Illegal slab size: " + slabSize);
+        this.slabSize = slabSize;
+        int n = 0;
+        int[] sizes = new int[8];
+        for (long size = MIN_CHUNK; ; size = (size + (size >>> 2) + 7) & ~7L) {
+            if (n == sizes.length)
+                sizes = Arrays.copyOf(sizes, n << 1);
+            if (size >= slabSize) {
+                sizes[n++] = slabSize;
+                break;
+            }
+            sizes[n++] = (int)size;
+        }
+        chunkSizes = Arrays.copyOf(sizes, n);
+        partial = new Slab[n];
+    }
+
+    /**
+     * 能容纳length字节的最小级别，超过slab大小时返回-1
+     */
+    int sizeClass(int length) {
+        if (length > slabSize)
+            return -1;
+        int i = Arrays.binarySearch(chunkSizes, length);
+        return (i >= 0) ? i : -(i + 1);
+    }
+
+    /**
+     * 能否直接在chunk中存放length字节而不改变占用的内存
+     */
+    boolean fits(Chunk chunk, int length) {
+        Slab s = chunk.slab;
+        return (s == null) ? length == chunk.length : sizeClass(length) == s.sizeClass;
+    }
+
+    /**
+     * 分配能容纳length字节的一块内存，内容未初始化
+     */
+    Chunk allocate(int length) {
+        int c = sizeClass(length);
+        if (c < 0) {
+            long address = U.allocateMemory(length);
+            used += length;
+            reserved += length;
+            return new Chunk(null, address, length);
+        }
+        Slab s = partial[c];
+        if (s == null)
+            s = newSlab(c);
+        long address;
+        if ((address = s.free) != 0L)
+            s.free = U.getAddress(address);
+        else
+            address = s.base + (long)s.carved++ * s.chunkSize;
+        if (++s.used == s.chunks)
+            unlink(s);
+        used += s.chunkSize;
+        return new Chunk(s, address, length);
+    }
+
+    /**
+     * 释放一块内存，每块只能释放一次
+     */
+    void free(Chunk chunk) {
+        Slab s = chunk.slab;
+        if (s == null) {
+            U.freeMemory(chunk.address);
+            used -= chunk.length;
+            reserved -= chunk.length;
+            return;
+        }
+        used -= s.chunkSize;
+        U.putAddress(chunk.address, s.free);
+        s.free = chunk.address;
+        if (s.used-- == s.chunks)
+            link(s);
+        if (s.used == 0 && (s.prev != null || s.next != null)) {
+            unlink(s);
+            release(s);
+        }
+    }
+
+    /**
+     * 把所有slab还给系统，之后不能再使用其中的块
+     * 单独分配的大块不受影响，由使用者逐个释放
+     */
+    void close() {
+        Slab[] tab = slabs;
+        for (int i = 0; i < slabCount; i++) {
+            Slab s = tab[i];
+            U.freeMemory(s.base);
+            reserved -= (long)s.chunkSize * s.chunks;
+            used -= (long)s.used * s.chunkSize;
+            tab[i] = null;
+        }
+        slabCount = 0;
+        Arrays.fill(partial, null);
+    }
+
+    private Slab newSlab(int c) {
+        int chunkSize = chunkSizes[c];
+        int chunks = slabSize / chunkSize;
+        long base = U.allocateMemory((long)chunkSize * chunks);
+        Slab s = new Slab(base, c, chunkSize, chunks);
+        reserved += (long)chunkSize * chunks;
+        if (slabCount == slabs.length)
+            slabs = Arrays.copyOf(slabs, slabCount << 1);
+        s.index = slabCount;
+        slabs[slabCount++] = s;
+        link(s);
+        return s;
+    }
+
+    /**
+     * 把slab还给系统，从slabs数组中删除时用最后一个元素填补空位
+     */
+    private void release(Slab s) {
+        U.freeMemory(s.base);
+        reserved -= (long)s.chunkSize * s.chunks;
+        Slab last = slabs[--slabCount];
+        slabs[s.index] = last;
+        last.index = s.index;
+        slabs[slabCount] = null;
+    }
+
+    private void link(Slab s) {
+        Slab h = partial[s.sizeClass];
+        s.prev = null;
+        s.next = h;
+        if (h != null)
+            h.prev = s;
+        partial[s.sizeClass] = s;
+    }
+
+    private void unlink(Slab s) {
+        Slab p = s.prev, n = s.next;
+        if (p == null)
+            partial[s.sizeClass] = n;
+        else
+            p.next = n;
+        if (n != null)
+            n.prev = p;
+        s.prev = s.next = null;
+    }
+}
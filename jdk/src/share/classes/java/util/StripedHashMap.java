@@ -0,0 +1,835 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 分段加锁的并发哈希表
+ *
+ * <p>整个表被划分为若干段(stripe)，每一段都是一个HashMap，并持有自己的StampedLock：
+ * 1. 写操作只锁住key所在的段，直接复用HashMap的putVal、removeNode、treeifyBin等桶操作，
+ *    链表过长时同样会树化，段内元素超过扩容阈值时也只对此段扩容，不影响其他段的读写
+ * 2. 读操作使用StampedLock的乐观读，不加锁直接遍历桶中的链表，读完后校验期间是否有写操作，
+ *    校验失败时才退化为加读锁重新读取，所以读多写少的场景下get几乎不会产生竞争。
+ *    红黑树的旋转在没有happens-before的情况下可能被看到一半，形成暂时的环，
+ *    所以桶已经树化时直接加读锁，与ConcurrentHashMap的TreeBin加锁的原因相同
+ * 3. 段的选择使用hash值经过斐波那契散列后的高位，段内桶的选择使用HashMap.hash的低位，两者互不干扰
+ *
+ * <p>与ConcurrentHashMap一样，不允许null键和null值。
+ * 迭代器和集合视图是弱一致的：每一段在开始遍历时复制一份快照，不会抛出ConcurrentModificationException。
+ * compute、merge等方法的函数在段的写锁内执行，函数中可以读取此Map，但不能再修改此Map，否则会抛出IllegalStateException。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see HashMap
+ * @see java.util.concurrent.ConcurrentHashMap
+ * @since 1.8
+ */
+public class StripedHashMap<K,V> extends AbstractMap<K,V>
+        implements ConcurrentMap<K,V>, Serializable {
+
+    private static final long serialVersionUID = 6524215369781451473L;
+
+    /**
+     * 默认初始容量，会平均分配到各段
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * 默认加载因子，与HashMap相同
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 默认段数，与JDK7的ConcurrentHashMap相同
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * 最大段数
+     */
+    static final int MAX_STRIPES = 1 << 16;
+
+    /**
+     * 每段的最小初始容量
+     */
+    static final int MIN_STRIPE_CAPACITY = 2;
+
+    /**
+     * 乐观读最多遍历的节点数，超过时改为加读锁
+     * 正常情况下链表长度不超过树化阈值，更长的链表只可能是看到了写操作的中间状态
+     */
+    static final int MAX_OPTIMISTIC_STEPS = 64;
+
+    /**
+     * 一个段，本身就是一个HashMap，再加上保护它的锁
+     * 只有持有写锁时才能修改，读操作使用乐观读
+     */
+    static final class Stripe<K,V> extends HashMap<K,V> {
+        private static final long serialVersionUID = 2249069246763182397L;
+
+        /**
+         * 保护此段的锁
+         */
+        final transient StampedLock lock = new StampedLock();
+
+        /**
+         * 持有写锁的线程，用于检测compute等方法中的递归修改，StampedLock不可重入，递归加锁会死锁
+         */
+        transient Thread owner;
+
+        Stripe(int initialCapacity, float loadFactor) {
+            super(initialCapacity, loadFactor);
+        }
+
+        /**
+         * 加写锁
+         */
+        long lock() {
+            if (owner == Thread.currentThread())
+                throw new IllegalStateException("Recursive update");
+            long stamp = lock.writeLock();
+            owner = Thread.currentThread();
+            return stamp;
+        }
+
+        /**
+         * 释放写锁
+         */
+        void unlock(long stamp) {
+            owner = null;
+            lock.unlockWrite(stamp);
+        }
+
+        /**
+         * 当前线程是否持有此段的写锁，即正在compute等方法的函数中，
+         * 此时可以直接读取，再加读锁会死锁
+         */
+        boolean heldByCurrentThread() {
+            return owner == Thread.currentThread();
+        }
+
+        /**
+         * 查找key对应的值，先尝试乐观读，校验失败再加读锁
+         * 乐观读期间写线程可能正在修改链表或红黑树，读到的结果只有在校验通过后才会被使用。
+         * 乐观读只遍历链表，并限制遍历的节点数，遇到红黑树、过长的链表或者任何异常都改为加读锁，
+         * 保证看到写操作的中间状态时不会死循环或者栈溢出
+         */
+        V find(int hash, Object key) {
+            if (heldByCurrentThread()) {
+                Node<K,V> e = getNode(hash, key);
+                return (e == null) ? null : e.value;
+            }
+            StampedLock sl = lock;
+            long stamp = sl.tryOptimisticRead();
+            if (stamp != 0L) {
+                try {
+                    Node<K,V>[] tab; Node<K,V> e; int n; K k;
+                    V v = null;
+                    boolean done = true;
+                    if ((tab = table) != null && (n = tab.length) > 0 &&
+                            (e = tab[(n - 1) & hash]) != null) {
+                        if (e instanceof TreeNode)
+                            done = false;
+                        else {
+                            int steps = 0;
+                            do {
+                                if (e.hash == hash &&
+                                        ((k = e.key) == key || key.equals(k))) {
+                                    v = e.value;
+                                    break;
+                                }
+                                if (++steps > MAX_OPTIMISTIC_STEPS) {
+                                    done = false;
+                                    break;
+                                }
+                            } while ((e = e.next) != null);
+                        }
+                    }
+                    if (done && sl.validate(stamp))
+                        return v;
+                } catch (Throwable ex) {
+                    // 中间状态导致的异常，加读锁重新读取，真正的异常会在加锁后再次抛出
+                }
+            }
+            stamp = sl.readLock();
+            try {
+                Node<K,V> e = getNode(hash, key);
+                return (e == null) ? null : e.value;
+            } finally {
+                sl.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 元素个数，读取方式同find
+         */
+        int count() {
+            if (heldByCurrentThread())
+                return size;
+            StampedLock sl = lock;
+            long stamp = sl.tryOptimisticRead();
+            int n = size;
+            if (!sl.validate(stamp)) {
+                stamp = sl.readLock();
+                try {
+                    n = size;
+                } finally {
+                    sl.unlockRead(stamp);
+                }
+            }
+            return n;
+        }
+
+        /**
+         * 在读锁内复制出此段所有的键值对，键和值交替存放，用于弱一致的遍历
+         */
+        Object[] snapshot() {
+            if (heldByCurrentThread())
+                return copyEntries();
+            long stamp = lock.readLock();
+            try {
+                return copyEntries();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 复制所有的键值对，调用者需要持有读锁或写锁
+         */
+        private Object[] copyEntries() {
+            Object[] a = new Object[size << 1];
+            Node<K,V>[] tab;
+            int i = 0;
+            if (size > 0 && (tab = table) != null) {
+                for (Node<K,V> p : tab) {
+                    for (; p != null; p = p.next) {
+                        a[i++] = p.key;
+                        a[i++] = p.value;
+                    }
+                }
+            }
+            return a;
+        }
+    }
+
+    /**
+     * 段数组，长度为2的幂
+     */
+    transient Stripe<K,V>[] stripes;
+
+    /**
+     * 计算段下标时hash需要右移的位数，即32 - log2(段数)
+     */
+    transient int stripeShift;
+
+    /**
+     * 加载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 段数
+     */
+    final int concurrencyLevel;
+
+    /**
+     * 按给定的初始容量、加载因子和段数实例化
+     * 段数会向上取整为2的幂，初始容量平均分配给每个段
+     */
+    public StripedHashMap(int initialCapacity, float loadFactor,
+                          int concurrencyLevel) {
+        if (initialCapacity < 0 || concurrencyLevel <= 0 ||
+                loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException();
+        if (concurrencyLevel > MAX_STRIPES)
+            concurrencyLevel = MAX_STRIPES;
+        this.loadFactor = loadFactor;
+        this.concurrencyLevel = HashMap.tableSizeFor(concurrencyLevel);
+        init(initialCapacity);
+    }
+
+    /**
+     * 指定初始容量，按默认加载因子（0.75）和默认段数（16）实例化
+     */
+    public StripedHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * 按默认初始容量（16）、默认加载因子（0.75）和默认段数（16）实例化
+     */
+    public StripedHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * 根据给定Map实例化一个存放相同映射的StripedHashMap
+     */
+    public StripedHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max((int)(m.size() / DEFAULT_LOAD_FACTOR) + 1, DEFAULT_INITIAL_CAPACITY),
+             DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+        putAll(m);
+    }
+
+    /**
+     * 创建段数组
+     */
+    private void init(int initialCapacity) {
+        int n = concurrencyLevel;
+        int c = initialCapacity / n;
+        if (c * n < initialCapacity)
+            ++c;
+        if (c < MIN_STRIPE_CAPACITY)
+            c = MIN_STRIPE_CAPACITY;
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Stripe<K,V>[] ss = (Stripe<K,V>[])new Stripe[n];
+        for (int i = 0; i < n; i++)
+            ss[i] = new Stripe<K,V>(c, loadFactor);
+        stripeShift = 32 - Integer.numberOfTrailingZeros(n);
+        stripes = ss;
+    }
+
+    /**
+     * 根据hash值选择段
+     * 段内使用hash的低位选择桶，所以这里乘以黄金分割常数后取高位，避免两者相关
+     * 只有一个段时位移为32，Java中int右移32位相当于不移位，所以需要特殊处理
+     */
+    final Stripe<K,V> stripeFor(int hash) {
+        Stripe<K,V>[] ss = stripes;
+        return (ss.length == 1) ? ss[0] : ss[(hash * 0x9E3779B9) >>> stripeShift];
+    }
+
+    /**
+     * 查询存放的元素个数，各段分别读取后求和，不是一个原子的快照
+     */
+    public int size() {
+        long n = mappingCount();
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int)n;
+    }
+
+    /**
+     * 与size相同，但返回long，元素个数可能超过int的范围
+     */
+    public long mappingCount() {
+        long n = 0L;
+        for (Stripe<K,V> s : stripes)
+            n += s.count();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        for (Stripe<K,V> s : stripes) {
+            if (s.count() != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 根据key值查找元素，不加锁
+     */
+    public V get(Object key) {
+        int hash = HashMap.hash(Objects.requireNonNull(key));
+        return stripeFor(hash).find(hash, key);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return (v = get(key)) == null ? defaultValue : v;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * 是否存在给定的值，需要遍历所有段
+     */
+    public boolean containsValue(Object value) {
+        Objects.requireNonNull(value);
+        for (Stripe<K,V> s : stripes) {
+            if (s.heldByCurrentThread()) {
+                if (s.containsValue(value))
+                    return true;
+                continue;
+            }
+            long stamp = s.lock.readLock();
+            try {
+                if (s.containsValue(value))
+                    return true;
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 向Map中添加键值对
+     */
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /**
+     * 锁住key所在的段，交由HashMap.putVal插入
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int hash = HashMap.hash(key);
+        Stripe<K,V> s = stripeFor(hash);
+        long stamp = s.lock();
+        try {
+            return s.putVal(hash, key, value, onlyIfAbsent, true);
+        } finally {
+            s.unlock(stamp);
+        }
+    }
+
+    /**
+     * 将传入的Map中的所有键值对都复制过来，每个键值对单独加锁
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            putVal(e.getKey(), e.getValue(), false);
+    }
+
+    /**
+     * 删除key对应的键值对
+     */
+    public V remove(Object key) {
+        HashMap.Node<K,V> e = removeNode(key, null);
+        return (e == null) ? null : e.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        return value != null && removeNode(key, value) != null;
+    }
+
+    /**
+     * 锁住key所在的段，交由HashMap.removeNode删除
+     * value不为null时，只有值相等才删除
+     */
+    final HashMap.Node<K,V> removeNode(Object key, Object value) {
+        int hash = HashMap.hash(Objects.requireNonNull(key));
+        Stripe<K,V> s = stripeFor(hash);
+        long stamp = s.lock();
+        try {
+            return s.removeNode(hash, key, value, value != null, true);
+        } finally {
+            s.unlock(stamp);
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        int hash = HashMap.hash(key);
+        Stripe<K,V> s = stripeFor(hash);
+        long stamp = s.lock();
+        try {
+            HashMap.Node<K,V> e = s.getNode(hash, key);
+            if (e != null && oldValue.equals(e.value)) {
+                e.value = newValue;
+                return true;
+            }
+            return false;
+        } finally {
+            s.unlock(stamp);
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int hash = HashMap.hash(key);
+        Stripe<K,V> s = stripeFor(hash);
+        long stamp = s.lock();
+        try {
+            HashMap.Node<K,V> e = s.getNode(hash, key);
+            if (e != null) {
+                V oldValue = e.value;
+                e.value = value;
+                return oldValue;
+            }
+            return null;
+        } finally {
+            s.unlock(stamp);
+        }
+    }
+
+    /**
+     * 若key不存在，则在段的写锁内计算新值并插入，同一个key的并发调用只会计算一次
+     * 若key已存在，则通过乐观读直接返回，不加锁
+     */
+    @Override
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (key == null || mappingFunction == null)
+            throw new NullPointerException();
+        int hash = HashMap.hash(key);
+        Stripe<K,V> s = stripeFor(hash);
+        V v;
+        if ((v = s.find(hash, key)) != null)
+            return v;
+        long stamp = s.lock();
+        try {
+            return s.computeIfAbsent(key, mappingFunction);
+        } finally {
+            s.unlock(stamp);
+        }
+    }
+
+    @Override
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (key == null || remappingFunction == null)
+            throw new NullPointerException();
+        Stripe<K,V> s = stripeFor(HashMap.hash(key));
+        long stamp = s.lock();
+        try {
+            return s.computeIfPresent(key, remappingFunction);
+        } finally {
+            s.unlock(stamp);
+        }
+    }
+
+    @Override
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (key == null || remappingFunction == null)
+            throw new NullPointerException();
+        Stripe<K,V> s = stripeFor(HashMap.hash(key));
+        long stamp = s.lock();
+        try {
+            return s.compute(key, remappingFunction);
+        } finally {
+            s.unlock(stamp);
+        }
+    }
+
+    @Override
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (key == null || value == null || remappingFunction == null)
+            throw new NullPointerException();
+        Stripe<K,V> s = stripeFor(HashMap.hash(key));
+        long stamp = s.lock();
+        try {
+            return s.merge(key, value, remappingFunction);
+        } finally {
+            s.unlock(stamp);
+        }
+    }
+
+    /**
+     * 逐段清空，不是一个原子操作
+     */
+    public void clear() {
+        for (Stripe<K,V> s : stripes) {
+            long stamp = s.lock();
+            try {
+                s.clear();
+            } finally {
+                s.unlock(stamp);
+            }
+        }
+    }
+
+    /**
+     * 遍历所有元素，每一段先复制快照，在锁外执行action，action中可以修改此Map
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Stripe<K,V> s : stripes) {
+            Object[] a = s.snapshot();
+            for (int i = 0; i < a.length; i += 2)
+                action.accept((K)a[i], (V)a[i + 1]);
+        }
+    }
+
+    /**
+     * 逐段在写锁内替换所有值，function中不能修改此Map
+     */
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        for (Stripe<K,V> s : stripes) {
+            long stamp = s.lock();
+            try {
+                s.replaceAll((k, v) -> Objects.requireNonNull(function.apply(k, v)));
+            } finally {
+                s.unlock(stamp);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    /**
+     * 弱一致的迭代器，逐段遍历快照
+     * 反映的是每一段在开始遍历它时的状态，不会抛出ConcurrentModificationException
+     */
+    abstract class StripeIterator {
+        int stripeIndex;     // 下一个要复制快照的段
+        Object[] current;    // 当前段的快照，键和值交替存放
+        int index;           // 当前快照中的下一个位置
+        Object lastKey;      // 上一次返回的key，用于remove
+        Object lastValue;    // 上一次返回的value
+
+        StripeIterator() {
+            advance();
+        }
+
+        /**
+         * 跳过空段，找到下一个有元素的快照
+         */
+        final void advance() {
+            Stripe<K,V>[] ss = stripes;
+            while ((current == null || index >= current.length) &&
+                    stripeIndex < ss.length) {
+                current = ss[stripeIndex++].snapshot();
+                index = 0;
+            }
+        }
+
+        public final boolean hasNext() {
+            return current != null && index < current.length;
+        }
+
+        /**
+         * 移动到下一个键值对，结果保存在lastKey和lastValue中
+         */
+        final void nextEntry() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastKey = current[index];
+            lastValue = current[index + 1];
+            index += 2;
+            advance();
+        }
+
+        public final void remove() {
+            Object k = lastKey;
+            if (k == null)
+                throw new IllegalStateException();
+            lastKey = lastValue = null;
+            StripedHashMap.this.remove(k);
+        }
+    }
+
+    final class KeyIterator extends StripeIterator implements Iterator<K> {
+        @SuppressWarnings("unchecked")
+        public K next() {
+            nextEntry();
+            return (K)lastKey;
+        }
+    }
+
+    final class ValueIterator extends StripeIterator implements Iterator<V> {
+        @SuppressWarnings("unchecked")
+        public V next() {
+            nextEntry();
+            return (V)lastValue;
+        }
+    }
+
+    final class EntryIterator extends StripeIterator implements Iterator<Map.Entry<K,V>> {
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            nextEntry();
+            return new MapEntry((K)lastKey, (V)lastValue);
+        }
+    }
+
+    /**
+     * 迭代器返回的键值对，setValue会写回Map
+     * 与ConcurrentHashMap相同，写回之后此Entry中的值不会再跟随Map变化
+     */
+    final class MapEntry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = -4513364307541578104L;
+
+        MapEntry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            V v = super.setValue(value);
+            put(getKey(), value);
+            return v;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // views
+
+    /**
+     * 视图，均为弱一致的
+     */
+    transient Set<K> keySet;
+    transient Collection<V> values;
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ? (keySet = new KeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = values) == null ? (values = new Values()) : vs;
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return StripedHashMap.this.size(); }
+        public final void clear()               { StripedHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object o) {
+            return StripedHashMap.this.remove(o) != null;
+        }
+        public final Spliterator<K> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.CONCURRENT |
+                    Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return StripedHashMap.this.size(); }
+        public final void clear()               { StripedHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+        public final Spliterator<V> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.CONCURRENT |
+                    Spliterator.NONNULL);
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return StripedHashMap.this.size(); }
+        public final void clear()               { StripedHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k, v, r;
+            return ((k = e.getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    (r = get(k)) != null &&
+                    (r == v || r.equals(v)));
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k, v;
+            return ((k = e.getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    StripedHashMap.this.remove(k, v));
+        }
+        public final Spliterator<Map.Entry<K,V>> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.CONCURRENT |
+                    Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // serialization
+
+    /**
+     * 序列化，先写出加载因子和段数，再逐个写出键值对，最后以两个null结束
+     */
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        for (Stripe<K,V> st : stripes) {
+            Object[] a = st.snapshot();
+            for (int i = 0; i < a.length; i += 2) {
+                s.writeObject(a[i]);
+                s.writeObject(a[i + 1]);
+            }
+        }
+        s.writeObject(null);
+        s.writeObject(null);
+    }
+
+    /**
+     * 反序列化，按写出时的段数重建段数组
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (loadFactor <= 0 || Float.isNaN(loadFactor) ||
+                concurrencyLevel <= 0 || concurrencyLevel > MAX_STRIPES ||
+                (concurrencyLevel & (concurrencyLevel - 1)) != 0)
+            throw new java.io.InvalidObjectException("Invalid stream");
+        init(DEFAULT_INITIAL_CAPACITY);
+        for (;;) {
+            K k = (K) s.readObject();
+            V v = (V) s.readObject();
+            if (k == null || v == null)
+                break;
+            putVal(k, v, false);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+import java.util.function.Predicate;
+
+/**
+ * 分层时间轮，用于按到期时间清理缓存中的元素，调度、取消都是O(1)
+ *
+ * <p>时间轮分为5层，每层是若干个桶组成的环，每个桶是一个带哨兵的双向循环链表：
+ * <pre>
+ *   层    桶数    每个桶的跨度
+ *   0     64      2^30纳秒（约1.07秒）
+ *   1     64      2^36纳秒（约1.15分钟）
+ *   2     32      2^42纳秒（约1.22小时）
+ *   3     4       2^47纳秒（约1.63天）
+ *   4     1       其余更远的时间
+ * </pre>
+ * 节点按距离到期的时间放入能容纳它的最低一层，桶的下标由到期时间的高位决定。
+ * 时间前进时，每一层只需要处理指针扫过的桶：桶中已到期的节点交给调用方处理，
+ * 未到期的节点（来自较高的层）按剩余时间重新放入较低的层。
+ * 所以节点最多会比到期时间晚一个桶的跨度被清理，到期的精确判断由调用方在读取时完成。
+ *
+ * <p>不是线程安全的，由使用者同步。
+ *
+ * @see ExpiringLinkedHashMap
+ * @since 1.8
+ */
+final class TimerWheel {
+
+    static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+
+    static final int[] SHIFT = { 30, 36, 42, 47, 49 };
+
+    /**
+     * 时间轮中的节点，time为到期时间，prev/next在未调度时为null
+     */
+    static class Node {
+        long time;
+        Node prev, next;
+
+        final boolean isScheduled() {
+            return next != null;
+        }
+    }
+
+    /**
+     * 每个桶的哨兵
+     */
+    static final class Sentinel extends Node {
+        Sentinel() {
+            prev = next = this;
+        }
+    }
+
+    final Sentinel[][] wheel;
+
+    /**
+     * 上一次前进到的时间
+     */
+    long nanos;
+
+    TimerWheel(long now) {
+        nanos = now;
+        wheel = new Sentinel[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new Sentinel[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++)
+                wheel[i][j] = new Sentinel();
+        }
+    }
+
+    /**
+     * 按节点的到期时间放入对应的桶，节点已调度时先取消
+     */
+    void schedule(Node node) {
+        if (node.isScheduled())
+            unlink(node);
+        Sentinel s = findBucket(node.time);
+        Node last = s.prev;
+        node.prev = last;
+        node.next = s;
+        last.next = node;
+        s.prev = node;
+    }
+
+    /**
+     * 取消调度，节点未调度时什么都不做
+     */
+    void unlink(Node node) {
+        Node next = node.next;
+        if (next != null) {
+            Node prev = node.prev;
+            next.prev = prev;
+            prev.next = next;
+            node.prev = node.next = null;
+        }
+    }
+
+    private Sentinel findBucket(long time) {
+        long duration = time - nanos;
+        int top = wheel.length - 1;
+        for (int i = 0; i < top; i++) {
+            if (duration < (1L << SHIFT[i + 1])) {
+                long ticks = time >>> SHIFT[i];
+                return wheel[i][(int)ticks & (wheel[i].length - 1)];
+            }
+        }
+        return wheel[top][0];
+    }
+
+    /**
+     * 时间前进到now，把指针扫过的桶中已到期的节点交给expire处理
+     * expire返回false表示节点没有被移除，此时会重新调度它
+     *
+     * @return 交给expire处理的节点个数
+     */
+    int advance(long now, Predicate<Node> expire) {
+        long previous = nanos;
+        if (now - previous <= 0)
+            return 0;
+        nanos = now;
+        int expired = 0;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previous >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0)
+                break;
+            expired += expire(i, previousTicks, currentTicks - previousTicks, expire);
+        }
+        return expired;
+    }
+
+    /**
+     * 处理第index层中从previousTicks开始的delta + 1个桶，超过一圈时只处理一圈
+     */
+    private int expire(int index, long previousTicks, long delta, Predicate<Node> expire) {
+        Sentinel[] level = wheel[index];
+        int mask = level.length - 1;
+        int steps = (int)Math.min(delta + 1, level.length);
+        int start = (int)previousTicks & mask;
+        int expired = 0;
+        for (int i = start; i < start + steps; i++) {
+            Sentinel s = level[i & mask];
+            Node node = s.next;
+            s.prev = s.next = s;
+            while (node != s) {
+                Node next = node.next;
+                node.prev = node.next = null;
+                if (node.time - nanos <= 0) {
+                    expired++;
+                    if (!expire.test(node))
+                        schedule(node);
+                }
+                else
+                    schedule(node);
+                node = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 取消所有节点的调度
+     */
+    void clear() {
+        for (Sentinel[] level : wheel) {
+            for (Sentinel s : level) {
+                for (Node node = s.next, next; node != s; node = next) {
+                    next = node.next;
+                    node.prev = node.next = null;
+                }
+                s.prev = s.next = s;
+            }
+        }
+    }
+}
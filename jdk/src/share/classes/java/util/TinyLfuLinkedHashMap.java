@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util;
+
+/**
+ * 按W-TinyLFU策略淘汰的有界LinkedHashMap
+ *
+ * <p>LinkedHashMap通过removeEldestEntry只能实现按插入顺序或LRU淘汰，
+ * 一次大范围的扫描就会把所有热点数据挤出缓存。W-TinyLFU在LRU之前加了一个基于访问频率的准入判断：
+ * <pre>
+ *   新元素 -> [窗口 LRU，约1%] --溢出--> 候选者 ==TinyLFU== 牺牲者 <- [主区 SLRU，约99%]
+ * </pre>
+ * 1. 新元素先进入容量约为1%的窗口区，窗口区按LRU管理，让突发的新key有机会积累访问频率
+ * 2. 窗口区溢出的元素成为候选者进入主区，元素总数超过上限时，与主区中最久未访问的元素（牺牲者）比较，
+ *    由{@link FrequencySketch}估计两者的访问频率，只有候选者的频率更高时才淘汰牺牲者，否则淘汰候选者
+ * 3. 主区按分段LRU管理：新进入主区的元素在试用段，再次被访问时晋升到保护段（约占主区的80%），
+ *    保护段溢出时最久未访问的元素降级回试用段
+ * 每次访问（包括未命中的get）都会计入频率，计数器定期减半，使频率随时间衰减。
+ *
+ * <p>三个段没有单独的链表，而是LinkedHashMap双向链表中连续的三部分，节点所在的段记录在
+ * {@link LinkedHashMap.Entry#segment}中，这里只保存保护段和窗口区第一个节点的指针：
+ * <pre>
+ *   head -> [试用段 LRU ... MRU][保护段 LRU ... MRU][窗口区 LRU ... MRU] <- tail
+ * </pre>
+ * 所以遍历顺序是从最可能被淘汰到最不可能被淘汰，链表头部总是下一个牺牲者。
+ * 节点的插入、删除、移动都通过HashMap/LinkedHashMap的newNode、afterNodeAccess、afterNodeInsertion、
+ * afterNodeRemoval等钩子完成，桶结构、树化、序列化等都沿用LinkedHashMap。
+ *
+ * <p>淘汰完全由上述策略决定，不会调用removeEldestEntry。
+ * 与LinkedHashMap(accessOrder = true)一样，get等访问操作会修改链表，遍历期间不能访问此Map。
+ * 同样可以用setAccessBufferSize开启访问缓冲区，此时get只记录访问，插入新元素淘汰之前才统一计入频率并调整顺序。
+ * 不是线程安全的，并发使用时需要外部同步。
+ *
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ *
+ * @see LinkedHashMap
+ * @see FrequencySketch
+ * @since 1.8
+ */
+public class TinyLfuLinkedHashMap<K,V> extends LinkedHashMap<K,V> {
+
+    private static final long serialVersionUID = -2675347296871543521L;
+
+    /*
+     * 段的编号，0表示不属于任何段
+     */
+    static final byte PROBATION = 1;
+    static final byte PROTECTED = 2;
+    static final byte WINDOW = 3;
+
+    /**
+     * 窗口区占总容量的百分比
+     */
+    static final int WINDOW_PERCENT = 1;
+
+    /**
+     * 保护段占主区的百分比
+     */
+    static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * 最大元素个数
+     */
+    final int maximumSize;
+
+    /**
+     * 窗口区和保护段的最大元素个数
+     */
+    final int windowMaximum;
+    final int protectedMaximum;
+
+    /**
+     * 访问频率，反序列化和clone时重新创建
+     */
+    transient FrequencySketch sketch;
+
+    /**
+     * 保护段和窗口区的第一个（最久未访问的）节点，对应的段为空时为null
+     */
+    transient Entry<K,V> protectedFirst, windowFirst;
+
+    /**
+     * 窗口区和保护段中的元素个数，试用段的个数为size减去两者
+     */
+    transient int windowSize, protectedSize;
+
+    /**
+     * 按给定的最大元素个数实例化
+     */
+    public TinyLfuLinkedHashMap(int maximumSize) {
+        super(Math.max((int)(Math.min(maximumSize, 1 << 20) / 0.75f) + 1, 16), 0.75f, true);
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, (int)((long)maximumSize * WINDOW_PERCENT / 100));
+        this.protectedMaximum = (int)((long)Math.max(0, maximumSize - windowMaximum) *
+                                      PROTECTED_PERCENT / 100);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * 最大元素个数
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 估计的访问频率，在[0, 15]之间，不算访问
+     */
+    public int frequency(Object key) {
+        return sketch.frequency(key);
+    }
+
+    /* ------------------------------------------------------------ */
+    // segment operations
+
+    /**
+     * 把节点插入到给定段的尾部（最近访问的一端），节点此时不在链表中
+     * 试用段的尾部在保护段之前，保护段的尾部在窗口区之前，窗口区的尾部就是链表尾部
+     */
+    private void append(Entry<K,V> p, byte segment) {
+        Entry<K,V> next;
+        if (segment == PROBATION)
+            next = (protectedFirst != null) ? protectedFirst : windowFirst;
+        else if (segment == PROTECTED) {
+            next = windowFirst;
+            if (protectedFirst == null)
+                protectedFirst = p;
+            protectedSize++;
+        }
+        else {
+            next = null;
+            if (windowFirst == null)
+                windowFirst = p;
+            windowSize++;
+        }
+        p.segment = segment;
+        Entry<K,V> b = (next == null) ? tail : next.before;
+        p.before = b;
+        p.after = next;
+        if (b == null)
+            head = p;
+        else
+            b.after = p;
+        if (next == null)
+            tail = p;
+        else
+            next.before = p;
+    }
+
+    /**
+     * 把节点从链表和所在的段中摘除
+     */
+    private void detach(Entry<K,V> p) {
+        Entry<K,V> b = p.before, a = p.after;
+        if (p.segment == PROTECTED) {
+            if (p == protectedFirst)
+                protectedFirst = (a != null && a.segment == PROTECTED) ? a : null;
+            protectedSize--;
+        }
+        else if (p.segment == WINDOW) {
+            if (p == windowFirst)
+                windowFirst = a;
+            windowSize--;
+        }
+        p.before = p.after = null;
+        p.segment = 0;
+        if (b == null)
+            head = a;
+        else
+            b.after = a;
+        if (a == null)
+            tail = b;
+        else
+            a.before = b;
+    }
+
+    private void move(Entry<K,V> p, byte segment) {
+        detach(p);
+        append(p, segment);
+    }
+
+    /**
+     * 试用段中最近访问的节点，试用段为空时为null
+     */
+    private Entry<K,V> probationLast() {
+        Entry<K,V> next = (protectedFirst != null) ? protectedFirst : windowFirst;
+        Entry<K,V> p = (next == null) ? tail : next.before;
+        return (p != null && p.segment == PROBATION) ? p : null;
+    }
+
+    /* ------------------------------------------------------------ */
+    // overrides of LinkedHashMap hook methods
+
+    void reinitialize() {
+        super.reinitialize();
+        sketch = new FrequencySketch(maximumSize);
+        protectedFirst = windowFirst = null;
+        windowSize = protectedSize = 0;
+    }
+
+    /**
+     * 新节点由LinkedHashMap链入链表尾部，也就是窗口区的尾部，这里只需记录它所在的段
+     */
+    Node<K,V> newNode(int hash, K key, V value, Node<K,V> e) {
+        Node<K,V> p = super.newNode(hash, key, value, e);
+        afterNodeLinked((Entry<K,V>)p);
+        return p;
+    }
+
+    TreeNode<K,V> newTreeNode(int hash, K key, V value, Node<K,V> next) {
+        TreeNode<K,V> p = super.newTreeNode(hash, key, value, next);
+        afterNodeLinked(p);
+        return p;
+    }
+
+    private void afterNodeLinked(Entry<K,V> p) {
+        p.segment = WINDOW;
+        if (windowFirst == null)
+            windowFirst = p;
+        windowSize++;
+        sketch.increment(p.key);
+    }
+
+    void afterNodeReplacement(Entry<K,V> src, Entry<K,V> dst) {
+        if (protectedFirst == src)
+            protectedFirst = dst;
+        if (windowFirst == src)
+            windowFirst = dst;
+    }
+
+    /**
+     * 访问已有的元素：计入频率，窗口区和保护段中的元素移到所在段的尾部，
+     * 试用段中的元素晋升到保护段，保护段溢出时把其中最久未访问的元素降级回试用段
+     */
+    void afterNodeAccess(Node<K,V> e) {
+        Entry<K,V> p = (Entry<K,V>)e;
+        sketch.increment(p.key);
+        byte segment = p.segment;
+        if (segment == PROBATION) {
+            move(p, PROTECTED);
+            Entry<K,V> first;
+            if (protectedSize > protectedMaximum && (first = protectedFirst) != null)
+                move(first, PROBATION);
+        }
+        else if (p.after != null && p.after.segment == segment)
+            // 不是所在段的尾部时才需要移动
+            move(p, segment);
+        ++modCount;
+    }
+
+    void afterNodeRemoval(Node<K,V> e) {
+        detach((Entry<K,V>)e);
+    }
+
+    /**
+     * 插入新元素之后，先把窗口区溢出的元素移入试用段作为候选者，
+     * 元素总数超过上限时，再逐个比较候选者与链表头部的牺牲者，淘汰访问频率较低的一个
+     */
+    void afterNodeInsertion(boolean evict) {
+        if (!evict)
+            return;
+        // 先应用缓冲区中的访问，使频率和各段的顺序是最新的
+        drainAccesses();
+        int candidates = 0;
+        Entry<K,V> first;
+        while (windowSize > windowMaximum && (first = windowFirst) != null) {
+            move(first, PROBATION);
+            candidates++;
+        }
+        while (size > maximumSize && (first = head) != null) {
+            Entry<K,V> victim = first, candidate = null;
+            if (candidates > 0) {
+                candidate = probationLast();
+                candidates--;
+            }
+            Entry<K,V> evicted = (candidate == null || candidate == victim ||
+                    admit(candidate.key, victim.key)) ? victim : candidate;
+            removeNode(keyHash(evicted.key), evicted.key, null, false, true);
+        }
+    }
+
+    /**
+     * 候选者的访问频率高于牺牲者时才允许它进入主区
+     */
+    boolean admit(K candidateKey, K victimKey) {
+        return sketch.frequency(candidateKey) > sketch.frequency(victimKey);
+    }
+
+    /* ------------------------------------------------------------ */
+    // accesses of absent keys also count
+
+    public V get(Object key) {
+        Node<K,V> e;
+        if ((e = getNode(keyHash(key), key)) == null) {
+            sketch.increment(key);
+            return null;
+        }
+        recordAccess(e);
+        return e.value;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        Node<K,V> e;
+        if ((e = getNode(keyHash(key), key)) == null) {
+            sketch.increment(key);
+            return defaultValue;
+        }
+        recordAccess(e);
+        return e.value;
+    }
+
+    public void clear() {
+        super.clear();
+        protectedFirst = windowFirst = null;
+        windowSize = protectedSize = 0;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package java.util.function;
+
+/**
+ * 接收一个long类型参数和一个对象参数，无返回值的操作
+ * 是{@link BiConsumer}针对long类型的特化版本，避免了key的装箱
+ *
+ * @param <U> 对象参数的类型
+ *
+ * @see BiConsumer
+ * @see ObjLongConsumer
+ * @since 1.8
+ */
+@FunctionalInterface
+public interface LongObjBiConsumer<U> {
+
+    /**
+     * 对给定的参数执行此操作
+     *
+     * @param value long类型参数
+     * @param u 对象参数
+     */
+    void accept(long value, U u);
+}